@@ -1,6 +1,7 @@
 package com.cowards.onlyarts.config;
 
 import jakarta.ws.rs.ApplicationPath;
+import org.glassfish.jersey.media.multipart.MultiPartFeature;
 import org.glassfish.jersey.server.ResourceConfig;
 
 /**
@@ -32,5 +33,9 @@ public class ApplicationConfig extends ResourceConfig {
     public ApplicationConfig() {
         packages("com.cowards.onlyarts.resources");
         this.register(new CorsFilter());
+        this.register(UnitOfWorkFilter.class);
+        this.register(UnitOfWorkListener.class);
+        this.register(AuthenticationFeature.class);
+        this.register(MultiPartFeature.class);
     }
 }
@@ -0,0 +1,18 @@
+package com.cowards.onlyarts.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a resource method or class that requires a logged-in user. The user
+ * is resolved once by {@link AuthenticationFilter} and is available through
+ * the {@link jakarta.ws.rs.core.SecurityContext} as a {@link UserPrincipal}.
+ * Methods annotated with {@link jakarta.annotation.security.RolesAllowed} are
+ * authenticated as well.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Authenticated {
+}
@@ -0,0 +1,34 @@
+package com.cowards.onlyarts.config;
+
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.ws.rs.container.DynamicFeature;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.FeatureContext;
+import jakarta.ws.rs.ext.Provider;
+import java.lang.reflect.Method;
+
+/**
+ * The {@code AuthenticationFeature} class binds an
+ * {@link AuthenticationFilter} to every resource method annotated with
+ * {@link Authenticated} or {@link RolesAllowed}, either directly or on its
+ * class. An annotation on the method takes precedence over one on the class.
+ */
+@Provider
+public class AuthenticationFeature implements DynamicFeature {
+
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+        Method method = resourceInfo.getResourceMethod();
+        Class<?> resource = resourceInfo.getResourceClass();
+        RolesAllowed roles = method.getAnnotation(RolesAllowed.class);
+        if (roles == null && !method.isAnnotationPresent(Authenticated.class)) {
+            roles = resource.getAnnotation(RolesAllowed.class);
+        }
+        if (roles != null) {
+            context.register(new AuthenticationFilter(roles.value()));
+        } else if (method.isAnnotationPresent(Authenticated.class)
+                || resource.isAnnotationPresent(Authenticated.class)) {
+            context.register(new AuthenticationFilter(null));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.cowards.onlyarts.config;
+
+import com.cowards.onlyarts.core.TokenSigner;
+import com.cowards.onlyarts.core.TtlCache;
+import com.cowards.onlyarts.repositories.token.TokenDTO;
+import com.cowards.onlyarts.repositories.token.TokenERROR;
+import com.cowards.onlyarts.repositories.user.UserDTO;
+import com.cowards.onlyarts.repositories.user.UserERROR;
+import com.cowards.onlyarts.services.TokenDAO;
+import com.cowards.onlyarts.services.UserDAO;
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
+import java.io.IOException;
+import java.security.Principal;
+
+/**
+ * The {@code AuthenticationFilter} class resolves the {@link UserPrincipal} of
+ * a request from its {@code authtoken} header once, before the resource method
+ * runs, and checks it against the roles the method allows.
+ * <p>
+ * Signed tokens are verified without any database access, and stored tokens
+ * come from the {@link TokenDAO} cache. The role and status of the user are
+ * not taken from the token: they are read from the user and cached for
+ * {@code onlyarts.cache.principals.ttlMillis}, and read again at once when
+ * {@link UserDAO} changes the user on this node. A banned user is refused
+ * even while their tokens are still valid.
+ */
+@Priority(Priorities.AUTHENTICATION)
+public class AuthenticationFilter implements ContainerRequestFilter {
+
+    private static final String TOKEN_HEADER = "authtoken";
+    private static final TokenDAO tokenDao = TokenDAO.getInstance();
+    private static final UserDAO userDao = UserDAO.getInstance();
+    private static final TtlCache<String, Account> accounts = new TtlCache<>(
+            Integer.getInteger("onlyarts.cache.principals.maxSize", 10_000),
+            Long.getLong("onlyarts.cache.principals.ttlMillis", 60_000L));
+
+    private final String[] roles;
+
+    /**
+     * Creates a filter.
+     *
+     * @param roles The roles allowed to call the method, or {@code null} if
+     * any logged-in user may call it.
+     */
+    public AuthenticationFilter(String[] roles) {
+        this.roles = roles;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        String tokenString = requestContext.getHeaderString(TOKEN_HEADER);
+        UserPrincipal principal;
+        try {
+            principal = resolve(tokenString);
+        } catch (TokenERROR ex) {
+            requestContext.abortWith(Response.status(Response.Status.UNAUTHORIZED)
+                    .entity(ex).build());
+            return;
+        } catch (UserERROR ex) {
+            requestContext.abortWith(Response.status(Response.Status.NOT_FOUND)
+                    .entity(ex).build());
+            return;
+        }
+        if (principal.isBanned()) {
+            requestContext.abortWith(Response.status(Response.Status.FORBIDDEN)
+                    .entity(new UserERROR("This account is banned")).build());
+            return;
+        }
+        if (!isAllowed(principal)) {
+            requestContext.abortWith(Response.status(Response.Status.FORBIDDEN)
+                    .entity("You dont have permission to do this action!!!").build());
+            return;
+        }
+        requestContext.setSecurityContext(new PrincipalSecurityContext(principal,
+                requestContext.getSecurityContext().isSecure()));
+    }
+
+    private UserPrincipal resolve(String tokenString) throws TokenERROR, UserERROR {
+        if (tokenString == null || tokenString.isEmpty()) {
+            throw new TokenERROR("Missing authentication token");
+        }
+        if (TokenSigner.isSigned(tokenString)) {
+            TokenSigner.Claims claims = tokenDao.getClaims(tokenString);
+            if (claims.isExpired()) {
+                throw new TokenERROR("Login timeout");
+            }
+            if ((claims.getTokenStatus() & 0b101) != 0b101) {
+                throw new TokenERROR("Invalid authentication token");
+            }
+            return principal(claims.getUserId(), tokenString);
+        }
+        TokenDTO token = tokenDao.getToken(tokenString);
+        if (token.isExpired()) {
+            throw new TokenERROR("Login timeout");
+        }
+        if (!token.isLoginToken() || !token.isValid()) {
+            throw new TokenERROR("Invalid authentication token");
+        }
+        return principal(token.getUserId(), tokenString);
+    }
+
+    /**
+     * Builds the principal from the current role and status of the user.
+     */
+    private UserPrincipal principal(String userId, String tokenString) throws UserERROR {
+        long version = userDao.getVersion(userId);
+        Account account = accounts.get(userId);
+        if (account == null || account.version != version) {
+            UserDTO user = userDao.getProfile(userId);
+            account = new Account(user.getRoleId(), user.getStatus(), version);
+            accounts.put(userId, account);
+        }
+        return new UserPrincipal(userId, account.roleId, account.status, tokenString);
+    }
+
+    private boolean isAllowed(UserPrincipal principal) {
+        if (roles == null) {
+            return true;
+        }
+        for (String role : roles) {
+            if (principal.hasRole(role)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The role and status of a user, and the version of the user they were
+     * read at.
+     */
+    private static final class Account {
+
+        private final String roleId;
+        private final int status;
+        private final long version;
+
+        private Account(String roleId, int status, long version) {
+            this.roleId = roleId;
+            this.status = status;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Exposes the resolved principal to the resource methods.
+     */
+    private static final class PrincipalSecurityContext implements SecurityContext {
+
+        private final UserPrincipal principal;
+        private final boolean secure;
+
+        private PrincipalSecurityContext(UserPrincipal principal, boolean secure) {
+            this.principal = principal;
+            this.secure = secure;
+        }
+
+        @Override
+        public Principal getUserPrincipal() {
+            return principal;
+        }
+
+        @Override
+        public boolean isUserInRole(String role) {
+            return principal.hasRole(role);
+        }
+
+        @Override
+        public boolean isSecure() {
+            return secure;
+        }
+
+        @Override
+        public String getAuthenticationScheme() {
+            return TOKEN_HEADER;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.cowards.onlyarts.config;
+
+import com.cowards.onlyarts.core.DBContext;
+import com.cowards.onlyarts.core.Snapshot;
+import com.cowards.onlyarts.services.ArtworkSearchIndex;
+import com.cowards.onlyarts.services.DuplicateDetector;
+import com.cowards.onlyarts.services.HomeFeed;
+import com.cowards.onlyarts.services.PresenceTracker;
+import com.cowards.onlyarts.services.ThumbnailPipeline;
+import com.cowards.onlyarts.services.TokenDAO;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+/**
+ * The {@code DatabaseListener} class starts loading the artwork search index
+ * when the application is deployed. When it is undeployed, it writes the
+ * pending presence changes, stops the thumbnail, duplicate check and feed
+ * workers, releases the pooled database connections and stops the background
+ * database refreshers, so that redeploying the war does not leave orphaned
+ * sessions on the database server.
+ */
+@WebListener
+public class DatabaseListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        Thread indexer = new Thread(ArtworkSearchIndex.getInstance()::ensureBuilt,
+                "onlyarts-search-index-build");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        ArtworkSearchIndex.getInstance().shutdown();
+        PresenceTracker.getInstance().shutdown();
+        ThumbnailPipeline.getInstance().shutdown();
+        DuplicateDetector.getInstance().shutdown();
+        HomeFeed.getInstance().shutdown();
+        Snapshot.shutdown();
+        TokenDAO.getInstance().shutdown();
+        DBContext.getInstance().shutdown();
+    }
+}
@@ -0,0 +1,100 @@
+package com.cowards.onlyarts.config;
+
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * The {@code EntityTags} class builds strong entity tags for read endpoints
+ * from the version counters kept by the DAOs, so that a conditional
+ * {@code GET} can be answered with {@code 304 Not Modified} before the
+ * database is touched.
+ * <p>
+ * The counters only see writes made by this server, so every tag also
+ * carries the start time of the server and the current time window of
+ * {@code onlyarts.etag.windowMillis}. A change made elsewhere is therefore
+ * picked up after one window at the latest.
+ */
+public final class EntityTags {
+
+    private static final String STARTED
+            = Long.toString(System.currentTimeMillis(), 36);
+    private static final long WINDOW_MILLIS
+            = Long.getLong("onlyarts.etag.windowMillis", 60_000L);
+    private static final CacheControl REVALIDATE = new CacheControl();
+
+    static {
+        REVALIDATE.setNoCache(true);
+        REVALIDATE.setNoTransform(false);
+    }
+
+    private EntityTags() {
+    }
+
+    /**
+     * Builds the tag of a representation.
+     *
+     * @param resource The name of the resource, e.g. {@code artworks}.
+     * @param versions The version counters the representation depends on.
+     * @param variant What else shapes the representation, such as the
+     * {@code fields=} parameter or the requested ID; may be {@code null}.
+     * @return The strong entity tag.
+     */
+    public static EntityTag of(String resource, String variant, long... versions) {
+        StringBuilder sb = new StringBuilder(resource)
+                .append('-').append(STARTED)
+                .append('-').append(Long.toString(
+                        System.currentTimeMillis() / WINDOW_MILLIS, 36));
+        for (long version : versions) {
+            sb.append('-').append(Long.toString(version, 36));
+        }
+        if (variant != null) {
+            sb.append('-').append(digest(variant));
+        }
+        return new EntityTag(sb.toString());
+    }
+
+    /**
+     * Digests a variant, so that distinct variants never share a tag and any
+     * text, including quotes, can be part of one.
+     */
+    private static String digest(String variant) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(variant.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    /**
+     * Checks the {@code If-None-Match} header of a request against a tag.
+     *
+     * @param request The request being handled.
+     * @param tag The current tag of the representation.
+     * @return A {@code 304 Not Modified} response if the client already has
+     * the representation, otherwise {@code null}.
+     */
+    public static Response notModified(Request request, EntityTag tag) {
+        Response.ResponseBuilder builder = request.evaluatePreconditions(tag);
+        return builder == null ? null : builder.cacheControl(REVALIDATE).build();
+    }
+
+    /**
+     * Builds a {@code 200 OK} response that carries a tag and asks clients
+     * to revalidate before reusing it.
+     *
+     * @param entity The representation.
+     * @param tag The tag of the representation.
+     * @return The response.
+     */
+    public static Response ok(Object entity, EntityTag tag) {
+        return Response.ok(entity).tag(tag).cacheControl(REVALIDATE).build();
+    }
+}
@@ -0,0 +1,18 @@
+package com.cowards.onlyarts.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a resource method whose DAO calls must run as one database
+ * transaction. The transaction is committed when the method answers with a
+ * successful status and rolled back otherwise.
+ *
+ * @see UnitOfWorkFilter
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Transactional {
+}
@@ -0,0 +1,55 @@
+package com.cowards.onlyarts.config;
+
+import com.cowards.onlyarts.core.DBContext;
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+/**
+ * The {@code UnitOfWorkFilter} class binds one database connection to each
+ * request, so that every DAO call made by a resource method reuses the same
+ * connection instead of borrowing its own. Methods annotated with
+ * {@link Transactional} additionally run all their work in one transaction.
+ * <p>
+ * The unit of work is ended in the response filter. Requests that fail with an
+ * exception no resource method maps to a response never reach it; those are
+ * cleaned up by {@link UnitOfWorkListener}. The filter runs before
+ * authentication, so the lookups of {@link AuthenticationFilter} share the
+ * connection of the request too.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION - 100)
+public class UnitOfWorkFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final DBContext DB = DBContext.getInstance();
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        Method method = resourceInfo.getResourceMethod();
+        boolean transactional = method != null
+                && method.isAnnotationPresent(Transactional.class);
+        DB.beginUnitOfWork(transactional);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext,
+            ContainerResponseContext responseContext) throws IOException {
+        boolean success = responseContext.getStatus() < 400;
+        if (!DB.endUnitOfWork(success) && success) {
+            responseContext.setStatus(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode());
+            responseContext.setEntity("The changes could not be saved, please try again");
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.cowards.onlyarts.config;
+
+import com.cowards.onlyarts.core.DBContext;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+/**
+ * The {@code UnitOfWorkListener} class makes sure the unit of work opened by
+ * {@link UnitOfWorkFilter} is always ended, even when a request fails with an
+ * exception that skips the response filters. Any work still open at that
+ * point is rolled back.
+ */
+public class UnitOfWorkListener implements ApplicationEventListener {
+
+    private static final DBContext DB = DBContext.getInstance();
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        return event -> {
+            if (event.getType() == RequestEvent.Type.FINISHED) {
+                DB.endUnitOfWork(false);
+            }
+        };
+    }
+}
@@ -0,0 +1,72 @@
+package com.cowards.onlyarts.config;
+
+import java.security.Principal;
+
+/**
+ * The {@code UserPrincipal} class represents the logged-in user of a request,
+ * as resolved by {@link AuthenticationFilter}. It carries the user ID, role
+ * and status bits, which is what most resource methods need to authorize a
+ * call without loading the full user.
+ */
+public final class UserPrincipal implements Principal {
+
+    private final String userId;
+    private final String roleId;
+    private final int status;
+    private final String tokenString;
+
+    /**
+     * Creates a principal.
+     *
+     * @param userId The ID of the user.
+     * @param roleId The role of the user.
+     * @param status The status bits of the user.
+     * @param tokenString The token the user authenticated with.
+     */
+    public UserPrincipal(String userId, String roleId, int status, String tokenString) {
+        this.userId = userId;
+        this.roleId = roleId;
+        this.status = status;
+        this.tokenString = tokenString;
+    }
+
+    @Override
+    public String getName() {
+        return userId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getRoleId() {
+        return roleId;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getTokenString() {
+        return tokenString;
+    }
+
+    /**
+     * Checks whether the user is banned.
+     *
+     * @return {@code true} if the banned bit of the status is set.
+     */
+    public boolean isBanned() {
+        return ((status >> 2) & 1) == 1;
+    }
+
+    /**
+     * Checks if the user has the given role.
+     *
+     * @param role The role to check.
+     * @return {@code true} if the user has the role, {@code false} otherwise.
+     */
+    public boolean hasRole(String role) {
+        return role != null && role.equals(roleId);
+    }
+}
@@ -0,0 +1,174 @@
+package com.cowards.onlyarts.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * The {@code BkTree} class indexes 64-bit fingerprints by Hamming distance,
+ * so that every fingerprint within a small radius of a query is found while
+ * visiting only a fraction of the tree.
+ * <p>
+ * Each child of a node is filed under its distance to that node; by the
+ * triangle inequality, a search only has to descend into the children whose
+ * distance lies within the radius of the query's distance to the node.
+ * <p>
+ * The tree is not thread-safe.
+ *
+ * @param <V> The type of the values stored with the fingerprints.
+ */
+public final class BkTree<V> {
+
+    private Node<V> root;
+    private int size;
+
+    /**
+     * Adds a fingerprint.
+     *
+     * @param hash The fingerprint.
+     * @param value The value stored with it.
+     */
+    public void add(long hash, V value) {
+        size++;
+        if (root == null) {
+            root = new Node<>(hash, value);
+            return;
+        }
+        Node<V> node = root;
+        while (true) {
+            int distance = PerceptualHash.distance(hash, node.hash);
+            Node<V> child = node.child(distance);
+            if (child == null) {
+                node.addChild(distance, new Node<>(hash, value));
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Finds every fingerprint within a radius of a query.
+     *
+     * @param hash The query fingerprint.
+     * @param radius The largest Hamming distance to report.
+     * @return The matches, in no particular order.
+     */
+    public List<Match<V>> search(long hash, int radius) {
+        List<Match<V>> matches = new ArrayList<>();
+        if (root == null) {
+            return matches;
+        }
+        Deque<Node<V>> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node<V> node = pending.pop();
+            int distance = PerceptualHash.distance(hash, node.hash);
+            if (distance <= radius) {
+                matches.add(new Match<>(node.value, node.hash, distance));
+            }
+            for (int i = 0; i < node.childCount; i++) {
+                if (Math.abs(node.distances[i] - distance) <= radius) {
+                    pending.push(node.children[i]);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Retrieves the number of fingerprints in the tree.
+     *
+     * @return The number of fingerprints.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * A value found by {@link #search} and its distance to the query.
+     *
+     * @param <V> The type of the value.
+     */
+    public static final class Match<V> {
+
+        private final V value;
+        private final long hash;
+        private final int distance;
+
+        private Match(V value, long hash, int distance) {
+            this.value = value;
+            this.hash = hash;
+            this.distance = distance;
+        }
+
+        /**
+         * Retrieves the value stored with the matching fingerprint.
+         *
+         * @return The value.
+         */
+        public V getValue() {
+            return value;
+        }
+
+        /**
+         * Retrieves the matching fingerprint.
+         *
+         * @return The fingerprint the value was added with.
+         */
+        public long getHash() {
+            return hash;
+        }
+
+        /**
+         * Retrieves the Hamming distance to the query.
+         *
+         * @return The distance.
+         */
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    /**
+     * A fingerprint and its children. Most nodes have only a few children,
+     * so they are kept in small arrays rather than one slot per distance.
+     */
+    private static final class Node<V> {
+
+        private final long hash;
+        private final V value;
+        private byte[] distances = new byte[2];
+        private Node<V>[] children = newArray(2);
+        private int childCount;
+
+        private Node(long hash, V value) {
+            this.hash = hash;
+            this.value = value;
+        }
+
+        private Node<V> child(int distance) {
+            for (int i = 0; i < childCount; i++) {
+                if (distances[i] == distance) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private void addChild(int distance, Node<V> child) {
+            if (childCount == children.length) {
+                distances = Arrays.copyOf(distances, childCount * 2);
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            distances[childCount] = (byte) distance;
+            children[childCount++] = child;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> Node<V>[] newArray(int length) {
+            return new Node[length];
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.cowards.onlyarts.core;
+
+/**
+ * The {@code ByteRange} class parses the {@code Range} header of a request for
+ * a single range of bytes, such as {@code bytes=0-1023}, {@code bytes=1024-}
+ * or {@code bytes=-512}.
+ * <p>
+ * Requests for several ranges at once are served as a whole, which the HTTP
+ * specification allows.
+ */
+public final class ByteRange {
+
+    private static final String UNIT = "bytes=";
+
+    private final long start;
+    private final long end;
+
+    private ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Parses a {@code Range} header.
+     *
+     * @param header The value of the header, may be {@code null}.
+     * @param length The size of the content.
+     * @return The requested range, or {@code null} if the whole content
+     * should be sent.
+     * @throws IllegalArgumentException if the range does not overlap the
+     * content, in which case the request must be answered with {@code 416}.
+     */
+    public static ByteRange parse(String header, long length) {
+        if (header == null || !header.startsWith(UNIT) || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring(UNIT.length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || length == 0) {
+                    throw new IllegalArgumentException("Unsatisfiable range " + header);
+                }
+                return new ByteRange(Math.max(0, length - suffix), length - 1);
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            if (start >= length || end < start) {
+                throw new IllegalArgumentException("Unsatisfiable range " + header);
+            }
+            return new ByteRange(start, end);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the index of the first byte of the range.
+     *
+     * @return The index of the first byte.
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Retrieves the number of bytes in the range.
+     *
+     * @return The number of bytes.
+     */
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * Builds the {@code Content-Range} header of the response.
+     *
+     * @param length The size of the whole content.
+     * @return The value of the header, e.g. {@code bytes 0-1023/4096}.
+     */
+    public String toContentRange(long length) {
+        return "bytes " + start + "-" + end + "/" + length;
+    }
+}
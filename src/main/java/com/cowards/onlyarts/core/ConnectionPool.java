@@ -0,0 +1,502 @@
+package com.cowards.onlyarts.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@code ConnectionPool} class keeps a bounded set of physical database
+ * connections and lends them out one caller at a time. Borrowed connections
+ * are wrapped so that calling {@link Connection#close()} returns them to the
+ * pool instead of closing the underlying session.
+ * <p>
+ * Idle connections are validated before they are handed out again, and
+ * connections held longer than the leak threshold are reported together with
+ * the stack trace of the code that borrowed them. Each connection keeps its own
+ * {@link StatementCache}, so the DAO SQL constants are prepared once per
+ * connection rather than once per call.
+ */
+public final class ConnectionPool {
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long VALIDATE_AFTER_IDLE_MILLIS = 30_000L;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Map<PooledConnection, Borrow> borrowed = new ConcurrentHashMap<>();
+    private int totalCount;
+    private int waiterCount;
+    private boolean shutdown;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong waitCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    private final ScheduledExecutorService leakDetector;
+
+    /**
+     * Creates a new pool. Physical connections are opened lazily, up to
+     * {@code maxSize}.
+     *
+     * @param url The JDBC url of the database.
+     * @param username The database user.
+     * @param password The database password.
+     * @param maxSize The maximum number of physical connections.
+     * @param borrowTimeoutMillis How long a caller waits for a free connection
+     * before giving up.
+     * @param leakThresholdMillis How long a connection may stay borrowed
+     * before it is reported as a leak.
+     * @param statementCacheSize How many prepared statements each connection
+     * keeps open, {@code 0} to disable statement caching.
+     */
+    public ConnectionPool(String url, String username, String password,
+            int maxSize, long borrowTimeoutMillis, long leakThresholdMillis,
+            int statementCacheSize) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.leakDetector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "onlyarts-pool-leak-detector");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000L, leakThresholdMillis / 2);
+        this.leakDetector.scheduleAtFixedRate(this::detectLeaks,
+                period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if the pool has
+     * not reached its maximum size, otherwise waiting for one to be returned.
+     *
+     * @return A connection that returns itself to the pool when closed.
+     * @throws SQLException if no connection becomes available in time or a new
+     * connection cannot be opened.
+     */
+    public Connection borrow() throws SQLException {
+        PooledConnection pooled = null;
+        boolean create = false;
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new SQLException("Connection pool has been shut down");
+            }
+            long remaining = TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+            boolean waited = false;
+            while (pooled == null && !create) {
+                if (!idle.isEmpty()) {
+                    pooled = idle.pollFirst();
+                } else if (totalCount < maxSize) {
+                    totalCount++;
+                    create = true;
+                } else {
+                    if (remaining <= 0L) {
+                        timeoutCount.incrementAndGet();
+                        throw new SQLException("Timed out after " + borrowTimeoutMillis
+                                + "ms waiting for a database connection");
+                    }
+                    if (!waited) {
+                        waited = true;
+                        waitCount.incrementAndGet();
+                    }
+                    waiterCount++;
+                    try {
+                        remaining = available.awaitNanos(remaining);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection", ex);
+                    } finally {
+                        waiterCount--;
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        totalWaitNanos.addAndGet(System.nanoTime() - start);
+
+        if (create) {
+            pooled = open();
+        } else if (!validate(pooled)) {
+            pooled.close();
+            pooled = open();
+        }
+        borrowCount.incrementAndGet();
+        borrowed.put(pooled, new Borrow(new Throwable("Connection borrowed here"
+                + " by thread " + Thread.currentThread().getName())));
+        return pooled.lend();
+    }
+
+    /**
+     * Returns a snapshot of the pool counters.
+     *
+     * @return The current statistics of this pool.
+     */
+    public Stats getStats() {
+        lock.lock();
+        try {
+            long borrows = borrowCount.get();
+            return new Stats(maxSize, totalCount, borrowed.size(), idle.size(),
+                    waiterCount, borrows, waitCount.get(), timeoutCount.get(),
+                    leakCount.get(),
+                    borrows == 0 ? 0L : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.get()) / borrows,
+                    statementHits.get(), statementMisses.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes every idle connection and stops the leak detector. Borrowed
+     * connections are closed when they are returned.
+     */
+    public void shutdown() {
+        leakDetector.shutdownNow();
+        lock.lock();
+        try {
+            shutdown = true;
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                pooled.close();
+                totalCount--;
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        try {
+            return new PooledConnection(DriverManager.getConnection(url, username, password));
+        } catch (SQLException | RuntimeException ex) {
+            lock.lock();
+            try {
+                totalCount--;
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw ex;
+        }
+    }
+
+    private boolean validate(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastReturned < VALIDATE_AFTER_IDLE_MILLIS) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        pooled.close();
+        lock.lock();
+        try {
+            totalCount--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        if (pooled.statements != null) {
+            pooled.statements.reset();
+        }
+        boolean healthy;
+        try {
+            healthy = !pooled.physical.isClosed();
+            if (healthy && !pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            healthy = false;
+        }
+        if (!healthy) {
+            discard(pooled);
+            return;
+        }
+        pooled.lastReturned = System.currentTimeMillis();
+        lock.lock();
+        try {
+            if (shutdown) {
+                pooled.close();
+                totalCount--;
+            } else {
+                idle.addFirst(pooled);
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void detectLeaks() {
+        long now = System.currentTimeMillis();
+        for (Borrow borrow : borrowed.values()) {
+            if (!borrow.reported && now - borrow.since > leakThresholdMillis) {
+                borrow.reported = true;
+                leakCount.incrementAndGet();
+                Logger.getLogger(ConnectionPool.class.getName()).log(Level.WARNING,
+                        "Connection held for more than " + leakThresholdMillis
+                        + "ms, possible leak", borrow.origin);
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException ex) {
+            Logger.getLogger(ConnectionPool.class.getName())
+                    .log(Level.FINE, "Exception found on closing a pooled connection", ex);
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool.
+     */
+    private final class PooledConnection {
+
+        private final Connection physical;
+        private final StatementCache statements;
+        private volatile long lastReturned = System.currentTimeMillis();
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = statementCacheSize > 0
+                    ? new StatementCache(physical, statementCacheSize, statementHits, statementMisses)
+                    : null;
+        }
+
+        /**
+         * Closes the cached statements and then the physical connection.
+         */
+        private void close() {
+            if (statements != null) {
+                statements.clear();
+            }
+            closeQuietly(physical);
+        }
+
+        /**
+         * Creates a fresh handle for one borrower. Each handle can only return
+         * the connection once, so a double close cannot hand the same session
+         * to two callers.
+         */
+        private Connection lend() {
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Handle(this));
+        }
+    }
+
+    /**
+     * Forwards calls to the physical connection until the borrower closes it.
+     */
+    private final class Handle implements InvocationHandler {
+
+        private final PooledConnection pooled;
+        private boolean closed;
+
+        private Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pooled.physical.isClosed();
+                case "prepareStatement":
+                    if (!closed && pooled.statements != null && args.length == 1) {
+                        return pooled.statements.prepare((String) args[0]);
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooled.physical;
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    /**
+     * Book-keeping for a connection that is currently lent out.
+     */
+    private static final class Borrow {
+
+        private final long since = System.currentTimeMillis();
+        private final Throwable origin;
+        private volatile boolean reported;
+
+        private Borrow(Throwable origin) {
+            this.origin = origin;
+        }
+    }
+
+    /**
+     * An immutable snapshot of the pool counters.
+     */
+    public static final class Stats {
+
+        private final int maxSize;
+        private final int total;
+        private final int active;
+        private final int idle;
+        private final int waiters;
+        private final long borrows;
+        private final long waits;
+        private final long timeouts;
+        private final long leaks;
+        private final long averageWaitMicros;
+        private final long statementHits;
+        private final long statementMisses;
+
+        private Stats(int maxSize, int total, int active, int idle, int waiters,
+                long borrows, long waits, long timeouts, long leaks,
+                long averageWaitMicros, long statementHits, long statementMisses) {
+            this.maxSize = maxSize;
+            this.total = total;
+            this.active = active;
+            this.idle = idle;
+            this.waiters = waiters;
+            this.borrows = borrows;
+            this.waits = waits;
+            this.timeouts = timeouts;
+            this.leaks = leaks;
+            this.averageWaitMicros = averageWaitMicros;
+            this.statementHits = statementHits;
+            this.statementMisses = statementMisses;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        public int getWaiters() {
+            return waiters;
+        }
+
+        public long getBorrows() {
+            return borrows;
+        }
+
+        public long getWaits() {
+            return waits;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getLeaks() {
+            return leaks;
+        }
+
+        public long getAverageWaitMicros() {
+            return averageWaitMicros;
+        }
+
+        public long getStatementHits() {
+            return statementHits;
+        }
+
+        public long getStatementMisses() {
+            return statementMisses;
+        }
+
+        /**
+         * Returns the share of prepares served from the statement caches.
+         *
+         * @return A ratio between {@code 0} and {@code 1}.
+         */
+        public double getStatementHitRate() {
+            long lookups = statementHits + statementMisses;
+            return lookups == 0 ? 0d : (double) statementHits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats(maxSize=" + maxSize + ", total=" + total
+                    + ", active=" + active + ", idle=" + idle
+                    + ", waiters=" + waiters + ", borrows=" + borrows
+                    + ", waits=" + waits + ", timeouts=" + timeouts
+                    + ", leaks=" + leaks
+                    + ", averageWaitMicros=" + averageWaitMicros
+                    + ", statementHits=" + statementHits
+                    + ", statementMisses=" + statementMisses + ")";
+        }
+    }
+}
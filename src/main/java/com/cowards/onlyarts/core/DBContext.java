@@ -1,7 +1,6 @@
 package com.cowards.onlyarts.core;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -12,19 +11,46 @@ import java.util.logging.Logger;
  * The {@code DBContext} class represents a singleton database context for
  * managing database connections and resources. It provides methods for
  * obtaining and closing database connections, statements, and result sets.
+ * <p>
+ * Connections are lent out by a bounded {@link ConnectionPool}; every
+ * connection obtained from {@link #getConnection()} must be handed back with
+ * {@link #closeConnection(Connection)} once the caller is done with it.
+ * <p>
+ * While a {@link UnitOfWork} is bound to the current thread, every call to
+ * {@link #getConnection()} returns the connection of that unit and
+ * {@link #closeConnection(Connection)} leaves it open until the unit ends.
  */
 public final class DBContext {
 
     private static final String DB_NAME = "OnlyArts";
     private static final String DB_USERNAME = "sa";
     private static final String DB_PASSWORD = "12345";
+    private static final String DB_URL = "jdbc:sqlserver://localhost:1433;DatabaseName=" + DB_NAME
+            + ";encrypt=true;trustServerCertificate=true;";
+    private static final int POOL_MAX_SIZE
+            = Integer.getInteger("onlyarts.db.pool.maxSize", 20);
+    private static final long POOL_BORROW_TIMEOUT_MILLIS
+            = Long.getLong("onlyarts.db.pool.borrowTimeoutMillis", 5_000L);
+    private static final long POOL_LEAK_THRESHOLD_MILLIS
+            = Long.getLong("onlyarts.db.pool.leakThresholdMillis", 30_000L);
+    private static final int POOL_STATEMENT_CACHE_SIZE
+            = Integer.getInteger("onlyarts.db.pool.statementCacheSize", 64);
     private static DBContext instance;
-    private Connection conn;
+    private final ConnectionPool pool;
+    private final ThreadLocal<UnitOfWork> unitOfWork = new ThreadLocal<>();
 
     /**
      * Private constructor to prevent direct instantiation of {@code DBContext}.
      */
     private DBContext() {
+        try {
+            Class.forName("com.microsoft.sqlserver.jdbc.SQLServerDriver");
+        } catch (ClassNotFoundException ex) {
+            logError("Exception found on loading the SQL Server driver", ex);
+        }
+        pool = new ConnectionPool(DB_URL, DB_USERNAME, DB_PASSWORD,
+                POOL_MAX_SIZE, POOL_BORROW_TIMEOUT_MILLIS, POOL_LEAK_THRESHOLD_MILLIS,
+                POOL_STATEMENT_CACHE_SIZE);
     }
 
     /**
@@ -40,33 +66,124 @@ public final class DBContext {
     }
 
     /**
-     * Retrieves a connection to the database. If a connection does not exist or
-     * is closed, a new connection is created.
+     * Borrows a connection from the pool. The caller owns the connection until
+     * it is passed to {@link #closeConnection(Connection)}. If a unit of work
+     * is bound to the current thread, its connection is returned instead.
      *
-     * @return A connection to the database.
+     * @return A connection to the database, or {@code null} if none could be
+     * obtained.
      */
     public Connection getConnection() {
+        Connection conn = null;
         try {
-            if (conn == null || conn.isClosed()) {
-                Class.forName("com.microsoft.sqlserver.jdbc.SQLServerDriver");
-                String url = "jdbc:sqlserver://localhost:1433;DatabaseName=" + DB_NAME
-                        + ";encrypt=true;trustServerCertificate=true;";
-                conn = DriverManager.getConnection(url, DB_USERNAME, DB_PASSWORD);
-            }
-        } catch (SQLException | ClassNotFoundException ex) {
+            UnitOfWork unit = unitOfWork.get();
+            conn = unit != null ? unit.getConnection() : pool.borrow();
+        } catch (SQLException ex) {
             logError("Exception found on getConnection() method", ex);
         }
         return conn;
     }
 
     /**
-     * Closes the provided database connection.
+     * Binds a new unit of work to the current thread. Any unit left over from
+     * an earlier request on the same thread is rolled back first.
+     *
+     * @param transactional Whether the work of the unit runs as one
+     * transaction.
+     * @return The bound unit of work.
+     */
+    public UnitOfWork beginUnitOfWork(boolean transactional) {
+        UnitOfWork stale = unitOfWork.get();
+        if (stale != null) {
+            logError("A unit of work was not ended before the next one began",
+                    new IllegalStateException("Stale unit of work"));
+            stale.end(false);
+        }
+        UnitOfWork unit = new UnitOfWork(pool, transactional);
+        unitOfWork.set(unit);
+        return unit;
+    }
+
+    /**
+     * Ends the unit of work bound to the current thread, if any, and returns
+     * its connection to the pool.
+     *
+     * @param success Whether the work should be committed rather than rolled
+     * back.
+     * @return {@code true} if the work was committed or did not need to be,
+     * {@code false} otherwise.
+     */
+    public boolean endUnitOfWork(boolean success) {
+        UnitOfWork unit = unitOfWork.get();
+        if (unit == null) {
+            return success;
+        }
+        unitOfWork.remove();
+        return unit.end(success);
+    }
+
+    /**
+     * Checks whether the current thread runs inside a transactional unit of
+     * work. Caches must not keep values read in such a unit, because the
+     * writes it saw may still be rolled back.
+     *
+     * @return {@code true} if a transactional unit is bound to the current
+     * thread.
+     */
+    public boolean inTransaction() {
+        UnitOfWork unit = unitOfWork.get();
+        return unit != null && unit.isTransactional();
+    }
+
+    /**
+     * Runs an action once the current transactional unit of work has
+     * committed, or right away when there is none. The action is dropped if
+     * the unit is rolled back. Used to bump version counters again after a
+     * commit, so that a version read while the transaction was still open is
+     * never paired with the committed data, and to start background work that
+     * must only see committed rows.
+     *
+     * @param action The action to run.
+     */
+    public void afterCommit(Runnable action) {
+        UnitOfWork unit = unitOfWork.get();
+        if (unit != null && unit.isTransactional()) {
+            unit.afterCommit(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Retrieves the current statistics of the connection pool.
+     *
+     * @return A snapshot of the pool counters.
+     */
+    public ConnectionPool.Stats getPoolStats() {
+        return pool.getStats();
+    }
+
+    /**
+     * Closes every idle pooled connection. Called when the application is
+     * undeployed.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Returns the provided database connection to the pool. The connection of
+     * the current unit of work is left open until the unit ends.
      *
      * @param conn The connection to be closed.
      * @return {@code true} if the connection was successfully closed,
      * {@code false} otherwise.
      */
     public boolean closeConnection(Connection conn) {
+        UnitOfWork unit = unitOfWork.get();
+        if (unit != null && unit.holds(conn)) {
+            return false;
+        }
         if (conn != null) {
             try {
                 if (!conn.isClosed()) {
@@ -0,0 +1,163 @@
+package com.cowards.onlyarts.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Set;
+
+/**
+ * The {@code DataUrl} class converts between the base64 text that clients
+ * upload images as, either a {@code data:} URL or bare base64, and the raw
+ * bytes the images are stored as.
+ */
+public final class DataUrl {
+
+    /**
+     * The media type used when the type of an image cannot be told.
+     */
+    public static final String UNKNOWN_TYPE = "application/octet-stream";
+
+    /**
+     * The longest {@code data:} header, and the number of bytes a stream
+     * handed to {@link #openPayload} must be able to push back.
+     */
+    public static final int MAX_HEADER_LENGTH = 128;
+
+    private static final String PREFIX = "data:";
+    private static final String BASE64 = ";base64,";
+    private static final Set<String> RASTER_TYPES = Set.of(
+            "image/png", "image/jpeg", "image/gif", "image/webp", "image/bmp");
+
+    private DataUrl() {
+    }
+
+    /**
+     * Retrieves the base64 part of the uploaded text.
+     *
+     * @param text The uploaded text.
+     * @return The text after the {@code ;base64,} marker of a {@code data:}
+     * URL, or the whole text otherwise.
+     */
+    public static String payload(String text) {
+        if (text.startsWith(PREFIX)) {
+            int marker = text.indexOf(BASE64);
+            if (marker >= 0) {
+                return text.substring(marker + BASE64.length());
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Decodes the uploaded text into the bytes of the image.
+     *
+     * @param text The uploaded text.
+     * @return The bytes of the image.
+     * @throws IllegalArgumentException if the text is not valid base64.
+     */
+    public static byte[] decode(String text) {
+        return Base64.getDecoder().decode(payload(text).replaceAll("\\s", ""));
+    }
+
+    /**
+     * Opens streamed base64 text for decoding. The {@code data:} header, if
+     * any, is read off the stream first; the type it declares is not trusted
+     * and is dropped.
+     *
+     * @param text The base64 text, able to push back
+     * {@value #MAX_HEADER_LENGTH} bytes.
+     * @return The decoded bytes, or {@code null} if the start of the text is
+     * not base64, in which case the text is left unread.
+     * @throws IOException if the text cannot be read.
+     */
+    public static InputStream openPayload(PushbackInputStream text) throws IOException {
+        byte[] head = text.readNBytes(MAX_HEADER_LENGTH);
+        String start = new String(head, StandardCharsets.US_ASCII);
+        int from = 0;
+        if (start.startsWith(PREFIX)) {
+            int marker = start.indexOf(BASE64);
+            if (marker < 0) {
+                text.unread(head);
+                return null;
+            }
+            from = marker + BASE64.length();
+        }
+        for (int i = from; i < head.length; i++) {
+            char c = (char) head[i];
+            if (!(Character.isLetterOrDigit(c) && c < 128) && c != '+' && c != '/'
+                    && c != '=' && !Character.isWhitespace(c)) {
+                text.unread(head);
+                return null;
+            }
+        }
+        text.unread(head, from, head.length - from);
+        return Base64.getMimeDecoder().wrap(text);
+    }
+
+    /**
+     * Encodes the bytes of an image as a {@code data:} URL, the form legacy
+     * clients expect.
+     *
+     * @param contentType The media type of the image.
+     * @param data The bytes of the image.
+     * @return The {@code data:} URL.
+     */
+    public static String encode(String contentType, byte[] data) {
+        return PREFIX + contentType + BASE64 + Base64.getEncoder().encodeToString(data);
+    }
+
+    /**
+     * Tells the media type of an image from its first bytes.
+     *
+     * @param head The first bytes of the image; at least 12 are needed to
+     * recognise every supported format.
+     * @param length The number of valid bytes in {@code head}.
+     * @return The media type, or {@value #UNKNOWN_TYPE} if the format is not
+     * recognised.
+     */
+    public static String sniff(byte[] head, int length) {
+        if (startsWith(head, length, 0, 0x89, 'P', 'N', 'G')) {
+            return "image/png";
+        }
+        if (startsWith(head, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, length, 0, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (startsWith(head, length, 0, 'R', 'I', 'F', 'F')
+                && startsWith(head, length, 8, 'W', 'E', 'B', 'P')) {
+            return "image/webp";
+        }
+        if (startsWith(head, length, 0, 'B', 'M')) {
+            return "image/bmp";
+        }
+        return UNKNOWN_TYPE;
+    }
+
+    /**
+     * Tells whether a stored media type is one of the raster formats
+     * recognised by {@link #sniff}, and so safe to serve inline. Anything
+     * else, such as SVG, may carry script.
+     *
+     * @param contentType The stored media type.
+     * @return {@code true} if the type can be served inline.
+     */
+    public static boolean isRaster(String contentType) {
+        return RASTER_TYPES.contains(contentType);
+    }
+
+    private static boolean startsWith(byte[] head, int length, int from, int... magic) {
+        if (length < from + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((head[from + i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,78 @@
+package com.cowards.onlyarts.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The {@code InClause} class helps building {@code WHERE x IN (?, ?, ...)}
+ * queries for a list of keys.
+ * <p>
+ * Keys are split into chunks of at most {@value #MAX_CHUNK_SIZE}, well below
+ * the 2100 parameter limit of SQL Server, and every chunk is padded up to a
+ * power of two by repeating its last key. This keeps the number of distinct
+ * SQL texts small, so the statements stay in the pooled statement cache.
+ */
+public final class InClause {
+
+    /**
+     * The largest number of keys bound to one query.
+     */
+    public static final int MAX_CHUNK_SIZE = 512;
+
+    private InClause() {
+    }
+
+    /**
+     * Splits keys into padded chunks. Null and duplicate keys are dropped.
+     *
+     * @param keys The keys to look up.
+     * @return The chunks, each of which has a power of two size.
+     */
+    public static List<List<String>> partition(Collection<String> keys) {
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String key : keys) {
+            if (key != null) {
+                distinct.add(key);
+            }
+        }
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        for (String key : distinct) {
+            chunk.add(key);
+            if (chunk.size() == MAX_CHUNK_SIZE) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            String last = chunk.get(chunk.size() - 1);
+            int size = Integer.highestOneBit(chunk.size());
+            if (size < chunk.size()) {
+                size <<= 1;
+            }
+            while (chunk.size() < size) {
+                chunk.add(last);
+            }
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Builds the parameter list of an {@code IN} clause.
+     *
+     * @param count The number of parameters.
+     * @return The text {@code (?, ?, ...)} with {@code count} markers.
+     */
+    public static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder(count * 3 + 1);
+        sb.append('(');
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.append(')').toString();
+    }
+}
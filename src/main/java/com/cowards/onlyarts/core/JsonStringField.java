@@ -0,0 +1,231 @@
+package com.cowards.onlyarts.core;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+
+/**
+ * The {@code JsonStringField} class finds one string field of a JSON object
+ * and gives its value back as a stream, without building the value, or any
+ * other part of the document, in memory. It is meant for large base64 values
+ * that are decoded while they are read.
+ * <p>
+ * Only the top level object is searched. The value is unescaped; escapes that
+ * stand for characters outside of ASCII are rejected, since base64 never
+ * contains them.
+ */
+public final class JsonStringField {
+
+    private static final int MAX_KEY_LENGTH = 256;
+
+    private JsonStringField() {
+    }
+
+    /**
+     * Opens the value of a string field.
+     *
+     * @param json The JSON document; it is read up to the end of the value.
+     * @param field The name of the field.
+     * @return The unescaped value, ending at its closing quote, or
+     * {@code null} if the object has no such field or its value is
+     * {@code null}.
+     * @throws IOException if the document cannot be read or is malformed.
+     */
+    public static InputStream open(InputStream json, String field) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(new BufferedInputStream(json), 1);
+        expect(in, '{');
+        while (true) {
+            int c = skipWhitespace(in);
+            if (c == '}') {
+                return null;
+            }
+            if (c != '"') {
+                throw malformed(c);
+            }
+            String key = readKey(in);
+            expect(in, ':');
+            c = skipWhitespace(in);
+            if (key.equals(field)) {
+                if (c == '"') {
+                    return new Value(in);
+                }
+                if (c == 'n') {
+                    return null;
+                }
+                throw malformed(c);
+            }
+            in.unread(c);
+            skipValue(in);
+            c = skipWhitespace(in);
+            if (c == '}') {
+                return null;
+            }
+            if (c != ',') {
+                throw malformed(c);
+            }
+        }
+    }
+
+    private static void expect(PushbackInputStream in, char wanted) throws IOException {
+        int c = skipWhitespace(in);
+        if (c != wanted) {
+            throw malformed(c);
+        }
+    }
+
+    private static int skipWhitespace(InputStream in) throws IOException {
+        int c;
+        do {
+            c = in.read();
+        } while (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+        if (c == -1) {
+            throw new IOException("Unexpected end of JSON");
+        }
+        return c;
+    }
+
+    private static String readKey(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        Value value = new Value(in);
+        int c;
+        while ((c = value.read()) != -1) {
+            if (sb.length() == MAX_KEY_LENGTH) {
+                throw new IOException("JSON key is too long");
+            }
+            sb.append((char) c);
+        }
+        return sb.toString();
+    }
+
+    private static void skipValue(PushbackInputStream in) throws IOException {
+        int depth = 0;
+        while (true) {
+            int c = in.read();
+            switch (c) {
+                case -1:
+                    throw new IOException("Unexpected end of JSON");
+                case '"':
+                    skipString(in);
+                    break;
+                case '{':
+                case '[':
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    if (depth == 0) {
+                        in.unread(c);
+                        return;
+                    }
+                    depth--;
+                    break;
+                case ',':
+                    if (depth == 0) {
+                        in.unread(c);
+                        return;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (depth == 0 && (c == '"' || c == '}' || c == ']')) {
+                return;
+            }
+        }
+    }
+
+    private static void skipString(InputStream in) throws IOException {
+        int c;
+        while ((c = in.read()) != '"') {
+            if (c == -1) {
+                throw new IOException("Unexpected end of JSON");
+            }
+            if (c == '\\' && in.read() == -1) {
+                throw new IOException("Unexpected end of JSON");
+            }
+        }
+    }
+
+    private static IOException malformed(int c) {
+        return new IOException(c == -1 ? "Unexpected end of JSON"
+                : "Unexpected character '" + (char) c + "' in JSON");
+    }
+
+    /**
+     * The unescaped characters of a string, up to its closing quote.
+     */
+    private static final class Value extends InputStream {
+
+        private final InputStream in;
+        private boolean done;
+
+        private Value(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (done) {
+                return -1;
+            }
+            int c = in.read();
+            if (c == '"') {
+                done = true;
+                return -1;
+            }
+            if (c == -1) {
+                throw new IOException("Unexpected end of JSON");
+            }
+            if (c != '\\') {
+                return c;
+            }
+            c = in.read();
+            switch (c) {
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                case 'b':
+                    return '\b';
+                case 'f':
+                    return '\f';
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(in.read(), 16);
+                        if (digit < 0) {
+                            throw new IOException("Malformed escape in JSON");
+                        }
+                        code = code * 16 + digit;
+                    }
+                    if (code > 0x7F) {
+                        throw new IOException("Unexpected non-ASCII escape in JSON");
+                    }
+                    return code;
+                case -1:
+                    throw new IOException("Unexpected end of JSON");
+                default:
+                    return c;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n = 0;
+            while (n < len) {
+                int c = read();
+                if (c == -1) {
+                    break;
+                }
+                b[off + n++] = (byte) c;
+            }
+            return n == 0 ? -1 : n;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.cowards.onlyarts.core;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The {@code LimitedInputStream} class fails a read once more than a given
+ * number of bytes has been read, so that an upload can be streamed to storage
+ * without trusting the size the client announced.
+ * <p>
+ * Callers should check {@link #isExceeded()} after a failed write, because
+ * some consumers, such as the JDBC driver, wrap the exception thrown here in
+ * their own.
+ */
+public final class LimitedInputStream extends FilterInputStream {
+
+    private final long limit;
+    private long count;
+    private boolean exceeded;
+
+    /**
+     * Creates a limited stream.
+     *
+     * @param in The stream to read from.
+     * @param limit The largest number of bytes that may be read.
+     */
+    public LimitedInputStream(InputStream in, long limit) {
+        super(in);
+        this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) {
+            count(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(long read) throws IOException {
+        count += read;
+        if (count > limit) {
+            exceeded = true;
+            throw new IOException("The upload is larger than " + limit + " bytes");
+        }
+    }
+
+    /**
+     * Checks whether the limit was hit.
+     *
+     * @return {@code true} if more than the limit was read.
+     */
+    public boolean isExceeded() {
+        return exceeded;
+    }
+}
@@ -0,0 +1,483 @@
+package com.cowards.onlyarts.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code OffHeapCache} class keeps byte values, such as images, in one
+ * direct buffer outside of the Java heap, so that caching them adds nothing
+ * for the garbage collector to scan or copy. Only the small index lives on
+ * the heap.
+ * <p>
+ * The buffer is split into fixed pages; a value takes as many pages as it
+ * needs, and its pages return to a free list when it is evicted. Eviction is
+ * least recently used within a byte budget. A new value is only admitted if
+ * it has been asked for more often than the value it would evict, as counted
+ * by a small frequency sketch (TinyLFU), so a burst of one-off reads cannot
+ * flush the hot set.
+ * <p>
+ * A value being read is never overwritten: readers pin it, and the pages of
+ * an evicted value are only reused once its last reader is done.
+ *
+ * @param <K> The type of the keys.
+ */
+public final class OffHeapCache<K> {
+
+    private static final int PAGE_SIZE = 64 * 1024;
+    private static final ThreadLocal<byte[]> SCRATCH
+            = ThreadLocal.withInitial(() -> new byte[PAGE_SIZE]);
+
+    private final ByteBuffer arena;
+    private final int[] freePages;
+    private int freeCount;
+    private final int maxEntryBytes;
+    private final LinkedHashMap<K, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private long usedBytes;
+
+    /**
+     * Creates a cache and allocates its buffer.
+     *
+     * @param maxBytes The size of the buffer, rounded down to whole pages of
+     * 64 KiB; at most 2 GiB.
+     * @param maxEntryBytes The largest value that may be cached.
+     */
+    public OffHeapCache(long maxBytes, int maxEntryBytes) {
+        int pages = (int) Math.max(1, Math.min(Integer.MAX_VALUE / PAGE_SIZE, maxBytes / PAGE_SIZE));
+        this.arena = ByteBuffer.allocateDirect(pages * PAGE_SIZE);
+        this.freePages = new int[pages];
+        for (int i = 0; i < pages; i++) {
+            freePages[i] = pages - 1 - i;
+        }
+        this.freeCount = pages;
+        this.maxEntryBytes = Math.min(maxEntryBytes, pages * PAGE_SIZE);
+        this.sketch = new FrequencySketch(pages * 4);
+    }
+
+    /**
+     * Looks a value up and pins it until {@link Value#release()} is called.
+     *
+     * @param key The key of the value.
+     * @return The pinned value, or {@code null} on a miss.
+     */
+    public Value get(K key) {
+        Entry entry;
+        synchronized (this) {
+            sketch.increment(key);
+            entry = entries.get(key);
+            if (entry == null || !entry.pin()) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        hits.incrementAndGet();
+        return new Value(entry);
+    }
+
+    /**
+     * Pins a value without counting a lookup, for a reader that already
+     * looked it up with {@link #get} and comes back for the bytes later.
+     *
+     * @param key The key of the value.
+     * @return The pinned value, or {@code null} if it has been evicted since.
+     */
+    public synchronized Value pin(K key) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.pin() ? new Value(entry) : null;
+    }
+
+    /**
+     * Reserves the pages for a new value, unless it is too large or is used
+     * less often than the value it would evict. Nothing has to be read before
+     * this is decided; the bytes are then written straight into the pages
+     * through the returned reservation.
+     *
+     * @param key The key of the value.
+     * @param length The number of bytes of the value.
+     * @param type A short description kept with the value, such as its media
+     * type.
+     * @return The reservation to write the value to, or {@code null} if the
+     * value is not admitted or is already cached.
+     */
+    public Reservation reserve(K key, int length, String type) {
+        if (length <= 0 || length > maxEntryBytes) {
+            return null;
+        }
+        int count = (length + PAGE_SIZE - 1) / PAGE_SIZE;
+        int[] pages = new int[count];
+        synchronized (this) {
+            if (entries.containsKey(key)) {
+                return null;
+            }
+            if (!makeRoom(key, count)) {
+                rejections.incrementAndGet();
+                return null;
+            }
+            for (int i = 0; i < count; i++) {
+                pages[i] = freePages[--freeCount];
+            }
+        }
+        return new Reservation(key, new Entry(pages, length, type));
+    }
+
+    /**
+     * Frees enough pages for a new value, if the value is worth more than
+     * what has to be evicted for it. Values that are being read are skipped,
+     * since their pages would not be freed yet.
+     */
+    private boolean makeRoom(K key, int needed) {
+        if (freeCount >= needed) {
+            return true;
+        }
+        int candidate = sketch.frequency(key);
+        int reclaimable = freeCount;
+        int victims = 0;
+        for (Map.Entry<K, Entry> eldest : entries.entrySet()) {
+            if (reclaimable >= needed) {
+                break;
+            }
+            if (eldest.getValue().holders.get() == 1) {
+                if (victims == 0 && sketch.frequency(eldest.getKey()) >= candidate) {
+                    return false;
+                }
+                reclaimable += eldest.getValue().pages.length;
+                victims++;
+            }
+        }
+        if (reclaimable < needed) {
+            return false;
+        }
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (victims > 0) {
+            Entry victim = eldest.next();
+            if (victim.holders.get() == 1) {
+                eldest.remove();
+                usedBytes -= victim.length;
+                evictions.incrementAndGet();
+                victim.release();
+                victims--;
+            }
+        }
+        return freeCount >= needed;
+    }
+
+    /**
+     * Removes a value.
+     *
+     * @param key The key of the value.
+     */
+    public synchronized void invalidate(K key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            usedBytes -= entry.length;
+            entry.release();
+        }
+    }
+
+    private synchronized void free(int[] pages) {
+        for (int page : pages) {
+            freePages[freeCount++] = page;
+        }
+    }
+
+    /**
+     * Retrieves the number of lookups that found their value.
+     *
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Retrieves the number of lookups that found nothing.
+     *
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Retrieves the number of values evicted to make room for others.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Retrieves the number of values not admitted because they were used less
+     * often than the values they would have evicted.
+     *
+     * @return The number of rejections.
+     */
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    /**
+     * Retrieves the number of bytes held by cached values.
+     *
+     * @return The used bytes.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Retrieves the number of cached values.
+     *
+     * @return The number of values.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * A value pinned for reading.
+     */
+    public final class Value {
+
+        private final Entry entry;
+        private boolean released;
+
+        private Value(Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * Retrieves the size of the value.
+         *
+         * @return The number of bytes.
+         */
+        public int getLength() {
+            return entry.length;
+        }
+
+        /**
+         * Retrieves the description kept with the value.
+         *
+         * @return The description given to {@link #put}.
+         */
+        public String getType() {
+            return entry.type;
+        }
+
+        /**
+         * Writes a part of the value.
+         *
+         * @param out The stream to write to.
+         * @param offset The index of the first byte to write.
+         * @param count The number of bytes to write.
+         * @throws IOException if the bytes cannot be written.
+         */
+        public void writeTo(OutputStream out, long offset, long count) throws IOException {
+            entry.writeTo(out, offset, count);
+        }
+
+        /**
+         * Unpins the value. Must be called exactly once.
+         */
+        public void release() {
+            if (!released) {
+                released = true;
+                entry.release();
+            }
+        }
+    }
+
+    /**
+     * Pages reserved for a value that is being written. The value becomes
+     * visible once {@link #commit()} is called; until then it can only be
+     * given up with {@link #abort()}.
+     */
+    public final class Reservation extends OutputStream {
+
+        private final K key;
+        private final Entry entry;
+        private final ByteBuffer view = arena.duplicate();
+        private int written;
+        private boolean done;
+
+        private Reservation(K key, Entry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (done || len > entry.length - written) {
+                throw new IOException("Expected " + entry.length + " bytes");
+            }
+            while (len > 0) {
+                int page = entry.pages[written / PAGE_SIZE];
+                int within = written % PAGE_SIZE;
+                int size = Math.min(len, PAGE_SIZE - within);
+                view.position(page * PAGE_SIZE + within);
+                view.put(b, off, size);
+                off += size;
+                len -= size;
+                written += size;
+            }
+        }
+
+        /**
+         * Adds the written value to the cache.
+         *
+         * @throws IOException if fewer bytes were written than reserved, in
+         * which case the pages are given back.
+         */
+        public void commit() throws IOException {
+            if (done) {
+                return;
+            }
+            if (written != entry.length) {
+                abort();
+                throw new IOException("Expected " + entry.length + " bytes");
+            }
+            done = true;
+            synchronized (OffHeapCache.this) {
+                Entry previous = entries.put(key, entry);
+                usedBytes += entry.length;
+                if (previous != null) {
+                    usedBytes -= previous.length;
+                    previous.release();
+                }
+            }
+        }
+
+        /**
+         * Gives the reserved pages back without caching anything.
+         */
+        public void abort() {
+            if (!done) {
+                done = true;
+                free(entry.pages);
+            }
+        }
+    }
+
+    /**
+     * The pages of one value and the number of holders that keep them from
+     * being reused: the cache itself and every reader.
+     */
+    private final class Entry {
+
+        private final int[] pages;
+        private final int length;
+        private final String type;
+        private final AtomicInteger holders = new AtomicInteger(1);
+
+        private Entry(int[] pages, int length, String type) {
+            this.pages = pages;
+            this.length = length;
+            this.type = type;
+        }
+
+        private boolean pin() {
+            int current;
+            do {
+                current = holders.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!holders.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        private void release() {
+            if (holders.decrementAndGet() == 0) {
+                free(pages);
+            }
+        }
+
+        private void writeTo(OutputStream out, long offset, long count) throws IOException {
+            byte[] scratch = SCRATCH.get();
+            ByteBuffer view = arena.duplicate();
+            long position = offset;
+            long remaining = count;
+            while (remaining > 0) {
+                int page = pages[(int) (position / PAGE_SIZE)];
+                int within = (int) (position % PAGE_SIZE);
+                int size = (int) Math.min(remaining, PAGE_SIZE - within);
+                view.position(page * PAGE_SIZE + within);
+                view.get(scratch, 0, size);
+                out.write(scratch, 0, size);
+                position += size;
+                remaining -= size;
+            }
+        }
+    }
+
+    /**
+     * A count-min sketch of how often keys are asked for, with four 4-bit
+     * counters per key. All counters are halved periodically, so that the
+     * counts follow recent popularity.
+     */
+    private static final class FrequencySketch {
+
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+        private final byte[][] rows = new byte[SEEDS.length][];
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(int expected) {
+            int width = Integer.highestOneBit(Math.max(1024, expected - 1)) << 1;
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = new byte[width];
+            }
+            this.mask = width - 1;
+            this.sampleSize = width * 10;
+        }
+
+        private void increment(Object key) {
+            int hash = key.hashCode();
+            for (int i = 0; i < rows.length; i++) {
+                int index = index(hash, i);
+                if (rows[i][index] < 15) {
+                    rows[i][index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                for (byte[] row : rows) {
+                    for (int j = 0; j < row.length; j++) {
+                        row[j] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        private int frequency(Object key) {
+            int hash = key.hashCode();
+            int min = Integer.MAX_VALUE;
+            for (int i = 0; i < rows.length; i++) {
+                min = Math.min(min, rows[i][index(hash, i)]);
+            }
+            return min;
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
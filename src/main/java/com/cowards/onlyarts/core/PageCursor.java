@@ -0,0 +1,51 @@
+package com.cowards.onlyarts.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The {@code PageCursor} class encodes the sort key of the last row of a page
+ * into an opaque continuation token, and decodes it back when the next page is
+ * requested. Clients must treat the token as an opaque string.
+ */
+public final class PageCursor {
+
+    private static final String PREFIX = "c1|";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private PageCursor() {
+    }
+
+    /**
+     * Encodes the sort key of a row into a cursor.
+     *
+     * @param parts The values of the sort key, in order. None of them may
+     * contain the {@code |} character.
+     * @return The opaque cursor.
+     */
+    public static String encode(String... parts) {
+        String payload = PREFIX + String.join("|", parts);
+        return ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor back into the values of its sort key.
+     *
+     * @param cursor The cursor given to the client.
+     * @param count The number of values the sort key is made of.
+     * @return The values of the sort key.
+     * @throws IllegalArgumentException if the cursor is malformed.
+     */
+    public static String[] decode(String cursor, int count) {
+        String payload = new String(DECODER.decode(cursor), StandardCharsets.UTF_8);
+        if (!payload.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("Unknown cursor version");
+        }
+        String[] parts = payload.substring(PREFIX.length()).split("\\|", -1);
+        if (parts.length != count) {
+            throw new IllegalArgumentException("Unexpected cursor length");
+        }
+        return parts;
+    }
+}
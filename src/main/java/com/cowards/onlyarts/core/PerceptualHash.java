@@ -0,0 +1,96 @@
+package com.cowards.onlyarts.core;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.Arrays;
+
+/**
+ * The {@code PerceptualHash} class computes a 64-bit fingerprint of an image
+ * that stays nearly the same when the image is scaled, recompressed or
+ * slightly retouched. Two images are near-duplicates when the Hamming
+ * distance between their fingerprints is small.
+ * <p>
+ * The image is reduced to 32x32 grey levels and transformed with a DCT; each
+ * bit tells whether one of the 64 lowest frequencies is above their median.
+ */
+public final class PerceptualHash {
+
+    private static final int SIZE = 32;
+    private static final int LOW = 8;
+    private static final double[][] COSINES = new double[SIZE][SIZE];
+
+    static {
+        for (int k = 0; k < SIZE; k++) {
+            for (int n = 0; n < SIZE; n++) {
+                COSINES[k][n] = Math.cos((2 * n + 1) * k * Math.PI / (2 * SIZE));
+            }
+        }
+    }
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Computes the fingerprint of an image.
+     *
+     * @param image The decoded image, of any size.
+     * @return The 64-bit fingerprint.
+     */
+    public static long of(BufferedImage image) {
+        BufferedImage grey = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = grey.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, SIZE, SIZE, null);
+        } finally {
+            g.dispose();
+        }
+        Raster raster = grey.getRaster();
+        double[][] pixels = new double[SIZE][SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                pixels[y][x] = raster.getSample(x, y, 0);
+            }
+        }
+        double[] low = new double[LOW * LOW];
+        for (int v = 0; v < LOW; v++) {
+            for (int u = 0; u < LOW; u++) {
+                double sum = 0;
+                for (int y = 0; y < SIZE; y++) {
+                    double row = 0;
+                    for (int x = 0; x < SIZE; x++) {
+                        row += pixels[y][x] * COSINES[u][x];
+                    }
+                    sum += row * COSINES[v][y];
+                }
+                low[v * LOW + u] = sum;
+            }
+        }
+        // The first coefficient is the average brightness and would skew
+        // the median, so it is left out of it.
+        double[] sorted = Arrays.copyOfRange(low, 1, low.length);
+        Arrays.sort(sorted);
+        double median = (sorted[sorted.length / 2 - 1] + sorted[sorted.length / 2]) / 2;
+        long hash = 0;
+        for (int i = 0; i < low.length; i++) {
+            if (low[i] > median) {
+                hash |= 1L << i;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Counts the bits in which two fingerprints differ.
+     *
+     * @param a The first fingerprint.
+     * @param b The second fingerprint.
+     * @return The Hamming distance, from 0 to 64.
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
@@ -0,0 +1,220 @@
+package com.cowards.onlyarts.core;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * The {@code Projection} class describes which JSON fields of a list endpoint
+ * map to which table columns, so that a {@code fields=} query parameter can
+ * narrow both the SQL select list and the JSON response to what the client
+ * asked for.
+ * <p>
+ * A projection may also define named presets, such as {@code card}, that
+ * stand for a fixed group of fields. The key field is always selected.
+ */
+public final class Projection {
+
+    /**
+     * How a column is read from a result set.
+     */
+    public enum Type {
+        STRING, INT, FLOAT, DATE
+    }
+
+    private final String keyField;
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    private final Map<String, List<String>> presets = new LinkedHashMap<>();
+
+    /**
+     * Creates a projection.
+     *
+     * @param keyField The field that is always selected.
+     */
+    public Projection(String keyField) {
+        this.keyField = keyField;
+    }
+
+    /**
+     * Adds a field to the projection.
+     *
+     * @param field The name of the field in the JSON response.
+     * @param column The name of the column, without table alias.
+     * @param type How the column is read.
+     * @return This projection.
+     */
+    public Projection field(String field, String column, Type type) {
+        columns.put(field, new Column(field, column, type));
+        return this;
+    }
+
+    /**
+     * Adds a named group of fields.
+     *
+     * @param name The name of the preset, as used in {@code fields=}.
+     * @param fields The fields the preset stands for.
+     * @return This projection.
+     */
+    public Projection preset(String name, String... fields) {
+        presets.put(name, Arrays.asList(fields));
+        return this;
+    }
+
+    /**
+     * Parses the value of a {@code fields=} query parameter.
+     *
+     * @param fields A comma separated list of field and preset names.
+     * @return The selected fields, in the order they were defined.
+     * @throws IllegalArgumentException if a name is neither a field nor a
+     * preset.
+     */
+    public Selection select(String fields) {
+        Set<String> wanted = new LinkedHashSet<>();
+        wanted.add(keyField);
+        for (String name : fields.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (presets.containsKey(name)) {
+                wanted.addAll(presets.get(name));
+            } else if (columns.containsKey(name)) {
+                wanted.add(name);
+            } else {
+                throw new IllegalArgumentException("Unknown field " + name);
+            }
+        }
+        List<Column> selected = new ArrayList<>();
+        for (Column column : columns.values()) {
+            if (wanted.contains(column.field)) {
+                selected.add(column);
+            }
+        }
+        return new Selection(Collections.unmodifiableList(selected));
+    }
+
+    /**
+     * Parses the value of an optional {@code fields=} query parameter.
+     *
+     * @param <E> The type of the error reported for an unknown name.
+     * @param fields A comma separated list of field and preset names, or
+     * {@code null}.
+     * @param error Creates the error from a message and its cause.
+     * @return The selected fields, or {@code null} if the parameter is absent
+     * or blank and every field is wanted.
+     * @throws E if a name is neither a field nor a preset.
+     */
+    public <E extends Exception> Selection parse(String fields,
+            BiFunction<String, Throwable, E> error) throws E {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        try {
+            return select(fields);
+        } catch (IllegalArgumentException ex) {
+            throw error.apply(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * A set of fields chosen from a projection.
+     */
+    public static final class Selection {
+
+        private final List<Column> columns;
+
+        private Selection(List<Column> columns) {
+            this.columns = columns;
+        }
+
+        /**
+         * Builds the select list for the chosen fields.
+         *
+         * @param alias The alias of the table the columns belong to.
+         * @return The comma separated column list, each column labelled with
+         * its field name.
+         */
+        public String columns(String alias) {
+            StringBuilder sb = new StringBuilder();
+            for (Column column : columns) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(alias).append(".[").append(column.column)
+                        .append("] AS [").append(column.field).append(']');
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Lists the chosen fields in their canonical order, so that two
+         * {@code fields=} values choosing the same fields give the same text.
+         *
+         * @return The comma separated field names.
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (Column column : columns) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(column.field);
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Reads the chosen fields of the current row.
+         *
+         * @param rs The result set, positioned on a row.
+         * @return The fields of the row, in the order they were defined.
+         * @throws SQLException if a column cannot be read.
+         */
+        public Map<String, Object> read(ResultSet rs) throws SQLException {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (Column column : columns) {
+                Object value;
+                switch (column.type) {
+                    case INT:
+                        value = rs.getInt(column.field);
+                        break;
+                    case FLOAT:
+                        value = rs.getFloat(column.field);
+                        break;
+                    case DATE:
+                        value = rs.getDate(column.field);
+                        break;
+                    default:
+                        value = rs.getString(column.field);
+                }
+                row.put(column.field, value);
+            }
+            return row;
+        }
+    }
+
+    /**
+     * A field and the column it is read from.
+     */
+    private static final class Column {
+
+        private final String field;
+        private final String column;
+        private final Type type;
+
+        private Column(String field, String column, Type type) {
+            this.field = field;
+            this.column = column;
+            this.type = type;
+        }
+    }
+}
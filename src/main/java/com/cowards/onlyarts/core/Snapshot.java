@@ -0,0 +1,214 @@
+package com.cowards.onlyarts.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@code Snapshot} class keeps the result of a small, frequently read
+ * query as an immutable list in memory. Readers always get the current list
+ * without touching the database; the list is reloaded in the background after
+ * a relevant write calls {@link #invalidate()}, or once it is older than the
+ * refresh interval.
+ * <p>
+ * The first read loads the list synchronously. After that a stale list keeps
+ * being served while at most one reload is in flight.
+ *
+ * @param <T> The type of the items of the list.
+ */
+public final class Snapshot<T> {
+
+    private static ExecutorService refresher;
+
+    private final String name;
+    private final Supplier<List<T>> loader;
+    private final long refreshMillis;
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private final AtomicLong invalidations = new AtomicLong();
+    private volatile Version<T> current;
+    private volatile long loadedAt;
+    private volatile long loadedInvalidations;
+    private String fingerprint;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param name The name of the snapshot, used in log messages.
+     * @param loader Loads the current list from the database.
+     * @param refreshMillis How old the list may get before it is reloaded.
+     */
+    public Snapshot(String name, Supplier<List<T>> loader, long refreshMillis) {
+        this.name = name;
+        this.loader = loader;
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * Retrieves the current list.
+     *
+     * @return An unmodifiable list.
+     */
+    public List<T> get() {
+        return getVersion().getItems();
+    }
+
+    /**
+     * Retrieves the current list together with its generation, read at the
+     * same instant so that one is never paired with the other of a
+     * different reload.
+     *
+     * @return The current version of the list.
+     */
+    public Version<T> getVersion() {
+        Version<T> version = current;
+        if (version == null) {
+            synchronized (this) {
+                if (current == null) {
+                    load();
+                }
+                return current;
+            }
+        }
+        refreshIfStale();
+        return version;
+    }
+
+    /**
+     * Marks the list as out of date. The next read triggers a reload, so a
+     * write made inside a transaction is picked up once it is committed.
+     */
+    public void invalidate() {
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Retrieves a counter that changes every time a reload returns a list
+     * that differs from the current one, as told by the {@code toString()} of
+     * its items. Unlike {@link #get()}, this never loads the list, so it is
+     * cheap enough to check before deciding whether the list is needed.
+     *
+     * @return The generation of the current list, {@code 0} if it has not
+     * been loaded yet.
+     */
+    public long getGeneration() {
+        Version<T> version = current;
+        if (version == null) {
+            return 0L;
+        }
+        refreshIfStale();
+        return version.getGeneration();
+    }
+
+    private void refreshIfStale() {
+        if (loadedInvalidations != invalidations.get()
+                || System.currentTimeMillis() - loadedAt >= refreshMillis) {
+            refreshAsync();
+        }
+    }
+
+    private void refreshAsync() {
+        if (!loading.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor().execute(() -> {
+                try {
+                    load();
+                } finally {
+                    loading.set(false);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            loading.set(false);
+        }
+    }
+
+    private void load() {
+        long seen = invalidations.get();
+        try {
+            List<T> loaded = Collections.unmodifiableList(new ArrayList<>(loader.get()));
+            String print = loaded.toString();
+            synchronized (invalidations) {
+                long generation = current == null ? 0L : current.getGeneration();
+                if (!print.equals(fingerprint)) {
+                    fingerprint = print;
+                    generation++;
+                }
+                current = new Version<>(loaded, generation);
+            }
+            loadedInvalidations = seen;
+            loadedAt = System.currentTimeMillis();
+        } catch (RuntimeException ex) {
+            Logger.getLogger(Snapshot.class.getName()).log(Level.SEVERE,
+                    "Exception found on loading the " + name + " snapshot", ex);
+            synchronized (invalidations) {
+                if (current == null) {
+                    current = new Version<>(Collections.<T>emptyList(), 0L);
+                }
+            }
+        }
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (refresher == null) {
+            refresher = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "onlyarts-snapshots");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return refresher;
+    }
+
+    /**
+     * Stops the background thread that reloads snapshots.
+     */
+    public static synchronized void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    /**
+     * A loaded list and its generation.
+     *
+     * @param <T> The type of the items of the list.
+     */
+    public static final class Version<T> {
+
+        private final List<T> items;
+        private final long generation;
+
+        private Version(List<T> items, long generation) {
+            this.items = items;
+            this.generation = generation;
+        }
+
+        /**
+         * Retrieves the list.
+         *
+         * @return An unmodifiable list.
+         */
+        public List<T> getItems() {
+            return items;
+        }
+
+        /**
+         * Retrieves the generation of the list.
+         *
+         * @return The generation.
+         */
+        public long getGeneration() {
+            return generation;
+        }
+    }
+}
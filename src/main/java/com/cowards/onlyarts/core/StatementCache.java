@@ -0,0 +1,230 @@
+package com.cowards.onlyarts.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@code StatementCache} class keeps the prepared statements of one pooled
+ * connection open between calls, keyed by their SQL text, and evicts the least
+ * recently used ones once the cache is full.
+ * <p>
+ * Statements handed out by the cache are wrapped so that calling
+ * {@link PreparedStatement#close()} returns them to the cache instead of
+ * unpreparing them on the server. A cache is only ever used by the thread that
+ * currently borrows its connection, so it is not synchronized.
+ */
+final class StatementCache {
+
+    private final Connection physical;
+    private final int maxSize;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * Creates a statement cache for a physical connection.
+     *
+     * @param physical The connection the statements are prepared on.
+     * @param maxSize The maximum number of statements kept open.
+     * @param hits The counter incremented when a cached statement is reused.
+     * @param misses The counter incremented when a statement has to be
+     * prepared.
+     */
+    StatementCache(Connection physical, int maxSize, AtomicLong hits, AtomicLong misses) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns a prepared statement for the given SQL text, reusing a cached one
+     * when it is not already in use by the caller.
+     *
+     * @param sql The SQL text of the statement.
+     * @return A prepared statement that returns itself to the cache when
+     * closed.
+     * @throws SQLException if the statement cannot be prepared.
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        Entry entry = entries.get(sql);
+        if (entry != null && entry.owner == null) {
+            hits.incrementAndGet();
+            return entry.lend();
+        }
+        misses.incrementAndGet();
+        PreparedStatement stm = physical.prepareStatement(sql);
+        if (entry != null) {
+            // The cached statement is still open in the same call chain, so
+            // this one is used once and really closed afterwards.
+            return stm;
+        }
+        try {
+            entry = new Entry(stm);
+        } catch (SQLException ex) {
+            closeQuietly(stm);
+            throw ex;
+        }
+        entries.put(sql, entry);
+        evict();
+        return entry.lend();
+    }
+
+    /**
+     * Marks every statement as free again. Called when the connection goes back
+     * to the pool, so that a statement the borrower forgot to close does not
+     * stay pinned forever.
+     */
+    void reset() {
+        for (Entry entry : entries.values()) {
+            if (entry.owner != null) {
+                entry.owner = null;
+                entry.restore();
+            }
+        }
+    }
+
+    /**
+     * Closes every cached statement. Called when the connection is closed for
+     * good, so the statements are not left to the driver's finalizers.
+     */
+    void clear() {
+        for (Entry entry : entries.values()) {
+            closeQuietly(entry.statement);
+        }
+        entries.clear();
+    }
+
+    private void evict() {
+        if (entries.size() <= maxSize) {
+            return;
+        }
+        List<Entry> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (entry.owner == null) {
+                it.remove();
+                evicted.add(entry);
+            }
+        }
+        for (Entry entry : evicted) {
+            closeQuietly(entry.statement);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement stm) {
+        try {
+            stm.close();
+        } catch (SQLException ex) {
+            Logger.getLogger(StatementCache.class.getName())
+                    .log(Level.FINE, "Exception found on closing a cached statement", ex);
+        }
+    }
+
+    /**
+     * A cached statement together with its lending state and the settings it
+     * was prepared with.
+     */
+    private static final class Entry {
+
+        private final PreparedStatement statement;
+        private final int maxRows;
+        private final int fetchSize;
+        private final int queryTimeout;
+        private Handle owner;
+
+        private Entry(PreparedStatement statement) throws SQLException {
+            this.statement = statement;
+            this.maxRows = statement.getMaxRows();
+            this.fetchSize = statement.getFetchSize();
+            this.queryTimeout = statement.getQueryTimeout();
+        }
+
+        /**
+         * Puts the statement back the way it was prepared, so nothing the last
+         * borrower left behind reaches the next one: an open result set, bound
+         * parameters, a pending batch, or changed limits.
+         */
+        private void restore() {
+            try {
+                ResultSet rs = statement.getResultSet();
+                if (rs != null) {
+                    rs.close();
+                }
+                statement.clearParameters();
+                statement.clearBatch();
+                statement.setMaxRows(maxRows);
+                statement.setFetchSize(fetchSize);
+                statement.setQueryTimeout(queryTimeout);
+            } catch (SQLException ex) {
+                Logger.getLogger(StatementCache.class.getName())
+                        .log(Level.FINE, "Exception found on restoring a cached statement", ex);
+            }
+        }
+
+        private PreparedStatement lend() {
+            owner = new Handle(this);
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    StatementCache.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    owner);
+        }
+    }
+
+    /**
+     * Forwards calls to the cached statement until the caller closes it.
+     */
+    private static final class Handle implements InvocationHandler {
+
+        private final Entry entry;
+
+        private Handle(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (entry.owner == this) {
+                        entry.owner = null;
+                        entry.restore();
+                    }
+                    return null;
+                case "isClosed":
+                    return entry.owner != this || entry.statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached" + entry.statement;
+                default:
+                    if (entry.owner != this) {
+                        throw new SQLException("Statement has already been returned to the cache");
+                    }
+                    try {
+                        return method.invoke(entry.statement, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.cowards.onlyarts.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code TimelineBuffer} class keeps the newest entries of a timeline,
+ * such as the artworks in the home feed of a user, in a fixed-size ring
+ * buffer. Entries are ordered newest first by time, then by ID; adding to a
+ * full buffer drops the oldest entry.
+ * <p>
+ * A page is read by binary searching the position after the cursor and
+ * copying the following entries, so reading costs the size of the page, not
+ * of the timeline. The buffer is safe for concurrent use.
+ */
+public final class TimelineBuffer {
+
+    private final long[] times;
+    private final String[] ids;
+    private int head = -1;
+    private int size;
+
+    /**
+     * Creates an empty timeline.
+     *
+     * @param capacity The number of entries kept.
+     */
+    public TimelineBuffer(int capacity) {
+        this.times = new long[Math.max(1, capacity)];
+        this.ids = new String[times.length];
+    }
+
+    /**
+     * Adds an entry in its place. An entry older than every entry of a full
+     * buffer, or with an ID already at the same time, is ignored.
+     *
+     * @param time The time of the entry, in milliseconds.
+     * @param id The ID of the entry.
+     */
+    public synchronized void add(long time, String id) {
+        int position = indexAfter(time, id, true);
+        if (position < size && times[physical(position)] == time
+                && ids[physical(position)].equals(id)) {
+            return;
+        }
+        if (position == times.length) {
+            return;
+        }
+        // Advance the head and move the newer entries one step towards it;
+        // the oldest entry is overwritten when the buffer is full.
+        head = (head + 1) % times.length;
+        size = Math.min(size + 1, times.length);
+        for (int i = 0; i < position; i++) {
+            int to = physical(i);
+            int from = physical(i + 1);
+            times[to] = times[from];
+            ids[to] = ids[from];
+        }
+        times[physical(position)] = time;
+        ids[physical(position)] = id;
+    }
+
+    /**
+     * Reads the entries that follow a cursor, newest first.
+     *
+     * @param time The time of the last entry already read, or
+     * {@link Long#MAX_VALUE} to start from the newest entry.
+     * @param id The ID of the last entry already read; ignored when starting
+     * from the newest entry.
+     * @param limit The maximum number of entries to read.
+     * @return The entries.
+     */
+    public synchronized List<Entry> after(long time, String id, int limit) {
+        int start = time == Long.MAX_VALUE ? 0 : indexAfter(time, id, false);
+        int end = Math.min(size, start + limit);
+        List<Entry> entries = new ArrayList<>(Math.max(0, end - start));
+        for (int i = start; i < end; i++) {
+            entries.add(new Entry(times[physical(i)], ids[physical(i)]));
+        }
+        return entries;
+    }
+
+    /**
+     * Retrieves the number of entries in the buffer.
+     *
+     * @return The number of entries.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Finds the first position whose entry is older than the given one, or,
+     * when {@code inclusive}, not newer than it.
+     */
+    private int indexAfter(long time, String id, boolean inclusive) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int c = compare(times[physical(mid)], ids[physical(mid)], time, id);
+            if (c > 0 || (c == 0 && !inclusive)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares two entries; positive if the first one is newer.
+     */
+    private static int compare(long time1, String id1, long time2, String id2) {
+        int c = Long.compare(time1, time2);
+        return c != 0 ? c : id1.compareTo(id2);
+    }
+
+    private int physical(int position) {
+        return Math.floorMod(head - position, times.length);
+    }
+
+    /**
+     * An entry of a timeline.
+     */
+    public static final class Entry implements Comparable<Entry> {
+
+        private final long time;
+        private final String id;
+
+        /**
+         * Creates an entry.
+         *
+         * @param time The time of the entry, in milliseconds.
+         * @param id The ID of the entry.
+         */
+        public Entry(long time, String id) {
+            this.time = time;
+            this.id = id;
+        }
+
+        /**
+         * Retrieves the time of the entry.
+         *
+         * @return The time, in milliseconds.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Retrieves the ID of the entry.
+         *
+         * @return The ID.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Orders entries newest first, as they appear in a timeline.
+         */
+        @Override
+        public int compareTo(Entry other) {
+            return compare(other.time, other.id, time, id);
+        }
+    }
+}
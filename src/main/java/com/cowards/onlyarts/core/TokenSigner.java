@@ -0,0 +1,217 @@
+package com.cowards.onlyarts.core;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The {@code TokenSigner} class issues and verifies self-contained
+ * authentication tokens. A signed token carries the user ID, role, user status
+ * bits, token status bits and expiry time, protected by an HMAC-SHA256
+ * signature, so it can be verified without a database lookup.
+ * <p>
+ * The token format is {@code v1.<payload>.<signature>}, both parts encoded as
+ * unpadded base64url. Every node that must accept the same tokens has to share
+ * the secret given by the {@code onlyarts.auth.secret} system property (or the
+ * {@code ONLYARTS_AUTH_SECRET} environment variable), encoded as base64.
+ */
+public final class TokenSigner {
+
+    private static final String PREFIX = "v1.";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String SEPARATOR = "|";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static TokenSigner instance;
+
+    private final ThreadLocal<Mac> macs;
+
+    private TokenSigner(byte[] secret) {
+        SecretKeySpec key = new SecretKeySpec(secret, ALGORITHM);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("HmacSHA256 is not available", ex);
+            }
+        });
+    }
+
+    /**
+     * Retrieves the singleton instance of {@code TokenSigner}. If no shared
+     * secret is configured a random one is generated, which means tokens are
+     * only accepted by the node that issued them.
+     *
+     * @return The singleton instance of {@code TokenSigner}.
+     */
+    public static synchronized TokenSigner getInstance() {
+        if (instance == null) {
+            String secret = System.getProperty("onlyarts.auth.secret",
+                    System.getenv("ONLYARTS_AUTH_SECRET"));
+            byte[] bytes;
+            if (secret == null || secret.isEmpty()) {
+                Logger.getLogger(TokenSigner.class.getName()).log(Level.WARNING,
+                        "No onlyarts.auth.secret configured, signed tokens will not be "
+                        + "accepted by other nodes or after a restart");
+                bytes = new byte[32];
+                new SecureRandom().nextBytes(bytes);
+            } else {
+                bytes = Base64.getDecoder().decode(secret);
+            }
+            instance = new TokenSigner(bytes);
+        }
+        return instance;
+    }
+
+    /**
+     * Checks whether a token string has the shape of a signed token.
+     *
+     * @param tokenString The token string to check.
+     * @return {@code true} if the token string looks like a signed token.
+     */
+    public static boolean isSigned(String tokenString) {
+        return tokenString != null && tokenString.startsWith(PREFIX);
+    }
+
+    /**
+     * Issues a signed token for the given claims.
+     *
+     * @param claims The claims to sign.
+     * @return The signed token string.
+     */
+    public String sign(Claims claims) {
+        String payload = String.join(SEPARATOR,
+                claims.tokenId,
+                claims.userId,
+                claims.roleId,
+                Integer.toString(claims.userStatus),
+                Integer.toString(claims.tokenStatus),
+                Long.toString(claims.issuedAt),
+                Long.toString(claims.expiresAt));
+        String encoded = ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        return PREFIX + encoded + "." + ENCODER.encodeToString(mac(encoded));
+    }
+
+    /**
+     * Verifies the signature of a token and decodes its claims. The expiry
+     * time is not checked here, callers decide how to treat expired tokens.
+     *
+     * @param tokenString The signed token string.
+     * @return The claims of the token, or {@code null} if the token is
+     * malformed or its signature does not match.
+     */
+    public Claims verify(String tokenString) {
+        if (!isSigned(tokenString)) {
+            return null;
+        }
+        int dot = tokenString.indexOf('.', PREFIX.length());
+        if (dot < 0) {
+            return null;
+        }
+        String encoded = tokenString.substring(PREFIX.length(), dot);
+        try {
+            byte[] signature = DECODER.decode(tokenString.substring(dot + 1));
+            if (!MessageDigest.isEqual(signature, mac(encoded))) {
+                return null;
+            }
+            String[] parts = new String(DECODER.decode(encoded), StandardCharsets.UTF_8)
+                    .split("\\|", -1);
+            if (parts.length != 7) {
+                return null;
+            }
+            return new Claims(parts[0], parts[1], parts[2],
+                    Integer.parseInt(parts[3]), Integer.parseInt(parts[4]),
+                    Long.parseLong(parts[5]), Long.parseLong(parts[6]));
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private byte[] mac(String encoded) {
+        return macs.get().doFinal(encoded.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * The claims carried by a signed token.
+     */
+    public static final class Claims {
+
+        private final String tokenId;
+        private final String userId;
+        private final String roleId;
+        private final int userStatus;
+        private final int tokenStatus;
+        private final long issuedAt;
+        private final long expiresAt;
+
+        /**
+         * Creates the claims of a token.
+         *
+         * @param tokenId The unique ID of the token, used for revocation.
+         * @param userId The ID of the user the token belongs to.
+         * @param roleId The role of the user when the token was issued.
+         * @param userStatus The status bits of the user when the token was
+         * issued.
+         * @param tokenStatus The status bits of the token, as in
+         * {@code TokenDTO}.
+         * @param issuedAt The issue time in epoch milliseconds.
+         * @param expiresAt The expiry time in epoch milliseconds.
+         */
+        public Claims(String tokenId, String userId, String roleId,
+                int userStatus, int tokenStatus, long issuedAt, long expiresAt) {
+            this.tokenId = tokenId;
+            this.userId = userId;
+            this.roleId = roleId == null ? "" : roleId;
+            this.userStatus = userStatus;
+            this.tokenStatus = tokenStatus;
+            this.issuedAt = issuedAt;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getTokenId() {
+            return tokenId;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getRoleId() {
+            return roleId;
+        }
+
+        public int getUserStatus() {
+            return userStatus;
+        }
+
+        public int getTokenStatus() {
+            return tokenStatus;
+        }
+
+        public long getIssuedAt() {
+            return issuedAt;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        /**
+         * Checks if the token has expired.
+         *
+         * @return {@code true} if the token is expired, {@code false}
+         * otherwise.
+         */
+        public boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
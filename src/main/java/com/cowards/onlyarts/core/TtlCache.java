@@ -0,0 +1,225 @@
+package com.cowards.onlyarts.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code TtlCache} class is a bounded in-memory cache whose entries expire
+ * at a given time. The entries are spread over a fixed number of segments,
+ * each of which is a small LRU map guarded by its own lock, so concurrent
+ * readers of different keys rarely contend.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the cached values.
+ */
+public final class TtlCache<K, V> {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment<K, V>[] segments;
+    private final long defaultTtlMillis;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize The maximum number of entries kept in the cache.
+     * @param defaultTtlMillis How long an entry lives when no expiry time is
+     * given.
+     */
+    @SuppressWarnings("unchecked")
+    public TtlCache(int maxSize, long defaultTtlMillis) {
+        this.defaultTtlMillis = defaultTtlMillis;
+        this.segments = new Segment[SEGMENT_COUNT];
+        int segmentSize = Math.max(1, (maxSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment<>(segmentSize, evictions);
+        }
+    }
+
+    /**
+     * Retrieves a cached value.
+     *
+     * @param key The key of the value.
+     * @return The cached value, or {@code null} if it is absent or expired.
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            Item<V> entry = segment.get(key);
+            if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+                segment.remove(key);
+                entry = null;
+            }
+            value = entry == null ? null : entry.value;
+        }
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Caches a value for the default time to live.
+     *
+     * @param key The key of the value.
+     * @param value The value to cache.
+     */
+    public void put(K key, V value) {
+        put(key, value, System.currentTimeMillis() + defaultTtlMillis);
+    }
+
+    /**
+     * Caches a value until the given time, but never longer than the default
+     * time to live.
+     *
+     * @param key The key of the value.
+     * @param value The value to cache.
+     * @param expiresAt The time in epoch milliseconds when the entry expires.
+     */
+    public void put(K key, V value, long expiresAt) {
+        if (key == null || value == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long until = Math.min(expiresAt, now + defaultTtlMillis);
+        if (until <= now) {
+            return;
+        }
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, new Item<>(value, until));
+        }
+    }
+
+    /**
+     * Removes a value from the cache.
+     *
+     * @param key The key of the value.
+     */
+    public void invalidate(K key) {
+        if (key == null) {
+            return;
+        }
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    /**
+     * Removes every value from the cache.
+     */
+    public void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of entries currently cached, including entries
+     * that have expired but were not looked up since.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the share of lookups served from the cache.
+     *
+     * @return A ratio between {@code 0} and {@code 1}.
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long lookups = h + misses.get();
+        return lookups == 0 ? 0d : (double) h / lookups;
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENT_COUNT - 1)];
+    }
+
+    /**
+     * A cached value and the time it expires.
+     */
+    private static final class Item<V> {
+
+        private final V value;
+        private final long expiresAt;
+
+        private Item(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * One LRU partition of the cache. Expired entries are dropped before live
+     * ones when the partition is full.
+     */
+    private static final class Segment<K, V> extends LinkedHashMap<K, Item<V>> {
+
+        private final int maxSize;
+        private final AtomicLong evictions;
+
+        private Segment(int maxSize, AtomicLong evictions) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Item<V>> eldest) {
+            if (size() <= maxSize) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            boolean purged = false;
+            Iterator<Item<V>> it = values().iterator();
+            while (it.hasNext()) {
+                if (it.next().expiresAt <= now) {
+                    it.remove();
+                    purged = true;
+                }
+            }
+            if (purged) {
+                // The map was modified directly, so the eldest entry must not
+                // be removed a second time.
+                return false;
+            }
+            evictions.incrementAndGet();
+            return true;
+        }
+    }
+}
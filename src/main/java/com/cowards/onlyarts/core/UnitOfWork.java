@@ -0,0 +1,137 @@
+package com.cowards.onlyarts.core;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@code UnitOfWork} class holds the single connection used by every DAO
+ * call made while handling one HTTP request. The connection is borrowed from
+ * the pool on first use and given back when the unit ends, so requests that
+ * never touch the database never hold a connection.
+ * <p>
+ * A transactional unit switches the connection to manual commit when it is
+ * borrowed and either commits or rolls back all the work of the request when
+ * it ends.
+ */
+public final class UnitOfWork {
+
+    private final ConnectionPool pool;
+    private final boolean transactional;
+    private final List<Runnable> commitActions = new ArrayList<>();
+    private Connection conn;
+
+    UnitOfWork(ConnectionPool pool, boolean transactional) {
+        this.pool = pool;
+        this.transactional = transactional;
+    }
+
+    /**
+     * Checks whether the work of this unit runs as one transaction.
+     *
+     * @return {@code true} if the unit is transactional, {@code false}
+     * otherwise.
+     */
+    public boolean isTransactional() {
+        return transactional;
+    }
+
+    /**
+     * Retrieves the connection of this unit, borrowing it on first use.
+     *
+     * @return The connection bound to this unit.
+     * @throws SQLException if no connection can be borrowed.
+     */
+    Connection getConnection() throws SQLException {
+        if (conn == null) {
+            Connection borrowed = pool.borrow();
+            if (transactional) {
+                try {
+                    borrowed.setAutoCommit(false);
+                } catch (SQLException ex) {
+                    borrowed.close();
+                    throw ex;
+                }
+            }
+            conn = borrowed;
+        }
+        return conn;
+    }
+
+    /**
+     * Checks whether the given connection is the one bound to this unit.
+     *
+     * @param other The connection to check.
+     * @return {@code true} if the connection belongs to this unit.
+     */
+    boolean holds(Connection other) {
+        return conn != null && conn == other;
+    }
+
+    /**
+     * Registers an action to run once the unit has committed. The action is
+     * dropped if the unit is rolled back or the commit fails.
+     *
+     * @param action The action to run.
+     */
+    void afterCommit(Runnable action) {
+        commitActions.add(action);
+    }
+
+    /**
+     * Ends the unit. A transactional unit commits when {@code success} is
+     * {@code true} and rolls back otherwise; the connection is then returned
+     * to the pool on every path.
+     *
+     * @param success Whether the request completed successfully.
+     * @return {@code true} if the work was committed or did not need to be,
+     * {@code false} if it was rolled back or the commit failed.
+     */
+    boolean end(boolean success) {
+        if (conn == null) {
+            finish(success);
+            return success;
+        }
+        boolean committed = success;
+        try {
+            if (transactional) {
+                if (success) {
+                    conn.commit();
+                } else {
+                    conn.rollback();
+                }
+            }
+        } catch (SQLException ex) {
+            committed = false;
+            Logger.getLogger(UnitOfWork.class.getName()).log(Level.SEVERE,
+                    "Exception found on ending a unit of work", ex);
+        } finally {
+            try {
+                conn.close();
+            } catch (SQLException ex) {
+                Logger.getLogger(UnitOfWork.class.getName()).log(Level.SEVERE,
+                        "Exception found on releasing a unit of work connection", ex);
+            }
+            conn = null;
+            finish(committed);
+        }
+        return committed;
+    }
+
+    private void finish(boolean committed) {
+        if (committed) {
+            for (Runnable action : commitActions) {
+                try {
+                    action.run();
+                } catch (RuntimeException ex) {
+                    Logger.getLogger(UnitOfWork.class.getName()).log(Level.SEVERE,
+                            "Exception found on completing a unit of work", ex);
+                }
+            }
+        }
+        commitActions.clear();
+    }
+}
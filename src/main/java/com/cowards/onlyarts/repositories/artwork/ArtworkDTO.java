@@ -1,5 +1,6 @@
 package com.cowards.onlyarts.repositories.artwork;
 
+import com.cowards.onlyarts.core.Projection;
 import java.io.Serializable;
 import java.sql.Date;
 import lombok.AllArgsConstructor;
@@ -20,6 +21,23 @@ import lombok.ToString;
 @ToString
 public class ArtworkDTO implements Serializable {
 
+    /**
+     * The fields that list endpoints can select with {@code fields=}. The
+     * {@code card} preset leaves out the description and release date.
+     */
+    public static final Projection FIELDS = new Projection("artworkId")
+            .field("artworkId", "artwork_id", Projection.Type.STRING)
+            .field("ownerId", "owner_id", Projection.Type.STRING)
+            .field("cateId", "cate_id", Projection.Type.STRING)
+            .field("name", "name", Projection.Type.STRING)
+            .field("description", "description", Projection.Type.STRING)
+            .field("artworkImage", "artwork_image", Projection.Type.STRING)
+            .field("price", "price", Projection.Type.FLOAT)
+            .field("releasedDate", "released_date", Projection.Type.DATE)
+            .field("status", "status", Projection.Type.INT)
+            .preset("card", "artworkId", "ownerId", "cateId", "name",
+                    "artworkImage", "price", "status");
+
     /**
      * The unique identifier for the artwork.
      */
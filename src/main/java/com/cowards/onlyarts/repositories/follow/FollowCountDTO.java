@@ -0,0 +1,34 @@
+package com.cowards.onlyarts.repositories.follow;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * The {@code FollowCountDTO} class holds how many users follow a user and how
+ * many users that user follows.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+public class FollowCountDTO {
+
+    /**
+     * The ID of the user.
+     */
+    private String userId;
+
+    /**
+     * The number of users who follow the user.
+     */
+    private int followers;
+
+    /**
+     * The number of users the user follows.
+     */
+    private int following;
+}
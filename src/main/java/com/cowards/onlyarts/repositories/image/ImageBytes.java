@@ -0,0 +1,55 @@
+package com.cowards.onlyarts.repositories.image;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The {@code ImageBytes} class holds an image that has been read into memory.
+ */
+public final class ImageBytes implements ImageContent {
+
+    private final String contentType;
+    private final byte[] data;
+
+    /**
+     * Creates an image held in memory.
+     *
+     * @param contentType The media type of the image.
+     * @param data The bytes of the image, which must not be changed afterwards.
+     */
+    public ImageBytes(String contentType, byte[] data) {
+        this.contentType = contentType;
+        this.data = data;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public long getLength() {
+        return data.length;
+    }
+
+    @Override
+    public void writeTo(OutputStream out, long offset, long count) throws IOException {
+        out.write(data, (int) offset, (int) count);
+    }
+
+    @Override
+    public InputStream open() {
+        return new ByteArrayInputStream(data);
+    }
+
+    /**
+     * Retrieves the bytes of the image.
+     *
+     * @return The bytes, which must not be changed.
+     */
+    public byte[] getData() {
+        return data;
+    }
+}
@@ -0,0 +1,46 @@
+package com.cowards.onlyarts.repositories.image;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The {@code ImageContent} interface gives access to the raw bytes of a stored
+ * image, so that they can be streamed to a client without being encoded as
+ * text first.
+ */
+public interface ImageContent {
+
+    /**
+     * Retrieves the media type of the image, such as {@code image/png}.
+     *
+     * @return The media type.
+     */
+    String getContentType();
+
+    /**
+     * Retrieves the size of the image.
+     *
+     * @return The number of bytes of the image.
+     */
+    long getLength();
+
+    /**
+     * Writes a part of the image.
+     *
+     * @param out The stream to write to.
+     * @param offset The index of the first byte to write.
+     * @param count The number of bytes to write.
+     * @throws IOException if the bytes cannot be read or written.
+     */
+    void writeTo(OutputStream out, long offset, long count) throws IOException;
+
+    /**
+     * Opens the image for reading from the start.
+     *
+     * @return A stream over the bytes of the image, to be closed by the
+     * caller.
+     * @throws IOException if the image cannot be opened.
+     */
+    InputStream open() throws IOException;
+}
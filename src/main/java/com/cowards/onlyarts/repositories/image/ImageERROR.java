@@ -0,0 +1,34 @@
+package com.cowards.onlyarts.repositories.image;
+
+/**
+ * The {@code ImageERROR} class represents an exception specific to errors
+ * related to image operations. It extends the {@link java.lang.Exception}
+ * class.
+ */
+public class ImageERROR extends Exception {
+
+    /**
+     * Constructs a new {@code ImageERROR} object with the specified detail
+     * message.
+     *
+     * @param message The detail message (which is saved for later retrieval by
+     * the {@link #getMessage()} method).
+     */
+    public ImageERROR(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructs a new {@code ImageERROR} object with the specified detail
+     * message and cause.
+     *
+     * @param message The detail message (which is saved for later retrieval by
+     * the {@link #getMessage()} method).
+     * @param cause The cause (which is saved for later retrieval by the
+     * {@link #getCause()} method). (A {@code null} value is permitted, and
+     * indicates that the cause is nonexistent or unknown.)
+     */
+    public ImageERROR(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
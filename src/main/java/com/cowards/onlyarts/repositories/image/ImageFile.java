@@ -0,0 +1,77 @@
+package com.cowards.onlyarts.repositories.image;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The {@code ImageFile} class gives access to an image kept in a file. The
+ * bytes are copied with {@link FileChannel#transferTo}, so the image is never
+ * read onto the heap as a whole.
+ */
+public final class ImageFile implements ImageContent {
+
+    private final Path path;
+    private final String contentType;
+    private final long length;
+
+    /**
+     * Creates an image kept in a file.
+     *
+     * @param path The file holding the image.
+     * @param contentType The media type of the image.
+     * @param length The size of the file.
+     */
+    public ImageFile(Path path, String contentType, long length) {
+        this.path = path;
+        this.contentType = contentType;
+        this.length = length;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public void writeTo(OutputStream out, long offset, long count) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = offset;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    throw new IOException("Unexpected end of " + path);
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+        return Files.newInputStream(path);
+    }
+
+    /**
+     * Retrieves the file holding the image.
+     *
+     * @return The path of the file.
+     */
+    public Path getPath() {
+        return path;
+    }
+}
@@ -0,0 +1,61 @@
+package com.cowards.onlyarts.repositories.image;
+
+import java.util.Locale;
+
+/**
+ * The sizes an image can be requested in. Every size except
+ * {@link #ORIGINAL} is a scaled down copy generated after upload.
+ */
+public enum ImageSize {
+
+    /**
+     * Small enough for catalog cards and avatars.
+     */
+    THUMBNAIL(320),
+    /**
+     * Large enough for the artwork page.
+     */
+    PREVIEW(1280),
+    /**
+     * The uploaded image itself.
+     */
+    ORIGINAL(0);
+
+    private final int maxEdge;
+
+    ImageSize(int maxEdge) {
+        this.maxEdge = maxEdge;
+    }
+
+    /**
+     * Retrieves the longest edge of the generated copy.
+     *
+     * @return The longest edge in pixels, or 0 for {@link #ORIGINAL}.
+     */
+    public int getMaxEdge() {
+        return maxEdge;
+    }
+
+    /**
+     * Retrieves the name of the size as used in URLs and in the database.
+     *
+     * @return The name in lower case.
+     */
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Parses the name of a size.
+     *
+     * @param name The name, in any case; {@code null} stands for the original.
+     * @return The size.
+     * @throws IllegalArgumentException if there is no such size.
+     */
+    public static ImageSize parse(String name) {
+        if (name == null || name.isBlank()) {
+            return ORIGINAL;
+        }
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
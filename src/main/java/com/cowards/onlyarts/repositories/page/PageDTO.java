@@ -0,0 +1,43 @@
+package com.cowards.onlyarts.repositories.page;
+
+import java.io.Serializable;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * The {@code PageDTO} class represents one page of a keyset-paginated list. It
+ * contains the items of the page and the cursor to pass back to fetch the next
+ * page.
+ *
+ * @param <T> The type of the items.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+public class PageDTO<T> implements Serializable {
+
+    /**
+     * The items on this page.
+     */
+    private List<T> items;
+
+    /**
+     * The opaque cursor of the next page, or {@code null} on the last page.
+     */
+    private String nextCursor;
+
+    /**
+     * Checks if there is a page after this one.
+     *
+     * @return {@code true} if more items follow, {@code false} otherwise.
+     */
+    public boolean isHasMore() {
+        return nextCursor != null;
+    }
+}
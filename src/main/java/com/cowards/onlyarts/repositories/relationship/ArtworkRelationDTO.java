@@ -0,0 +1,45 @@
+package com.cowards.onlyarts.repositories.relationship;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * The {@code ArtworkRelationDTO} class holds how the logged-in user relates to
+ * one artwork: whether they favorited it, reacted to it, have it in their
+ * cart and bought it.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+public class ArtworkRelationDTO {
+
+    /**
+     * The ID of the artwork.
+     */
+    private String artworkId;
+
+    /**
+     * Whether the artwork is among the favorites of the user.
+     */
+    private boolean favorite;
+
+    /**
+     * Whether the user reacted to the artwork.
+     */
+    private boolean reacted;
+
+    /**
+     * Whether the artwork is in the cart of the user.
+     */
+    private boolean inCart;
+
+    /**
+     * Whether the user bought the artwork.
+     */
+    private boolean purchased;
+}
@@ -0,0 +1,40 @@
+package com.cowards.onlyarts.repositories.relationship;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * The {@code RelationshipDTO} class carries the artworks and users a client
+ * asks about, and is returned with the relationship flags of each of them.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+public class RelationshipDTO {
+
+    /**
+     * The IDs of the artworks asked about.
+     */
+    private List<String> artworkIds;
+
+    /**
+     * The IDs of the users asked about.
+     */
+    private List<String> userIds;
+
+    /**
+     * The flags of each distinct artwork, in the order of {@link #artworkIds}.
+     */
+    private List<ArtworkRelationDTO> artworks;
+
+    /**
+     * The flags of each distinct user, in the order of {@link #userIds}.
+     */
+    private List<UserRelationDTO> users;
+}
@@ -0,0 +1,34 @@
+package com.cowards.onlyarts.repositories.relationship;
+
+/**
+ * The {@code RelationshipERROR} class represents an exception specific to
+ * errors related to looking up the relationships of a user. It extends the
+ * {@link java.lang.Exception} class.
+ */
+public class RelationshipERROR extends Exception {
+
+    /**
+     * Constructs a new {@code RelationshipERROR} object with the specified
+     * detail message.
+     *
+     * @param message The detail message (which is saved for later retrieval by
+     * the {@link #getMessage()} method).
+     */
+    public RelationshipERROR(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructs a new {@code RelationshipERROR} object with the specified
+     * detail message and cause.
+     *
+     * @param message The detail message (which is saved for later retrieval by
+     * the {@link #getMessage()} method).
+     * @param cause The cause (which is saved for later retrieval by the
+     * {@link #getCause()} method). (A {@code null} value is permitted, and
+     * indicates that the cause is nonexistent or unknown.)
+     */
+    public RelationshipERROR(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
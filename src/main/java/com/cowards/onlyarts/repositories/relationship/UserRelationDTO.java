@@ -0,0 +1,35 @@
+package com.cowards.onlyarts.repositories.relationship;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * The {@code UserRelationDTO} class holds how the logged-in user relates to
+ * another user: whether they follow that user and whether that user follows
+ * them back.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+public class UserRelationDTO {
+
+    /**
+     * The ID of the other user.
+     */
+    private String userId;
+
+    /**
+     * Whether the logged-in user follows the other user.
+     */
+    private boolean following;
+
+    /**
+     * Whether the other user follows the logged-in user.
+     */
+    private boolean followedBy;
+}
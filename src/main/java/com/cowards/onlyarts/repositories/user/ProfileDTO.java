@@ -0,0 +1,45 @@
+package com.cowards.onlyarts.repositories.user;
+
+import com.cowards.onlyarts.repositories.follow.FollowCountDTO;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * The {@code ProfileDTO} class represents the profile page of a user: the
+ * fields of {@link UserDTO} plus the number of followers and followed users.
+ * The password is never part of a profile.
+ */
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString(callSuper = true)
+public class ProfileDTO extends UserDTO {
+
+    /**
+     * The number of users who follow the user.
+     */
+    private int followers;
+
+    /**
+     * The number of users the user follows.
+     */
+    private int following;
+
+    /**
+     * Creates a profile from a user and their follow counts. The password of
+     * the user is left out.
+     *
+     * @param user The user.
+     * @param counts The follow counts of the user.
+     */
+    public ProfileDTO(UserDTO user, FollowCountDTO counts) {
+        super(user.getUserId(), user.getRoleId(), user.getFirstName(),
+                user.getLastName(), user.getAvatar(), user.getPhone(),
+                user.getEmail(), user.getAddress(), user.getJoinDate(),
+                user.getBio(), user.getStatus(), null);
+        this.followers = counts.getFollowers();
+        this.following = counts.getFollowing();
+    }
+}
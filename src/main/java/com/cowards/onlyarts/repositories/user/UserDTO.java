@@ -1,5 +1,6 @@
 package com.cowards.onlyarts.repositories.user;
 
+import com.cowards.onlyarts.core.Projection;
 import java.sql.Date;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -20,6 +21,26 @@ import lombok.ToString;
 @ToString
 public class UserDTO {
 
+    /**
+     * The fields that list endpoints can select with {@code fields=}. The
+     * password is never one of them. The {@code summary} preset keeps only
+     * what is needed to show a user next to their content.
+     */
+    public static final Projection FIELDS = new Projection("userId")
+            .field("userId", "user_id", Projection.Type.STRING)
+            .field("roleId", "role_id", Projection.Type.STRING)
+            .field("firstName", "first_name", Projection.Type.STRING)
+            .field("lastName", "last_name", Projection.Type.STRING)
+            .field("avatar", "avatar", Projection.Type.STRING)
+            .field("phone", "phone", Projection.Type.STRING)
+            .field("email", "email", Projection.Type.STRING)
+            .field("address", "address", Projection.Type.STRING)
+            .field("joinDate", "join_date", Projection.Type.DATE)
+            .field("bio", "bio", Projection.Type.STRING)
+            .field("status", "status", Projection.Type.INT)
+            .preset("summary", "userId", "roleId", "firstName", "lastName",
+                    "avatar", "status");
+
     /**
      * The ID of the user.
      */
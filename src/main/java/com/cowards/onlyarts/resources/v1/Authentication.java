@@ -1,10 +1,13 @@
 package com.cowards.onlyarts.resources.v1;
 
+import com.cowards.onlyarts.config.Authenticated;
+import com.cowards.onlyarts.config.UserPrincipal;
 import com.cowards.onlyarts.core.Password;
 import com.cowards.onlyarts.repositories.token.TokenDTO;
 import com.cowards.onlyarts.repositories.token.TokenERROR;
 import com.cowards.onlyarts.repositories.user.UserDTO;
 import com.cowards.onlyarts.repositories.user.UserERROR;
+import com.cowards.onlyarts.services.PresenceTracker;
 import com.cowards.onlyarts.services.TokenDAO;
 import com.cowards.onlyarts.services.UserDAO;
 import jakarta.ws.rs.Consumes;
@@ -14,8 +17,10 @@ import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
 
 /**
  * This class represents the authentication endpoints for user login, logout,
@@ -26,6 +31,7 @@ public class Authentication {
 
     private static final UserDAO userDao = UserDAO.getInstance();
     private static final TokenDAO tokenDao = TokenDAO.getInstance();
+    private static final PresenceTracker presence = PresenceTracker.getInstance();
 
     /**
      * Endpoint for user login.
@@ -49,13 +55,8 @@ public class Authentication {
             if (!Password.checkPw(user.getPassword(), loginUser.getPassword())) {
                 throw new UserERROR("Wrong password");
             }
-            TokenDTO token = tokenDao.addLoginToken(loginUser.getUserId());
-            if (!loginUser.isOnline()) {
-                int status = loginUser.getStatus() ^ 0b001;
-                userDao.changeStatus(loginUser.getUserId(),
-                        loginUser.getStatus(),
-                        status);
-            }
+            TokenDTO token = tokenDao.addLoginToken(loginUser);
+            presence.markOnline(loginUser.getUserId());
             return Response.status(Response.Status.OK)
                     .entity(token)
                     .build();
@@ -79,17 +80,11 @@ public class Authentication {
         try {
             TokenDTO token = tokenDao.getToken(tokenString);
             tokenDao.removeToken(tokenString);
-            UserDTO user = userDao.getUserById(token.getUserId());
-            if (user.isOnline()) {
-                int status = user.getStatus() ^ 0b001;
-                userDao.changeStatus(user.getUserId(),
-                        user.getStatus(),
-                        status);
-            }
+            presence.markOffline(token.getUserId());
             return Response.status(Response.Status.OK)
                     .entity(token)
                     .build();
-        } catch (TokenERROR | UserERROR ex) {
+        } catch (TokenERROR ex) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity(ex)
                     .build();
@@ -99,36 +94,21 @@ public class Authentication {
     /**
      * Endpoint for retrieving user account information.
      *
-     * @param tokenString The authentication token for retrieving account
-     * information.
+     * @param securityContext The security context holding the logged-in user.
      * @return Response containing user account information.
      */
     @GET
     @Path("account")
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAccountInfo(@HeaderParam("authtoken") String tokenString) {
+    public Response getAccountInfo(@Context SecurityContext securityContext) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            TokenDTO token = tokenDao.getToken(tokenString);
-            if (!token.isLoginToken()) {
-                throw new TokenERROR("Invalid authentication token");
-            } else if (!token.isValid()) {
-                throw new TokenERROR("Token is invalidate");
-            } else if (token.isExpired()) {
-                throw new TokenERROR("Token is expired");
-            }
-            UserDTO user = userDao.getUserById(token.getUserId());
-            if (!user.isOnline()) {
-                userDao.changeStatus(user.getUserId(),
-                        user.getStatus(),
-                        0b001);
-            }
+            UserDTO user = userDao.getUserById(principal.getUserId());
+            presence.markOnline(user.getUserId());
             return Response.status(Response.Status.ACCEPTED)
                     .entity(user)
                     .build();
-        } catch (TokenERROR ex) {
-            return Response.status(Response.Status.UNAUTHORIZED)
-                    .entity(ex)
-                    .build();
         } catch (UserERROR ex) {
             return Response.status(404).entity(ex).build();
         }
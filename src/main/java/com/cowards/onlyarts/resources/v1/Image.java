@@ -1,15 +1,36 @@
 package com.cowards.onlyarts.resources.v1;
 
+import com.cowards.onlyarts.core.ByteRange;
+import com.cowards.onlyarts.core.DataUrl;
+import com.cowards.onlyarts.core.JsonStringField;
+import com.cowards.onlyarts.core.LimitedInputStream;
+import com.cowards.onlyarts.repositories.image.ImageContent;
 import com.cowards.onlyarts.repositories.image.ImageDTO;
+import com.cowards.onlyarts.repositories.image.ImageERROR;
+import com.cowards.onlyarts.repositories.image.ImageSize;
 import com.cowards.onlyarts.services.ImageDAO;
+import com.cowards.onlyarts.services.ThumbnailPipeline;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import org.glassfish.jersey.media.multipart.FormDataParam;
 
 /**
  * This class represents the endpoints for image handling, including uploading
@@ -19,26 +40,131 @@ import jakarta.ws.rs.core.Response;
 public class Image {
 
     private static final ImageDAO imageDao = ImageDAO.getInstance();
+    private static final ThumbnailPipeline thumbnails = ThumbnailPipeline.getInstance();
+    private static final CacheControl IMMUTABLE
+            = CacheControl.valueOf("public, max-age=31536000, immutable");
+    private static final CacheControl PENDING = CacheControl.valueOf("public, max-age=60");
+    private static final long MAX_IMAGE_BYTES
+            = Long.getLong("onlyarts.images.maxBytes", 10L * 1024 * 1024);
+    private static final long MAX_JSON_BYTES = MAX_IMAGE_BYTES / 3 * 4 + 64 * 1024;
 
     /**
-     * Endpoint for uploading an image.
+     * Endpoint for uploading an image as base64 text in a JSON
+     * {@code imageData} field, the form older clients use. The text is
+     * decoded while it is read, so it is never held in memory; the response
+     * therefore only carries the ID of the new image.
      *
-     * @param image The image data as a string.
+     * @param body The JSON request body.
+     * @param length The {@code Content-Length} header, if any.
      * @return Response indicating success or failure of the upload operation.
      */
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response uploadImage(ImageDTO image) {
-        String imageData = image.getImageData();
-        String imageId = imageDao.addImage(imageData);
-        image.setImageID(imageId);
+    public Response uploadImage(InputStream body,
+            @HeaderParam(HttpHeaders.CONTENT_LENGTH) long length) {
+        if (length > MAX_JSON_BYTES) {
+            return tooLarge();
+        }
+        LimitedInputStream limited = new LimitedInputStream(body, MAX_JSON_BYTES);
+        try {
+            InputStream value = JsonStringField.open(limited, "imageData");
+            if (value == null) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(new ImageERROR("The image data is missing"))
+                        .build();
+            }
+            PushbackInputStream text = new PushbackInputStream(value, DataUrl.MAX_HEADER_LENGTH);
+            InputStream data = DataUrl.openPayload(text);
+            String imageId = data != null
+                    ? imageDao.addImage(data)
+                    : imageDao.addImage(new String(text.readAllBytes(), StandardCharsets.US_ASCII));
+            return saved(imageId, limited);
+        } catch (IOException ex) {
+            return failed(ex, limited);
+        }
+    }
+
+    /**
+     * Endpoint for uploading an image as the raw request body. The bytes are
+     * streamed to storage as they arrive.
+     *
+     * @param body The bytes of the image.
+     * @param length The {@code Content-Length} header, if any.
+     * @return Response containing the ID of the new image.
+     */
+    @POST
+    @Consumes({MediaType.APPLICATION_OCTET_STREAM, "image/*"})
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response uploadRawImage(InputStream body,
+            @HeaderParam(HttpHeaders.CONTENT_LENGTH) long length) {
+        if (length > MAX_IMAGE_BYTES) {
+            return tooLarge();
+        }
+        return upload(body);
+    }
+
+    /**
+     * Endpoint for uploading an image as the {@code file} part of a
+     * {@code multipart/form-data} form.
+     *
+     * @param file The bytes of the image.
+     * @return Response containing the ID of the new image.
+     */
+    @POST
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response uploadFormImage(@FormDataParam("file") InputStream file) {
+        if (file == null) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ImageERROR("The file part is missing"))
+                    .build();
+        }
+        return upload(file);
+    }
+
+    private Response upload(InputStream body) {
+        LimitedInputStream limited = new LimitedInputStream(body, MAX_IMAGE_BYTES);
+        try {
+            return saved(imageDao.addImage(limited), limited);
+        } catch (IOException ex) {
+            return failed(ex, limited);
+        }
+    }
+
+    private Response saved(String imageId, LimitedInputStream body) {
+        if (body.isExceeded()) {
+            return tooLarge();
+        }
+        if (imageId == null) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ImageERROR("The image could not be saved"))
+                    .build();
+        }
+        thumbnails.submit(imageId);
         return Response.status(Response.Status.OK)
-                .entity(image).build();
+                .entity(new ImageDTO(imageId, null)).build();
+    }
+
+    private Response failed(IOException ex, LimitedInputStream body) {
+        if (body.isExceeded()) {
+            return tooLarge();
+        }
+        return Response.status(Response.Status.BAD_REQUEST)
+                .entity(new ImageERROR(ex.getMessage()))
+                .build();
+    }
+
+    private Response tooLarge() {
+        return Response.status(Response.Status.REQUEST_ENTITY_TOO_LARGE)
+                .entity(new ImageERROR("Images may be at most " + MAX_IMAGE_BYTES + " bytes"))
+                .build();
     }
 
     /**
-     * Endpoint for retrieving an image.
+     * Endpoint for retrieving an image. Images uploaded as base64 are always
+     * returned as a {@code data:} URL, so the base64 starts after the first
+     * comma.
      *
      * @param imageId The unique identifier of the image.
      * @return Response containing the image data.
@@ -53,4 +179,93 @@ public class Image {
                 .entity(image).build();
     }
 
+    /**
+     * Endpoint for retrieving the raw bytes of an image. Images never change
+     * once uploaded, so the response may be cached for good; a single
+     * {@code Range} is honoured with {@code 206 Partial Content}.
+     * <p>
+     * A scaled down size that has not been generated yet is queued for
+     * generation, and the original is sent in its place with a short cache
+     * lifetime. An image that cannot be scaled down at all has its original
+     * sent for every size, cached for good.
+     * <p>
+     * Only PNG, JPEG, GIF, WebP and BMP are sent inline. Anything else, such
+     * as SVG, is sent as {@code application/octet-stream} for download, so a
+     * stored file can never run as a page of this origin.
+     *
+     * @param imageId The unique identifier of the image.
+     * @param sizeName The size to send: {@code thumbnail}, {@code preview}
+     * or {@code original}, the default.
+     * @param range The {@code Range} header, if any.
+     * @param request The request, used to evaluate {@code If-None-Match}.
+     * @return Response streaming the image bytes.
+     */
+    @GET
+    @Path("{imageId}/raw")
+    @Produces({"image/*", MediaType.APPLICATION_OCTET_STREAM})
+    public Response getRawImage(@PathParam("imageId") String imageId,
+            @QueryParam("size") String sizeName,
+            @HeaderParam("Range") String range,
+            @Context Request request) {
+        ImageSize size;
+        try {
+            size = ImageSize.parse(sizeName);
+        } catch (IllegalArgumentException ex) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .type(MediaType.APPLICATION_JSON)
+                    .entity(new ImageERROR("Unknown image size " + sizeName))
+                    .build();
+        }
+        EntityTag tag = size == ImageSize.ORIGINAL
+                ? new EntityTag(imageId) : new EntityTag(imageId + "-" + size.getName());
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.cacheControl(IMMUTABLE).build();
+        }
+        CacheControl cacheControl = IMMUTABLE;
+        ImageContent image = imageDao.getVariant(imageId, size);
+        if (image == null && size != ImageSize.ORIGINAL) {
+            image = imageDao.getContent(imageId);
+            if (image != null) {
+                thumbnails.submit(imageId);
+                tag = new EntityTag(imageId);
+                cacheControl = PENDING;
+            }
+        }
+        if (image == null) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .type(MediaType.APPLICATION_JSON)
+                    .entity(new ImageERROR("This id does not exist in the system"))
+                    .build();
+        }
+        long length = image.getLength();
+        ByteRange part;
+        try {
+            part = ByteRange.parse(range, length);
+        } catch (IllegalArgumentException ex) {
+            return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header("Content-Range", "bytes */" + length)
+                    .build();
+        }
+        long offset = part == null ? 0 : part.getStart();
+        long count = part == null ? length : part.getLength();
+        ImageContent content = image;
+        StreamingOutput body = out -> content.writeTo(out, offset, count);
+        Response.ResponseBuilder builder = part == null
+                ? Response.ok(body)
+                : Response.status(Response.Status.PARTIAL_CONTENT).entity(body)
+                        .header("Content-Range", part.toContentRange(length));
+        if (DataUrl.isRaster(image.getContentType())) {
+            builder.type(image.getContentType());
+        } else {
+            builder.type(MediaType.APPLICATION_OCTET_STREAM)
+                    .header("Content-Disposition", "attachment");
+        }
+        return builder.header(HttpHeaders.CONTENT_LENGTH, count)
+                .header("Accept-Ranges", "bytes")
+                .header("X-Content-Type-Options", "nosniff")
+                .tag(tag)
+                .cacheControl(cacheControl)
+                .build();
+    }
 }
@@ -1,5 +1,7 @@
 package com.cowards.onlyarts.resources.v1;
 
+import com.cowards.onlyarts.config.Authenticated;
+import com.cowards.onlyarts.config.UserPrincipal;
 import com.cowards.onlyarts.repositories.token.TokenDTO;
 import com.cowards.onlyarts.repositories.token.TokenERROR;
 import com.cowards.onlyarts.repositories.user.UserDTO;
@@ -12,8 +14,10 @@ import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
 
 /**
  * This class represents the endpoints for password management, including
@@ -28,7 +32,7 @@ public class Password {
     /**
      * Endpoint for changing user password.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param oldPw The old password.
      * @param user The user data including the new password.
      * @return Response indicating success or failure of password change
@@ -36,14 +40,15 @@ public class Password {
      */
     @POST
     @Path("change")
+    @Authenticated
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response changePassword(@HeaderParam("authtoken") String tokenString,
+    public Response changePassword(@Context SecurityContext securityContext,
             @HeaderParam("oldpassword") String oldPw, UserDTO user) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            TokenDTO token = tokenDao.getToken(tokenString);
             String newPw = user.getPassword();
-            user = userDao.getUserById(token.getUserId());
+            user = userDao.getUserById(principal.getUserId());
             if (!user.getPassword().equals(oldPw)) {
                 throw new UserERROR("Old password does not match in the system");
             }
@@ -51,7 +56,7 @@ public class Password {
             UserDTO entity = userDao.getUserById(user.getUserId());
             return Response.status(Response.Status.OK)
                     .entity(entity).build();
-        } catch (UserERROR | TokenERROR ex) {
+        } catch (UserERROR ex) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity(ex)
                     .build();
@@ -1,27 +1,38 @@
 package com.cowards.onlyarts.resources.v2;
 
+import com.cowards.onlyarts.config.Authenticated;
+import com.cowards.onlyarts.config.EntityTags;
+import com.cowards.onlyarts.config.UserPrincipal;
 import com.cowards.onlyarts.core.CodeGenerator;
+import com.cowards.onlyarts.core.Projection;
 import com.cowards.onlyarts.repositories.artwork.ArtworkDTO;
 import com.cowards.onlyarts.repositories.artwork.ArtworkERROR;
-import com.cowards.onlyarts.repositories.token.TokenDTO;
+import com.cowards.onlyarts.repositories.page.PageDTO;
 import com.cowards.onlyarts.repositories.token.TokenERROR;
-import com.cowards.onlyarts.repositories.user.UserDTO;
-import com.cowards.onlyarts.repositories.user.UserERROR;
 import com.cowards.onlyarts.services.ArtworkDAO;
-import com.cowards.onlyarts.services.TokenDAO;
-import com.cowards.onlyarts.services.UserDAO;
+import com.cowards.onlyarts.services.ArtworkSearchIndex;
+import com.cowards.onlyarts.services.HomeFeed;
+import jakarta.annotation.security.RolesAllowed;
 import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
-import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 /**
  * This class represents the endpoints for managing artworks, including
@@ -31,34 +42,130 @@ import java.util.List;
 public class Artwork {
 
     private static final ArtworkDAO artworkDao = ArtworkDAO.getInstance();
-    private static final TokenDAO tokenDao = TokenDAO.getInstance();
-    private static final UserDAO userDao = UserDAO.getInstance();
+    private static final ArtworkSearchIndex searchIndex = ArtworkSearchIndex.getInstance();
+    private static final HomeFeed feed = HomeFeed.getInstance();
+    private static final int DEFAULT_PAGE_SIZE = 28;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_BATCH_SIZE = 300;
 
     /**
-     * Endpoint for retrieving all artworks.
+     * Endpoint for retrieving all artworks. The response carries an ETag, and
+     * a request whose {@code If-None-Match} still matches is answered with
+     * {@code 304 Not Modified} without reading the catalog.
      *
+     * @param fields The comma separated fields to return, or a preset such as
+     * {@code card}. All fields are returned if not given.
+     * @param request The request, used to evaluate {@code If-None-Match}.
      * @return Response containing a list of all artworks.
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAll() {
+    public Response getAll(@QueryParam("fields") String fields,
+            @Context Request request) {
+        Projection.Selection selection;
+        try {
+            selection = ArtworkDTO.FIELDS.parse(fields, ArtworkERROR::new);
+        } catch (ArtworkERROR ex) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ex)
+                    .build();
+        }
+        EntityTag tag = EntityTags.of("artworks", selection == null ? null : selection.toString(),
+                artworkDao.getGeneration());
+        Response notModified = EntityTags.notModified(request, tag);
+        if (notModified != null) {
+            return notModified;
+        }
+        if (selection != null) {
+            return EntityTags.ok(artworkDao.getAll(selection), tag);
+        }
         List<ArtworkDTO> artworks = artworkDao.getAll();
-        return Response.ok(artworks).build();
-
+        return EntityTags.ok(artworks, tag);
     }
 
+    /**
+     * Endpoint for retrieving one page of artworks by page number. Kept for
+     * existing clients, new clients should use {@link #getPage}.
+     *
+     * @param offset The page number, starting at 1.
+     * @return Response containing the artworks on the page.
+     */
     @GET
     @Path("/offset/{offset}")
     @Produces(MediaType.APPLICATION_JSON)
     public Response getAllOffset(@PathParam("offset") int offset) {
-        List<ArtworkDTO> artworks = artworkDao.getAll();
-        int i = (offset - 1) * 28;
-        int j = offset * 28 - 1;
-        List< ArtworkDTO> _artworks = new ArrayList<>();
-        for (int k = i; k <= j && k < artworks.size(); k++) {
-            _artworks.add(artworks.get(k));
+        if (offset < 1) {
+            return Response.ok(new ArrayList<>()).build();
+        }
+        List<ArtworkDTO> artworks = artworkDao.getRange((offset - 1) * DEFAULT_PAGE_SIZE,
+                DEFAULT_PAGE_SIZE);
+        return Response.ok(artworks).build();
+    }
+
+    /**
+     * Endpoint for retrieving the artwork catalog page by page, newest first.
+     *
+     * @param cursor The cursor returned with the previous page, or nothing for
+     * the first page.
+     * @param size The number of artworks per page, at most
+     * {@value #MAX_PAGE_SIZE}.
+     * @return Response containing the page of artworks and the cursor of the
+     * next page.
+     */
+    @GET
+    @Path("/page")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getPage(@QueryParam("cursor") String cursor,
+            @QueryParam("size") @DefaultValue("28") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ArtworkERROR("Page size must be between 1 and "
+                            + MAX_PAGE_SIZE))
+                    .build();
+        }
+        try {
+            PageDTO<ArtworkDTO> page = artworkDao.getPage(cursor, size);
+            return Response.ok(page).build();
+        } catch (ArtworkERROR ex) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ex)
+                    .build();
+        }
+    }
+
+    /**
+     * Endpoint for retrieving the home feed of the logged-in user: the newest
+     * artworks of the creators they follow, page by page.
+     *
+     * @param securityContext The security context holding the logged-in user.
+     * @param cursor The cursor returned with the previous page, or nothing for
+     * the first page.
+     * @param size The number of artworks per page, at most
+     * {@value #MAX_PAGE_SIZE}.
+     * @return Response containing the page of artworks and the cursor of the
+     * next page.
+     */
+    @GET
+    @Path("/feed")
+    @Authenticated
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getFeed(@Context SecurityContext securityContext,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("size") @DefaultValue("28") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ArtworkERROR("Page size must be between 1 and "
+                            + MAX_PAGE_SIZE))
+                    .build();
+        }
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
+        try {
+            return Response.ok(feed.getPage(principal.getUserId(), cursor, size)).build();
+        } catch (ArtworkERROR ex) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ex)
+                    .build();
         }
-        return Response.ok(_artworks).build();
     }
 
     /**
@@ -87,6 +194,85 @@ public class Artwork {
         }
     }
 
+    /**
+     * Endpoint for retrieving several artworks in one call. Removed and banned
+     * artworks are left out, as are unknown IDs.
+     *
+     * @param artworkIds The IDs of the artworks, at most
+     * {@value #MAX_BATCH_SIZE}.
+     * @return Response containing the artworks in the order of their IDs.
+     */
+    @POST
+    @Path("/batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getBatch(List<String> artworkIds) {
+        if (artworkIds == null || artworkIds.size() > MAX_BATCH_SIZE) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ArtworkERROR("Between 0 and " + MAX_BATCH_SIZE
+                            + " artwork ids are allowed"))
+                    .build();
+        }
+        List<ArtworkDTO> artworks = new ArrayList<>();
+        for (ArtworkDTO artwork : artworkDao.getArtworks(artworkIds)) {
+            if (!artwork.isRemoved() && !artwork.isBanned()) {
+                artworks.add(artwork);
+            }
+        }
+        return Response.ok(artworks).build();
+    }
+
+    /**
+     * Endpoint for searching artworks by name, category, creator and
+     * description, best matches first.
+     *
+     * @param query The words to search for.
+     * @param fields The comma separated fields to search in, all of
+     * {@code name}, {@code category}, {@code creator} and {@code description}
+     * if not given.
+     * @param cursor The cursor returned with the previous page, or nothing for
+     * the first page.
+     * @param size The number of artworks per page, at most
+     * {@value #MAX_PAGE_SIZE}.
+     * @return Response containing the page of matching artworks and the cursor
+     * of the next page.
+     */
+    @GET
+    @Path("/search")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response search(@QueryParam("q") String query,
+            @QueryParam("fields") String fields,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("size") @DefaultValue("28") int size) {
+        try {
+            if (query == null || query.isBlank()) {
+                throw new ArtworkERROR("Search query is required");
+            }
+            if (size < 1 || size > MAX_PAGE_SIZE) {
+                throw new ArtworkERROR("Page size must be between 1 and " + MAX_PAGE_SIZE);
+            }
+            Set<ArtworkSearchIndex.Field> searchFields
+                    = EnumSet.allOf(ArtworkSearchIndex.Field.class);
+            if (fields != null && !fields.isBlank()) {
+                searchFields.clear();
+                for (String field : fields.split(",")) {
+                    try {
+                        searchFields.add(ArtworkSearchIndex.Field
+                                .valueOf(field.trim().toUpperCase(Locale.ROOT)));
+                    } catch (IllegalArgumentException ex) {
+                        throw new ArtworkERROR("Unknown search field " + field.trim());
+                    }
+                }
+            }
+            PageDTO<ArtworkDTO> page = searchIndex.search(query, searchFields, cursor, size);
+            return Response.ok(page).build();
+        } catch (ArtworkERROR ex) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ex)
+                    .build();
+        }
+    }
+
     /**
      * Endpoint for searching artworks by type.
      *
@@ -137,53 +323,47 @@ public class Artwork {
     }
 
     /**
-     * Endpoint for adding a new artwork.
+     * Endpoint for adding a new artwork. Only creators may call this
+     * endpoint.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param artwork The artwork information to add.
      * @return Response indicating success or failure of the artwork addition.
      */
     @POST
+    @RolesAllowed("CR")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response addArtwork(@HeaderParam("authtoken") String tokenString,
+    public Response addArtwork(@Context SecurityContext securityContext,
             ArtworkDTO artwork) {
-        try {
-            TokenDTO token = tokenDao.getToken(tokenString);
-            UserDTO userDTO = userDao.getUserById(token.getUserId());
-            if (!userDTO.getRoleId().equals("CR")) {
-                throw new TokenERROR("You cannot publish artwork");
-            }
-            String artworkId = CodeGenerator.generateUUID(20);
-            artwork.setArtworkId(artworkId);
-            artwork.setOwnerId(token.getUserId());
-            boolean check = artworkDao.addArtwork(artwork);
-            if (check) {
-                return Response.ok(artwork).build();
-            }
-            return Response
-                    .status(Response.Status.NOT_ACCEPTABLE).build();
-        } catch (TokenERROR | UserERROR ex) {
-            return Response.status(401)
-                    .entity(ex).build();
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
+        String artworkId = CodeGenerator.generateUUID(20);
+        artwork.setArtworkId(artworkId);
+        artwork.setOwnerId(principal.getUserId());
+        boolean check = artworkDao.addArtwork(artwork);
+        if (check) {
+            return Response.ok(artwork).build();
         }
+        return Response
+                .status(Response.Status.NOT_ACCEPTABLE).build();
     }
 
     /**
      * Endpoint for selling an artwork.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param artwork The artwork information to sell.
      * @return Response indicating success or failure of the artwork sale.
      */
     @PUT
+    @Authenticated
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response sellArtwork(@HeaderParam("authtoken") String tokenString,
+    public Response sellArtwork(@Context SecurityContext securityContext,
             ArtworkDTO artwork) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            TokenDTO token = tokenDao.getToken(tokenString);
-            if (!token.getUserId().equals(artwork.getOwnerId())) {
+            if (!principal.getUserId().equals(artwork.getOwnerId())) {
                 throw new TokenERROR("You don't own this artwork");
             }
             boolean check = artworkDao.updateArtworkPrice(artwork);
@@ -1,20 +1,20 @@
 package com.cowards.onlyarts.resources.v2;
 
+import com.cowards.onlyarts.config.Authenticated;
+import com.cowards.onlyarts.config.UserPrincipal;
 import com.cowards.onlyarts.core.CodeGenerator;
 import com.cowards.onlyarts.repositories.comment.CommentDTO;
-import com.cowards.onlyarts.repositories.token.TokenDTO;
-import com.cowards.onlyarts.repositories.token.TokenERROR;
 import com.cowards.onlyarts.services.CommentDAO;
-import com.cowards.onlyarts.services.TokenDAO;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
-import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
 import java.util.List;
 
 /**
@@ -25,7 +25,6 @@ import java.util.List;
 public class Comment {
 
     private static final CommentDAO commentDao = CommentDAO.getInstance();
-    private static final TokenDAO tokenDao = TokenDAO.getInstance();
 
     /**
      * Endpoint for viewing comments on a specific artwork.
@@ -45,32 +44,27 @@ public class Comment {
     /**
      * Endpoint for posting a comment to a specific artwork.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param comment The comment data to post.
      * @return Response indicating success or failure of the comment posting.
      */
     @POST
+    @Authenticated
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response comment(@HeaderParam("authtoken") String tokenString,
+    public Response comment(@Context SecurityContext securityContext,
             CommentDTO comment) {
-        try {
-            TokenDTO token = tokenDao.getToken(tokenString);
-            String userId = token.getUserId();
-            String commentId = CodeGenerator.generateUUID(20);
-            comment.setCommentId(commentId);
-            comment.setCommenterId(userId);
-            boolean checkAddNewComment = commentDao.addComment(comment);
-            if (checkAddNewComment) {
-                comment = commentDao.getComment(commentId);
-                return Response.ok(comment).build();
-            }
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .build();
-        } catch (TokenERROR ex) {
-            return Response.status(Response.Status.UNAUTHORIZED)
-                    .entity(ex).build();
+        String userId = ((UserPrincipal) securityContext.getUserPrincipal()).getUserId();
+        String commentId = CodeGenerator.generateUUID(20);
+        comment.setCommentId(commentId);
+        comment.setCommenterId(userId);
+        boolean checkAddNewComment = commentDao.addComment(comment);
+        if (checkAddNewComment) {
+            comment = commentDao.getComment(commentId);
+            return Response.ok(comment).build();
         }
+        return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                .build();
     }
 
 }
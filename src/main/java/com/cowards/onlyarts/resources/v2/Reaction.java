@@ -1,24 +1,27 @@
 package com.cowards.onlyarts.resources.v2;
 
+import com.cowards.onlyarts.config.Authenticated;
+import com.cowards.onlyarts.config.UserPrincipal;
+import com.cowards.onlyarts.core.Projection;
 import com.cowards.onlyarts.repositories.artwork.ArtworkERROR;
 import com.cowards.onlyarts.repositories.reaction.ReactionDTO;
-import com.cowards.onlyarts.repositories.token.TokenDTO;
-import com.cowards.onlyarts.repositories.token.TokenERROR;
 import com.cowards.onlyarts.repositories.user.UserDTO;
+import com.cowards.onlyarts.repositories.user.UserERROR;
 import com.cowards.onlyarts.services.ReactionDAO;
-import com.cowards.onlyarts.services.TokenDAO;
 import com.cowards.onlyarts.services.UserDAO;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
-import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
 import java.util.List;
 
 /**
@@ -28,53 +31,60 @@ import java.util.List;
 @Path("v2/reactions")
 public class Reaction {
 
-    private static final TokenDAO tokenDao = TokenDAO.getInstance();
     private static final ReactionDAO reactionDao = ReactionDAO.getInstance();
     private static final UserDAO userDao = UserDAO.getInstance();
 
     @PUT
     @Path("/{artwork_id}")
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
     public Response checkReact(@PathParam("artwork_id") String artworkId,
-            @HeaderParam("authtoken") String tokenString) throws ArtworkERROR {
-        try {
-            TokenDTO token = tokenDao.getToken(tokenString);
-            boolean check = reactionDao.checkReaction(token.getUserId(), artworkId);
-            ReactionDTO react = new ReactionDTO(artworkId, token.getUserId(), check);
-            return Response.ok(react).build();
-        } catch (TokenERROR ex) {
-            return Response.status(Response.Status.UNAUTHORIZED)
-                    .entity(ex).build();
-        }
+            @Context SecurityContext securityContext) throws ArtworkERROR {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
+        boolean check = reactionDao.checkReaction(principal.getUserId(), artworkId);
+        ReactionDTO react = new ReactionDTO(artworkId, principal.getUserId(), check);
+        return Response.ok(react).build();
     }
 
     @DELETE
     @Path("/{artwork_id}")
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
     public Response removeReact(@PathParam("artwork_id") String artworkId,
-            @HeaderParam("authtoken") String tokenString) throws ArtworkERROR {
-        try {
-            TokenDTO token = tokenDao.getToken(tokenString);
-            boolean check = reactionDao.removeReaction(token.getUserId(), artworkId);
-            ReactionDTO react = new ReactionDTO(artworkId, token.getUserId(), check);
-            return Response.ok(react).build();
-        } catch (TokenERROR ex) {
-            return Response.status(Response.Status.UNAUTHORIZED)
-                    .entity(ex).build();
-        }
+            @Context SecurityContext securityContext) throws ArtworkERROR {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
+        boolean check = reactionDao.removeReaction(principal.getUserId(), artworkId);
+        ReactionDTO react = new ReactionDTO(artworkId, principal.getUserId(), check);
+        return Response.ok(react).build();
     }
 
     /**
      * Endpoint for viewing users who reacted to a specific artwork.
      *
      * @param artworkId The ID of the artwork to view reactions for.
+     * @param fields The comma separated fields to return, or a preset such as
+     * {@code summary}. All fields except the password are returned if not
+     * given.
      * @return Response containing a list of users who reacted to the specified
      * artwork.
      * @throws ArtworkERROR If there's an error retrieving the artwork.
      */
     @GET
     @Path("/{artwork_id}")
-    public Response viewReactUser(@PathParam("artwork_id") String artworkId) throws ArtworkERROR {
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response viewReactUser(@PathParam("artwork_id") String artworkId,
+            @QueryParam("fields") String fields) throws ArtworkERROR {
+        Projection.Selection selection;
+        try {
+            selection = UserDTO.FIELDS.parse(fields, UserERROR::new);
+        } catch (UserERROR ex) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ex)
+                    .build();
+        }
+        if (selection != null) {
+            return Response.ok(userDao.getUserReaction(artworkId, selection)).build();
+        }
         List<UserDTO> userList = userDao.getUserReaction(artworkId);
         return Response
                 .ok(userList, MediaType.APPLICATION_JSON).build();
@@ -83,26 +93,23 @@ public class Reaction {
     /**
      * Endpoint for adding a reaction to an artwork.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param reaction The reaction data to add.
      * @return Response indicating success or failure of adding the reaction.
      */
     @POST
+    @Authenticated
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response addReaction(@HeaderParam("authtoken") String tokenString,
+    public Response addReaction(@Context SecurityContext securityContext,
             ReactionDTO reaction) {
-        try {
-            String userId = tokenDao.getToken(tokenString).getUserId();
-            String artworkId = reaction.getArtworkId();
-            boolean checkAddNewReaction = reactionDao.addReaction(userId, artworkId);
-            return checkAddNewReaction
-                    ? Response.status(Response.Status.OK)
-                            .entity(new ReactionDTO(artworkId, userId, checkAddNewReaction))
-                            .build()
-                    : Response.status(Response.Status.NOT_ACCEPTABLE).build();
-        } catch (TokenERROR ex) {
-            return Response.status(Response.Status.NOT_FOUND).entity(ex).build();
-        }
+        String userId = ((UserPrincipal) securityContext.getUserPrincipal()).getUserId();
+        String artworkId = reaction.getArtworkId();
+        boolean checkAddNewReaction = reactionDao.addReaction(userId, artworkId);
+        return checkAddNewReaction
+                ? Response.status(Response.Status.OK)
+                        .entity(new ReactionDTO(artworkId, userId, checkAddNewReaction))
+                        .build()
+                : Response.status(Response.Status.NOT_ACCEPTABLE).build();
     }
 }
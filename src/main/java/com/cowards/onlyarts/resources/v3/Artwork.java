@@ -1,26 +1,25 @@
 package com.cowards.onlyarts.resources.v3;
 
+import com.cowards.onlyarts.config.Authenticated;
+import com.cowards.onlyarts.config.UserPrincipal;
 import com.cowards.onlyarts.repositories.artwork.ArtworkDTO;
 import com.cowards.onlyarts.repositories.artwork.ArtworkERROR;
 import com.cowards.onlyarts.repositories.reaction.ReactionDTO;
-import com.cowards.onlyarts.repositories.token.TokenDTO;
 import com.cowards.onlyarts.repositories.token.TokenERROR;
-import com.cowards.onlyarts.repositories.user.UserDTO;
-import com.cowards.onlyarts.repositories.user.UserERROR;
 import com.cowards.onlyarts.services.ArtworkDAO;
 import com.cowards.onlyarts.services.OrderDetailDAO;
-import com.cowards.onlyarts.services.TokenDAO;
-import com.cowards.onlyarts.services.UserDAO;
+import jakarta.annotation.security.RolesAllowed;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
-import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
 import java.util.List;
 
 /**
@@ -31,31 +30,24 @@ import java.util.List;
 public class Artwork {
 
     private static final ArtworkDAO artworkDao = ArtworkDAO.getInstance();
-    private static final TokenDAO tokenDao = TokenDAO.getInstance();
-    private static final UserDAO userDao = UserDAO.getInstance();
     private static final OrderDetailDAO orderDetailDao = OrderDetailDAO.getInstance();
 
     /**
      * Endpoint for updating an artwork.
      *
      * @param artworkDTO The updated artwork data.
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @return Response indicating success or failure of the update operation.
      */
     @PUT
+    @Authenticated
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     public Response update(ArtworkDTO artworkDTO,
-            @HeaderParam("authtoken") String tokenString) {
+            @Context SecurityContext securityContext) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            TokenDTO tokenDTO = tokenDao.getToken(tokenString);
-
-            if (tokenDTO.isExpired()) {
-                return Response.status(Response.Status.UNAUTHORIZED)
-                        .entity(new TokenERROR("Login timeout")).build();
-            }
-
-            if (!tokenDTO.getUserId().equals(artworkDTO.getOwnerId())) {
+            if (!principal.getUserId().equals(artworkDTO.getOwnerId())) {
                 return Response.status(Response.Status.FORBIDDEN)
                         .entity(new TokenERROR("You are not allow update this artwork"))
                         .build();
@@ -70,7 +62,7 @@ public class Artwork {
 
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity(new ArtworkERROR("Cannot update artwork")).build();
-        } catch (ArtworkERROR | TokenERROR e) {
+        } catch (ArtworkERROR e) {
             return Response.status(Response.Status.NOT_FOUND)
                     .entity(e).build();
         }
@@ -80,20 +72,19 @@ public class Artwork {
      * Endpoint for deleting an artwork.
      *
      * @param artworkDTO The artwork data to be deleted.
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @return Response indicating success or failure of the delete operation.
      */
     @DELETE
+    @Authenticated
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     public Response delete(ArtworkDTO artworkDTO,
-            @HeaderParam("authtoken") String tokenString) {
+            @Context SecurityContext securityContext) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            TokenDTO tokenDTO = tokenDao.getToken(tokenString);
-            UserDTO user = userDao.getUserById(tokenDTO.getUserId());
-
-            if (!user.getUserId().equals(artworkDTO.getOwnerId())
-                    || !"AD".equals(user.getRoleId())) {
+            if (!principal.getUserId().equals(artworkDTO.getOwnerId())
+                    || !principal.hasRole("AD")) {
                 return Response.status(Response.Status.FORBIDDEN)
                         .entity(new TokenERROR("You are not allow remove this artwork"))
                         .build();
@@ -111,14 +102,10 @@ public class Artwork {
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity(new ArtworkERROR("Cannot remove artwork"))
                     .build();
-        } catch (ArtworkERROR | TokenERROR e) {
+        } catch (ArtworkERROR e) {
             return Response.status(Response.Status.NOT_FOUND)
                     .entity(e)
                     .build();
-        } catch (UserERROR ex) {
-            return Response.status(Response.Status.UNAUTHORIZED)
-                    .entity(ex)
-                    .build();
         }
     }
 
@@ -142,35 +129,23 @@ public class Artwork {
 
     @PUT
     @Path("/ban/{artworkId}")
+    @RolesAllowed("AD")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response ban(@HeaderParam("authtoken") String tokenString,
-            @PathParam("artworkId") String artworkId) {
+    public Response ban(@PathParam("artworkId") String artworkId) {
         try {
-            TokenDTO token = tokenDao.getToken(tokenString);
-            UserDTO loginUser = userDao.getUserById(token.getUserId());
-            if (!"AD".equals(loginUser.getRoleId())) {
-                throw new TokenERROR("You dont have permission to do this action");
+            ArtworkDTO artwork = artworkDao.getArtwork(artworkId);
+            if (artwork.isBanned()) {
+                throw new ArtworkERROR("This artwork already has been banned");
             } else {
-                ArtworkDTO artwork = artworkDao.getArtwork(artworkId);
-                if (artwork.isBanned()) {
-                    throw new ArtworkERROR("This artwork already has been banned");
+                boolean check = artworkDao.changeStatus(artworkId,
+                        artwork.getStatus(), 0b010);
+                if (check) {
+                    artwork = artworkDao.getArtwork(artworkId);
+                    return Response.ok(artwork).build();
                 } else {
-                    boolean check = artworkDao.changeStatus(artworkId,
-                            artwork.getStatus(), 0b010);
-                    if (check) {
-                        artwork = artworkDao.getArtwork(artworkId);
-                        return Response.ok(artwork).build();
-                    } else {
-                        throw new ArtworkERROR("Cannot remove this artwork");
-                    }
+                    throw new ArtworkERROR("Cannot remove this artwork");
                 }
             }
-        } catch (TokenERROR ex) {
-            return ex.getMessage().contains("permission")
-                    ? Response.status(Response.Status.FORBIDDEN).entity(ex).build()
-                    : Response.status(Response.Status.UNAUTHORIZED).entity(ex).build();
-        } catch (UserERROR ex) {
-            return Response.status(Response.Status.UNAUTHORIZED).entity(ex).build();
         } catch (ArtworkERROR ex) {
             return ex.getMessage().contains("exist")
                     ? Response.status(Response.Status.NOT_FOUND).entity(ex).build()
@@ -180,36 +155,26 @@ public class Artwork {
 
     @PUT
     @Path("/isbuy")
+    @Authenticated
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     public Response isBuy(ArtworkDTO artworkDTO,
-            @HeaderParam("authtoken") String tokenString) {
-        try {
-            TokenDTO tokenDTO = tokenDao.getToken(tokenString);
-            String userId = tokenDTO.getUserId();
-            String artworkId = artworkDTO.getArtworkId();
-            boolean check = orderDetailDao.isBuy(userId, artworkId);
-            ReactionDTO reactionDTO = new ReactionDTO(artworkId, userId, check);
-            return Response.ok(reactionDTO).build();
-        } catch (TokenERROR ex) {
-            return Response.status(Response.Status.UNAUTHORIZED)
-                    .entity(ex).build();
-        }
+            @Context SecurityContext securityContext) {
+        String userId = ((UserPrincipal) securityContext.getUserPrincipal()).getUserId();
+        String artworkId = artworkDTO.getArtworkId();
+        boolean check = orderDetailDao.isBuy(userId, artworkId);
+        ReactionDTO reactionDTO = new ReactionDTO(artworkId, userId, check);
+        return Response.ok(reactionDTO).build();
     }
 
     @GET
     @Path("/isbuy")
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getArtworkIsBuy(@HeaderParam("authtoken") String tokenString) {
-        try {
-            TokenDTO tokenDTO = tokenDao.getToken(tokenString);
-            String userId = tokenDTO.getUserId();
-            List<ArtworkDTO> list = orderDetailDao.isBuy(userId);
-            return Response.ok(list).build();
-        } catch (TokenERROR ex) {
-            return Response.status(Response.Status.NOT_FOUND)
-                    .entity(ex).build();
-        }
+    public Response getArtworkIsBuy(@Context SecurityContext securityContext) {
+        String userId = ((UserPrincipal) securityContext.getUserPrincipal()).getUserId();
+        List<ArtworkDTO> list = orderDetailDao.isBuy(userId);
+        return Response.ok(list).build();
     }
 
     @GET
@@ -1,28 +1,28 @@
 package com.cowards.onlyarts.resources.v3;
 
+import com.cowards.onlyarts.config.Authenticated;
+import com.cowards.onlyarts.config.UserPrincipal;
+import com.cowards.onlyarts.core.Projection;
 import com.cowards.onlyarts.repositories.artwork.ArtworkDTO;
 import com.cowards.onlyarts.repositories.artwork.ArtworkERROR;
 import com.cowards.onlyarts.repositories.cart.CartERROR;
 import com.cowards.onlyarts.repositories.reaction.ReactionDTO;
-import com.cowards.onlyarts.repositories.token.TokenDTO;
-import com.cowards.onlyarts.repositories.token.TokenERROR;
-import com.cowards.onlyarts.repositories.user.UserDTO;
 import com.cowards.onlyarts.repositories.user.UserERROR;
 import com.cowards.onlyarts.services.ArtworkDAO;
 import com.cowards.onlyarts.services.CartDAO;
-import com.cowards.onlyarts.services.TokenDAO;
-import com.cowards.onlyarts.services.UserDAO;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
-import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
 import java.util.List;
 
 /**
@@ -34,53 +34,47 @@ public class Cart {
 
     private static final CartDAO cartDao = CartDAO.getInstance();
     private static final ArtworkDAO artworkDao = ArtworkDAO.getInstance();
-    private static final TokenDAO tokenDao = TokenDAO.getInstance();
-    private static final UserDAO userDao = UserDAO.getInstance();
 
     @GET
     @Path("{artworkId}")
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response checkAdded(@HeaderParam("authtoken") String tokenString,
+    public Response checkAdded(@Context SecurityContext securityContext,
             @PathParam("artworkId") String artworkId) {
-        try {
-            TokenDTO tokenDTO = tokenDao.getToken(tokenString);
-            String userId = tokenDTO.getUserId();
-            UserDTO user = userDao.getUserById(userId);
-            if ("CR".equals(user.getRoleId())) {
-                throw new UserERROR("You dont have permission to add this artwork to cart");
-            }
-            boolean check = cartDao.checkAdded(userId, artworkId);
-            return Response.ok(new ReactionDTO(artworkId, userId, check)).build();
-        } catch (TokenERROR e) {
-            return Response.status(Response.Status.UNAUTHORIZED)
-                    .entity(e).build();
-        } catch (UserERROR ex) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
+        if (principal.hasRole("CR")) {
             return Response.status(Response.Status.FORBIDDEN)
-                    .entity(ex).build();
+                    .entity(new UserERROR("You dont have permission to add this artwork to cart"))
+                    .build();
         }
+        String userId = principal.getUserId();
+        boolean check = cartDao.checkAdded(userId, artworkId);
+        return Response.ok(new ReactionDTO(artworkId, userId, check)).build();
     }
 
     /**
      * Endpoint for retrieving the user's cart items.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
+     * @param fields The comma separated fields to return, or a preset such as
+     * {@code card}. All fields are returned if not given.
      * @return Response containing a list of cart items.
      */
     @GET
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response get(@HeaderParam("authtoken") String tokenString) {
+    public Response get(@Context SecurityContext securityContext,
+            @QueryParam("fields") String fields) {
+        String userId = ((UserPrincipal) securityContext.getUserPrincipal()).getUserId();
         try {
-            TokenDTO tokenDTO = tokenDao.getToken(tokenString);
-            if (tokenDTO.isExpired()) {
-                return Response.status(Response.Status.UNAUTHORIZED)
-                        .entity(new TokenERROR("Login timeout"))
-                        .build();
+            Projection.Selection selection = ArtworkDTO.FIELDS.parse(fields, ArtworkERROR::new);
+            if (selection != null) {
+                return Response.ok(cartDao.getAll(userId, selection)).build();
             }
-            String userId = tokenDTO.getUserId();
             List<ArtworkDTO> artworkDTOs = cartDao.getAll(userId);
             return Response.ok(artworkDTOs).build();
-        } catch (TokenERROR e) {
-            return Response.status(Response.Status.NOT_FOUND)
+        } catch (ArtworkERROR e) {
+            return Response.status(Response.Status.BAD_REQUEST)
                     .entity(e).build();
         }
     }
@@ -89,26 +83,21 @@ public class Cart {
      * Endpoint for adding an artwork to the user's cart.
      *
      * @param artworkDTO The artwork to be added to the cart.
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @return Response indicating success or failure of the add operation.
      */
     @POST
+    @Authenticated
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     public Response add(ArtworkDTO artworkDTO,
-            @HeaderParam("authtoken") String tokenString) {
+            @Context SecurityContext securityContext) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            TokenDTO tokenDTO = tokenDao.getToken(tokenString);
-            if (tokenDTO.isExpired()) {
-                return Response.status(Response.Status.UNAUTHORIZED)
-                        .entity(new TokenERROR("Login timeout")).build();
-            }
-
-            String userId = tokenDTO.getUserId();
+            String userId = principal.getUserId();
             String artworkId = artworkDTO.getArtworkId();
             artworkDTO = artworkDao.getArtwork(artworkId);
-            UserDTO user = userDao.getUserById(userId);
-            if ("CR".equals(user.getRoleId())) {
+            if (principal.hasRole("CR")) {
                 throw new UserERROR("You dont have permission to add this artwork to cart");
             }
             if (artworkDTO.isPrivate()
@@ -125,7 +114,7 @@ public class Cart {
             }
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity(new CartERROR("You have already added this artwork to your cart")).build();
-        } catch (TokenERROR | UserERROR | ArtworkERROR e) {
+        } catch (UserERROR | ArtworkERROR e) {
             return Response.status(Response.Status.NOT_FOUND)
                     .entity(e).build();
         }
@@ -135,23 +124,17 @@ public class Cart {
      * Endpoint for removing an artwork from the user's cart.
      *
      * @param artworkDTO The artwork to be removed from the cart.
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @return Response indicating success or failure of the remove operation.
      */
     @PUT
+    @Authenticated
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     public Response remove(ArtworkDTO artworkDTO,
-            @HeaderParam("authtoken") String tokenString) {
+            @Context SecurityContext securityContext) {
+        String userId = ((UserPrincipal) securityContext.getUserPrincipal()).getUserId();
         try {
-            TokenDTO tokenDTO = tokenDao.getToken(tokenString);
-            if (tokenDTO.isExpired()) {
-                return Response.status(Response.Status.UNAUTHORIZED)
-                        .entity(new TokenERROR("Login timeout"))
-                        .build();
-            }
-
-            String userId = tokenDTO.getUserId();
             String artworkId = artworkDTO.getArtworkId();
             boolean check = cartDao.delete(userId, artworkId);
             if (check) {
@@ -160,7 +143,7 @@ public class Cart {
             }
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity("Cannot remove this artwork from cart").build();
-        } catch (TokenERROR | ArtworkERROR e) {
+        } catch (ArtworkERROR e) {
             return Response.status(Response.Status.NOT_FOUND)
                     .entity(e).build();
         }
@@ -169,31 +152,20 @@ public class Cart {
     /**
      * Endpoint for removing all artworks from the user's cart.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @return Response indicating success or failure of the remove operation.
      */
     @DELETE
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response remove(@HeaderParam("authtoken") String tokenString) {
-        try {
-            TokenDTO tokenDTO = tokenDao.getToken(tokenString);
-            if (tokenDTO.isExpired()) {
-                return Response.status(Response.Status.UNAUTHORIZED)
-                        .entity(new TokenERROR("Login timeout"))
-                        .build();
-            }
-
-            String userId = tokenDTO.getUserId();
-            List<ArtworkDTO> artworkDTOs = cartDao.getAll(userId);
-            boolean check = cartDao.delete(userId);
-            if (check) {
-                return Response.ok(artworkDTOs).build();
-            }
-            return Response.status(Response.Status.BAD_REQUEST)
-                    .entity("Cannot remove this cart").build();
-        } catch (TokenERROR ex) {
-            return Response.status(Response.Status.NOT_FOUND)
-                    .entity(ex).build();
+    public Response remove(@Context SecurityContext securityContext) {
+        String userId = ((UserPrincipal) securityContext.getUserPrincipal()).getUserId();
+        List<ArtworkDTO> artworkDTOs = cartDao.getAll(userId);
+        boolean check = cartDao.delete(userId);
+        if (check) {
+            return Response.ok(artworkDTOs).build();
         }
+        return Response.status(Response.Status.BAD_REQUEST)
+                .entity("Cannot remove this cart").build();
     }
 }
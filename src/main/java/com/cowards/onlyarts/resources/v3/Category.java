@@ -4,13 +4,17 @@
  */
 package com.cowards.onlyarts.resources.v3;
 
+import com.cowards.onlyarts.config.EntityTags;
 import com.cowards.onlyarts.repositories.category.CategoryDTO;
 import com.cowards.onlyarts.services.CategoryDAO;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
 
 /**
@@ -25,10 +29,16 @@ public class Category {
     @GET
     @Path("/name/{name}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getCateByName(@PathParam("name") String cateName) {
+    public Response getCateByName(@PathParam("name") String cateName,
+            @Context Request request) {
+        EntityTag tag = EntityTags.of("category-name", cateName);
+        Response notModified = EntityTags.notModified(request, tag);
+        if (notModified != null) {
+            return notModified;
+        }
         try {
             CategoryDTO categoryDTO = cateDao.getCateByName(cateName);
-            return Response.ok(categoryDTO).build();
+            return EntityTags.ok(categoryDTO, tag);
         } catch (Exception e) {
             return Response.status(Response.Status.NOT_FOUND)
                     .entity(e).build();
@@ -38,10 +48,16 @@ public class Category {
     @GET
     @Path("{cateId}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getCateById(@PathParam("cateId") String cateId) {
+    public Response getCateById(@PathParam("cateId") String cateId,
+            @Context Request request) {
+        EntityTag tag = EntityTags.of("category", cateId);
+        Response notModified = EntityTags.notModified(request, tag);
+        if (notModified != null) {
+            return notModified;
+        }
         try {
             CategoryDTO categoryDTO = cateDao.getCateById(cateId);
-            return Response.ok(categoryDTO).build();
+            return EntityTags.ok(categoryDTO, tag);
         } catch (Exception e) {
             return Response.status(Response.Status.NOT_FOUND)
                     .entity(e).build();
@@ -1,25 +1,27 @@
 package com.cowards.onlyarts.resources.v3;
 
+import com.cowards.onlyarts.config.Authenticated;
+import com.cowards.onlyarts.config.Transactional;
+import com.cowards.onlyarts.config.UserPrincipal;
+import com.cowards.onlyarts.core.CodeGenerator;
 import com.cowards.onlyarts.repositories.artwork.ArtworkDTO;
 import com.cowards.onlyarts.repositories.order.OrderDTO;
 import com.cowards.onlyarts.repositories.order.OrderERROR;
-import com.cowards.onlyarts.repositories.token.TokenDTO;
-import com.cowards.onlyarts.repositories.token.TokenERROR;
-import com.cowards.onlyarts.repositories.user.UserDTO;
-import com.cowards.onlyarts.repositories.user.UserERROR;
+import com.cowards.onlyarts.repositories.orderdetail.OrderDetailERROR;
 import com.cowards.onlyarts.services.CartDAO;
 import com.cowards.onlyarts.services.OrderDAO;
-import com.cowards.onlyarts.services.TokenDAO;
-import com.cowards.onlyarts.services.UserDAO;
+import com.cowards.onlyarts.services.OrderDetailDAO;
+import jakarta.annotation.security.RolesAllowed;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
-import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
 import java.util.List;
 
 /**
@@ -31,30 +33,24 @@ import java.util.List;
 public class Order {
 
     private static final OrderDAO orderDao = OrderDAO.getInstance();
-    private static final TokenDAO tokenDao = TokenDAO.getInstance();
+    private static final OrderDetailDAO orderDetailDao = OrderDetailDAO.getInstance();
     private static final CartDAO cartDao = CartDAO.getInstance();
-    private static final UserDAO userDao = UserDAO.getInstance();
 
     /**
      * Inserts a new order into the system.
      *
      * @param orderDTO The order information to be inserted.
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @return Response containing the inserted order information.
      */
     @POST
+    @Authenticated
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     public Response insert(OrderDTO orderDTO,
-            @HeaderParam("authtoken") String tokenString) {
+            @Context SecurityContext securityContext) {
+        String userId = ((UserPrincipal) securityContext.getUserPrincipal()).getUserId();
         try {
-            TokenDTO tokenDTO = tokenDao.getToken(tokenString);
-            if (tokenDTO.isExpired()) {
-                return Response.status(Response.Status.UNAUTHORIZED)
-                        .entity(new TokenERROR("Login timeout"))
-                        .build();
-            }
-            String userId = tokenDTO.getUserId();
             List<ArtworkDTO> artworkDTOs = cartDao.getAll(userId);
             if (artworkDTOs.isEmpty()) {
                 return Response.status(Response.Status.BAD_REQUEST)
@@ -75,7 +71,61 @@ public class Order {
             }
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity("You cannot create an order!!!").build();
-        } catch (TokenERROR | OrderERROR e) {
+        } catch (OrderERROR e) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity(e).build();
+        }
+    }
+
+    /**
+     * Checks out the user's cart in one transaction: creates the order,
+     * inserts all of its order details in one batch and empties the cart. If
+     * any step fails nothing is written.
+     *
+     * @param orderDTO The order information, the order ID is generated when
+     * missing; the body may be left out.
+     * @param securityContext The security context holding the logged-in user.
+     * @return Response containing the created order information.
+     */
+    @POST
+    @Path("/checkout")
+    @Authenticated
+    @Transactional
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response checkout(OrderDTO orderDTO,
+            @Context SecurityContext securityContext) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
+        if (orderDTO == null) {
+            orderDTO = new OrderDTO();
+        }
+        try {
+            String userId = principal.getUserId();
+            List<ArtworkDTO> artworkDTOs = cartDao.getAll(userId);
+            if (artworkDTOs.isEmpty()) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("The cart is empty!!!").build();
+            }
+            String orderId = orderDTO.getOrderId();
+            if (orderId == null || orderId.isEmpty()) {
+                orderId = CodeGenerator.generateUUID(20);
+            }
+            float totalPrice = 0;
+            for (ArtworkDTO artworkDTO : artworkDTOs) {
+                totalPrice += artworkDTO.getPrice();
+            }
+            orderDTO.setOrderId(orderId);
+            orderDTO.setUserId(userId);
+            orderDTO.setTotalPrice(totalPrice);
+            if (!orderDao.insert(orderDTO)
+                    || !orderDetailDao.insertAll(orderId, artworkDTOs)
+                    || !cartDao.delete(userId)) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("You cannot create an order!!!").build();
+            }
+            orderDTO = orderDao.getOne(orderId);
+            return Response.ok(orderDTO).build();
+        } catch (OrderERROR | OrderDetailERROR e) {
             return Response.status(Response.Status.NOT_FOUND)
                     .entity(e).build();
         }
@@ -84,118 +134,65 @@ public class Order {
     /**
      * Retrieves all orders placed by the user.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @return Response containing the user's orders and associated artwork
      * details.
      */
     @GET
     @Path("/ordered")
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getOrdersForCustomer(@HeaderParam("authtoken") String tokenString) {
-        try {
-            TokenDTO tokenDTO = tokenDao.getToken(tokenString);
-            if (tokenDTO.isExpired()) {
-                return Response.status(Response.Status.UNAUTHORIZED)
-                        .entity(new TokenERROR("Login timeout"))
-                        .build();
-            }
-            String userId = tokenDTO.getUserId();
-            List<OrderDTO> list = orderDao.getAll(userId);
-            return Response.ok(list).build();
-        } catch (TokenERROR e) {
-            return Response.status(Response.Status.NOT_FOUND)
-                    .entity(e)
-                    .build();
-        }
+    public Response getOrdersForCustomer(@Context SecurityContext securityContext) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
+        List<OrderDTO> list = orderDao.getAll(principal.getUserId());
+        return Response.ok(list).build();
     }
 
     /**
      * Retrieves all orders received by the publisher (owner).
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @return Response containing the publisher's orders and associated artwork
      * details.
      */
     @GET
     @Path("/recieved")
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getOrdersForPublisher(@HeaderParam("authtoken") String tokenString) {
-        try {
-            TokenDTO tokenDTO = tokenDao.getToken(tokenString);
-            if (tokenDTO.isExpired()) {
-                return Response.status(Response.Status.UNAUTHORIZED)
-                        .entity(new TokenERROR("Login timeout"))
-                        .build();
-            }
-            String userId = tokenDTO.getUserId();
-            List<OrderDTO> list = orderDao.getAllByOwnerId(userId);
-            return Response.ok(list).build();
-        } catch (TokenERROR e) {
-            return Response.status(Response.Status.NOT_FOUND)
-                    .entity(e).build();
-        }
+    public Response getOrdersForPublisher(@Context SecurityContext securityContext) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
+        List<OrderDTO> list = orderDao.getAllByOwnerId(principal.getUserId());
+        return Response.ok(list).build();
     }
 
     /**
-     * Retrieves all orders in the system.
+     * Retrieves all orders in the system. Only administrators may call this
+     * endpoint.
      *
-     * @param tokenString The authentication token.
      * @return Response containing all orders and associated artwork details.
      */
     @GET
+    @RolesAllowed("AD")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getOrders(@HeaderParam("authtoken") String tokenString) {
-        try {
-            TokenDTO tokenDTO = tokenDao.getToken(tokenString);
-            if (tokenDTO.isExpired()) {
-                return Response.status(Response.Status.UNAUTHORIZED)
-                        .entity(new TokenERROR("Login timeout"))
-                        .build();
-            }
-            UserDTO userDTO = userDao.getUserById(tokenDTO.getUserId());
-            if (!userDTO.getRoleId().equals("AD")) {
-                return Response.status(Response.Status.FORBIDDEN)
-                        .entity("You dont have permission to do this action!!!")
-                        .build();
-            }
-            List<OrderDTO> list = orderDao.getAll();
-            return Response.ok(list).build();
-        } catch (TokenERROR | UserERROR ex) {
-            return Response.status(Response.Status.NOT_FOUND)
-                    .entity(ex).build();
-        }
+    public Response getOrders() {
+        List<OrderDTO> list = orderDao.getAll();
+        return Response.ok(list).build();
     }
 
     /**
-     * Retrieves the top 10 orders based on some criteria.
+     * Retrieves the top 10 orders based on some criteria. Only administrators
+     * may call this endpoint.
      *
-     * @param tokenString The authentication token.
      * @return Response containing the top 10 orders and associated artwork
      * details.
      */
     @GET
     @Path("/top10")
+    @RolesAllowed("AD")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getTop10Orders(@HeaderParam("authtoken") String tokenString) {
-        try {
-            TokenDTO tokenDTO = tokenDao.getToken(tokenString);
-            if (tokenDTO.isExpired()) {
-                return Response.status(Response.Status.UNAUTHORIZED)
-                        .entity(new TokenERROR("Login timeout"))
-                        .build();
-            }
-            UserDTO userDTO = userDao.getUserById(tokenDTO.getUserId());
-            if (!userDTO.getRoleId().equals("AD")) {
-                return Response.status(Response.Status.FORBIDDEN)
-                        .entity("You dont have permission to do this action!!!")
-                        .build();
-            }
-            List<OrderDTO> list = orderDao.getTop10();
-            return Response.ok(list).build();
-        } catch (TokenERROR | UserERROR ex) {
-            return Response.status(Response.Status.NOT_FOUND)
-                    .entity(ex).build();
-        }
+    public Response getTop10Orders() {
+        List<OrderDTO> list = orderDao.getTop10();
+        return Response.ok(list).build();
     }
 
     /**
@@ -1,21 +1,21 @@
 package com.cowards.onlyarts.resources.v3;
 
+import com.cowards.onlyarts.config.Authenticated;
+import com.cowards.onlyarts.config.UserPrincipal;
 import com.cowards.onlyarts.repositories.artwork.ArtworkDTO;
 import com.cowards.onlyarts.repositories.orderdetail.OrderDetailERROR;
-import com.cowards.onlyarts.repositories.token.TokenDTO;
-import com.cowards.onlyarts.repositories.token.TokenERROR;
 import com.cowards.onlyarts.services.CartDAO;
 import com.cowards.onlyarts.services.OrderDetailDAO;
-import com.cowards.onlyarts.services.TokenDAO;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
-import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
 import java.util.List;
 
 /**
@@ -27,7 +27,6 @@ import java.util.List;
 public class OrderDetail {
 
     private static final OrderDetailDAO orderDetailDao = OrderDetailDAO.getInstance();
-    private static final TokenDAO tokenDao = TokenDAO.getInstance();
     private static final CartDAO cartDao = CartDAO.getInstance();
 
     /**
@@ -52,23 +51,18 @@ public class OrderDetail {
     /**
      * Endpoint for inserting order details for a given order ID.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param orderId The ID of the order.
      * @return Response indicating success or failure of the insert operation.
      */
     @POST
     @Path("{orderId}")
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response insert(@HeaderParam("authtoken") String tokenString,
+    public Response insert(@Context SecurityContext securityContext,
             @PathParam("orderId") String orderId) {
+        String userId = ((UserPrincipal) securityContext.getUserPrincipal()).getUserId();
         try {
-            TokenDTO tokenDTO = tokenDao.getToken(tokenString);
-            if (tokenDTO.isExpired()) {
-                return Response.status(Response.Status.UNAUTHORIZED)
-                        .entity(new TokenERROR("Login timeout"))
-                        .build();
-            }
-            String userId = tokenDTO.getUserId();
             List<ArtworkDTO> artworkDTOs = cartDao.getAll(userId);
             boolean check = false;
             for (ArtworkDTO artworkDTO : artworkDTOs) {
@@ -80,7 +74,7 @@ public class OrderDetail {
                 }
             }
             return Response.ok(artworkDTOs).build();
-        } catch (OrderDetailERROR | TokenERROR ex) {
+        } catch (OrderDetailERROR ex) {
             return Response.status(Response.Status.NOT_FOUND)
                     .entity(ex).build();
         }
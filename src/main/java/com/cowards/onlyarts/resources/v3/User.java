@@ -1,12 +1,20 @@
 package com.cowards.onlyarts.resources.v3;
 
+import com.cowards.onlyarts.config.EntityTags;
+import com.cowards.onlyarts.core.Projection;
+import com.cowards.onlyarts.core.Snapshot;
 import com.cowards.onlyarts.repositories.user.UserDTO;
+import com.cowards.onlyarts.repositories.user.UserERROR;
 import com.cowards.onlyarts.services.UserDAO;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
 import java.util.List;
 
@@ -26,12 +34,26 @@ public class User {
      * Retrieves all users in the system. This method fetches information about
      * all users registered in the system and returns them as a list.
      *
+     * @param fields The comma separated fields to return, or a preset such as
+     * {@code summary}. All fields except the password are returned if not
+     * given.
      * @return Response containing the list of all users.
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getUsers() {
+    public Response getUsers(@QueryParam("fields") String fields) {
+        Projection.Selection selection;
         try {
+            selection = UserDTO.FIELDS.parse(fields, UserERROR::new);
+        } catch (UserERROR ex) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ex)
+                    .build();
+        }
+        try {
+            if (selection != null) {
+                return Response.ok(userDao.getAllUsers(selection)).build();
+            }
             List<UserDTO> list = userDao.getAllUsers();
             return Response.ok(list).build();
         } catch (Exception e) {
@@ -43,17 +65,26 @@ public class User {
     /**
      * Retrieves the top 10 users based on certain criteria. This method fetches
      * information about the top 10 users based on specific criteria, such as
-     * popularity or activity, and returns them as a list.
+     * popularity or activity, and returns them as a list. The list is tagged
+     * with the generation of the in-memory top 10 snapshot, so a client that
+     * already has it gets {@code 304 Not Modified}.
      *
+     * @param request The request, used to evaluate {@code If-None-Match}.
      * @return Response containing the list of top 10 users.
      */
     @GET
     @Path("/top10")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getTop10Users() {
+    public Response getTop10Users(@Context Request request) {
         try {
-            List<UserDTO> list = userDao.getTop10();
-            return Response.ok(list).build();
+            EntityTag tag = EntityTags.of("top-users", null, userDao.getTop10Generation());
+            Response notModified = EntityTags.notModified(request, tag);
+            if (notModified != null) {
+                return notModified;
+            }
+            Snapshot.Version<UserDTO> top10 = userDao.getTop10Version();
+            return EntityTags.ok(top10.getItems(),
+                    EntityTags.of("top-users", null, top10.getGeneration()));
         } catch (Exception e) {
             return Response.status(Response.Status.NOT_FOUND)
                     .entity(e).build();
@@ -1,20 +1,23 @@
 package com.cowards.onlyarts.resources.v4;
 
+import com.cowards.onlyarts.config.Authenticated;
+import com.cowards.onlyarts.config.UserPrincipal;
+import com.cowards.onlyarts.core.Projection;
 import com.cowards.onlyarts.repositories.artwork.ArtworkDTO;
-import com.cowards.onlyarts.repositories.token.TokenDTO;
-import com.cowards.onlyarts.repositories.token.TokenERROR;
+import com.cowards.onlyarts.repositories.artwork.ArtworkERROR;
 import com.cowards.onlyarts.repositories.user.UserDTO;
 import com.cowards.onlyarts.repositories.user.UserERROR;
 import com.cowards.onlyarts.services.FavorDAO;
-import com.cowards.onlyarts.services.TokenDAO;
 import com.cowards.onlyarts.services.UserDAO;
 import jakarta.ws.rs.GET;
-import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
 import java.util.List;
 
 /**
@@ -22,33 +25,40 @@ import java.util.List;
  * provides endpoints for retrieving favorite artworks for a user, both for the
  * currently authenticated user and for a specified user ID.
  *
- * This class interacts with the FavorDAO, TokenDAO, and UserDAO to handle
+ * This class interacts with the FavorDAO and UserDAO to handle
  * operations related to user favorites.
  */
 @Path("v4/favor")
 public class Favor {
 
     private static final FavorDAO favorDao = FavorDAO.getInstance();
-    private static final TokenDAO tokenDao = TokenDAO.getInstance();
     private static final UserDAO userDao = UserDAO.getInstance();
 
     /**
      * Retrieves favorite artworks for the currently authenticated user. This
-     * method fetches the favorite artworks for the user associated with the
-     * provided authentication token and returns them as a list.
+     * method fetches the favorite artworks for the logged-in user and returns
+     * them as a list.
      *
-     * @param tokenString The authentication token associated with the user.
+     * @param securityContext The security context holding the logged-in user.
+     * @param fields The comma separated fields to return, or a preset such as
+     * {@code card}. All fields are returned if not given.
      * @return Response containing the list of favorite artworks.
      */
     @GET
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getFavoriteArtworks(@HeaderParam("authtoken") String tokenString) {
+    public Response getFavoriteArtworks(@Context SecurityContext securityContext,
+            @QueryParam("fields") String fields) {
+        String userId = ((UserPrincipal) securityContext.getUserPrincipal()).getUserId();
         try {
-            TokenDTO token = tokenDao.getToken(tokenString);
-            List<ArtworkDTO> artworks = favorDao.getFavoriteArtworks(token.getUserId());
+            Projection.Selection selection = ArtworkDTO.FIELDS.parse(fields, ArtworkERROR::new);
+            if (selection != null) {
+                return Response.ok(favorDao.getFavoriteArtworks(userId, selection)).build();
+            }
+            List<ArtworkDTO> artworks = favorDao.getFavoriteArtworks(userId);
             return Response.status(200).entity(artworks).build();
-        } catch (TokenERROR ex) {
-            return Response.status(401).entity(ex).build();
+        } catch (ArtworkERROR ex) {
+            return Response.status(400).entity(ex).build();
         }
     }
 
@@ -58,18 +68,27 @@ public class Favor {
      * returns them as a list.
      *
      * @param userId The ID of the user to fetch favorite artworks for.
+     * @param fields The comma separated fields to return, or a preset such as
+     * {@code card}. All fields are returned if not given.
      * @return Response containing the list of favorite artworks.
      */
     @GET
     @Path("{userid}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getUserFavoriteArtwroks(@PathParam("userid") String userId) {
+    public Response getUserFavoriteArtwroks(@PathParam("userid") String userId,
+            @QueryParam("fields") String fields) {
         try {
             UserDTO user = userDao.getUserById(userId);
+            Projection.Selection selection = ArtworkDTO.FIELDS.parse(fields, ArtworkERROR::new);
+            if (selection != null) {
+                return Response.ok(favorDao.getFavoriteArtworks(user.getUserId(), selection)).build();
+            }
             List<ArtworkDTO> artworks = favorDao.getFavoriteArtworks(user.getUserId());
             return Response.status(200).entity(artworks).build();
         } catch (UserERROR ex) {
             return Response.status(404).entity(ex).build();
+        } catch (ArtworkERROR ex) {
+            return Response.status(400).entity(ex).build();
         }
     }
 }
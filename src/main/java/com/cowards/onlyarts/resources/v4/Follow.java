@@ -1,20 +1,25 @@
 package com.cowards.onlyarts.resources.v4;
 
+import com.cowards.onlyarts.config.Authenticated;
+import com.cowards.onlyarts.config.UserPrincipal;
+import com.cowards.onlyarts.core.Projection;
 import com.cowards.onlyarts.repositories.follow.FollowDTO;
-import com.cowards.onlyarts.repositories.token.TokenDTO;
-import com.cowards.onlyarts.repositories.token.TokenERROR;
+import com.cowards.onlyarts.repositories.follow.FollowERROR;
 import com.cowards.onlyarts.repositories.user.UserDTO;
+import com.cowards.onlyarts.repositories.user.UserERROR;
 import com.cowards.onlyarts.services.FollowDAO;
-import com.cowards.onlyarts.services.TokenDAO;
 import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
-import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
 import java.util.List;
 
 /**
@@ -22,78 +27,85 @@ import java.util.List;
  * provides endpoints for following and unfollowing users, as well as retrieving
  * lists of users being followed and users who follow a specified user.
  *
- * This class interacts with the FollowDAO and TokenDAO to handle operations
- * related to user follows.
+ * This class interacts with the FollowDAO to handle operations related to user
+ * follows.
  */
 @Path("v4/follow")
 public class Follow {
 
-    private static final TokenDAO tokenDao = TokenDAO.getInstance();
     private static final FollowDAO followDao = FollowDAO.getInstance();
+    private static final int MAX_PAGE_SIZE = 100;
 
     @GET
     @Path("{userId}")
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response checkFollow(@HeaderParam("authtoken") String tokenString,
+    public Response checkFollow(@Context SecurityContext securityContext,
             @PathParam("userId") String userId) {
-        try {
-            TokenDTO token = tokenDao.getToken(tokenString);
-            boolean check = followDao.checkFollow(token.getUserId(), userId);
-            return Response.status(200)
-                    .entity(new FollowDTO(token.getUserId(), userId, check))
-                    .build();
-        } catch (TokenERROR ex) {
-            return Response.status(401).entity(ex).build();
-        }
+        String followerId = ((UserPrincipal) securityContext.getUserPrincipal()).getUserId();
+        boolean check = followDao.checkFollow(followerId, userId);
+        return Response.status(200)
+                .entity(new FollowDTO(followerId, userId, check))
+                .build();
     }
 
     /**
      * Endpoint for following a user. This method adds a follow relationship
      * between the authenticated user and the specified user.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param userId The ID of the user to follow.
      * @return Response indicating success or failure of the operation.
      */
     @POST
     @Path("{userid}")
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response followUser(@HeaderParam("authtoken") String tokenString,
+    public Response followUser(@Context SecurityContext securityContext,
             @PathParam("userid") String userId) {
-        try {
-            TokenDTO token = tokenDao.getToken(tokenString);
-            boolean check = followDao.addFollow(token.getUserId(), userId);
-            return Response.status(200)
-                    .entity(new FollowDTO(token.getUserId(), userId, check))
-                    .build();
-
-        } catch (TokenERROR ex) {
-            return Response.status(401).entity(ex).build();
-        }
+        String followerId = ((UserPrincipal) securityContext.getUserPrincipal()).getUserId();
+        boolean check = followDao.addFollow(followerId, userId);
+        return Response.status(200)
+                .entity(new FollowDTO(followerId, userId, check))
+                .build();
     }
 
     /**
      * Endpoint for unfollowing a user. This method removes the follow
      * relationship between the authenticated user and the specified user.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param userId The ID of the user to unfollow.
      * @return Response indicating success or failure of the operation.
      */
     @DELETE
     @Path("{userid}")
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response unfollowUser(@HeaderParam("authtoken") String tokenString,
+    public Response unfollowUser(@Context SecurityContext securityContext,
             @PathParam("userid") String userId) {
-        try {
-            TokenDTO token = tokenDao.getToken(tokenString);
-            boolean check = followDao.unfollowUser(token.getUserId(), userId);
-            return Response.status(200)
-                    .entity(new FollowDTO(token.getUserId(), userId, check))
-                    .build();
-        } catch (TokenERROR ex) {
-            return Response.status(401).entity(ex).build();
-        }
+        String followerId = ((UserPrincipal) securityContext.getUserPrincipal()).getUserId();
+        boolean check = followDao.unfollowUser(followerId, userId);
+        return Response.status(200)
+                .entity(new FollowDTO(followerId, userId, check))
+                .build();
+    }
+
+    /**
+     * Endpoint for retrieving how many users follow a specified user and how
+     * many users that user follows. The counts are kept up to date on every
+     * follow and unfollow, so the lists are never read.
+     *
+     * @param userId The ID of the user.
+     * @return Response containing the follow counts.
+     */
+    @GET
+    @Path("count/{userid}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getCounts(@PathParam("userid") String userId) {
+        return Response.status(Response.Status.OK)
+                .entity(followDao.getCounts(userId))
+                .build();
     }
 
     /**
@@ -101,12 +113,27 @@ public class Follow {
      * method returns a list of users followed by the specified user.
      *
      * @param userId The ID of the user to retrieve followed users for.
+     * @param fields The comma separated fields to return, or a preset such as
+     * {@code summary}. All fields except the password are returned if not
+     * given.
      * @return Response containing the list of followed users.
      */
     @GET
     @Path("following/{userid}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getFollowing(@PathParam("userid") String userId) {
+    public Response getFollowing(@PathParam("userid") String userId,
+            @QueryParam("fields") String fields) {
+        Projection.Selection selection;
+        try {
+            selection = UserDTO.FIELDS.parse(fields, UserERROR::new);
+        } catch (UserERROR ex) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ex)
+                    .build();
+        }
+        if (selection != null) {
+            return Response.ok(followDao.getFollowing(userId, selection)).build();
+        }
         List<UserDTO> followingList = followDao.getFollowing(userId);
         return Response.status(Response.Status.OK).entity(followingList).build();
     }
@@ -116,15 +143,109 @@ public class Follow {
      * method returns a list of users who follow the specified user.
      *
      * @param userId The ID of the user to retrieve followers for.
+     * @param fields The comma separated fields to return, or a preset such as
+     * {@code summary}. All fields except the password are returned if not
+     * given.
      * @return Response containing the list of followers.
      */
     @GET
     @Path("follower/{userid}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getFollower(@PathParam("userid") String userId) {
+    public Response getFollower(@PathParam("userid") String userId,
+            @QueryParam("fields") String fields) {
+        Projection.Selection selection;
+        try {
+            selection = UserDTO.FIELDS.parse(fields, UserERROR::new);
+        } catch (UserERROR ex) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ex)
+                    .build();
+        }
+        if (selection != null) {
+            return Response.ok(followDao.getFollower(userId, selection)).build();
+        }
         List<UserDTO> followerList = followDao.getFollower(userId);
         return Response.status(Response.Status.OK).entity(followerList).build();
 
     }
 
+    /**
+     * Endpoint for retrieving the users followed by a specified user page by
+     * page, most recently followed first.
+     *
+     * @param userId The ID of the user to retrieve followed users for.
+     * @param cursor The cursor returned with the previous page, or nothing for
+     * the first page.
+     * @param size The number of users per page, at most
+     * {@value #MAX_PAGE_SIZE}.
+     * @param fields The comma separated fields to return; the {@code summary}
+     * preset if not given.
+     * @return Response containing the page of followed users and the cursor
+     * of the next page.
+     */
+    @GET
+    @Path("following/{userid}/page")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getFollowingPage(@PathParam("userid") String userId,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("size") @DefaultValue("50") int size,
+            @QueryParam("fields") @DefaultValue("summary") String fields) {
+        try {
+            checkPageSize(size);
+            Projection.Selection selection = select(fields);
+            return Response.ok(followDao.getFollowingPage(userId, selection, cursor, size))
+                    .build();
+        } catch (FollowERROR ex) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ex)
+                    .build();
+        }
+    }
+
+    /**
+     * Endpoint for retrieving the users who follow a specified user page by
+     * page, most recent followers first.
+     *
+     * @param userId The ID of the user to retrieve followers for.
+     * @param cursor The cursor returned with the previous page, or nothing for
+     * the first page.
+     * @param size The number of users per page, at most
+     * {@value #MAX_PAGE_SIZE}.
+     * @param fields The comma separated fields to return; the {@code summary}
+     * preset if not given.
+     * @return Response containing the page of followers and the cursor of the
+     * next page.
+     */
+    @GET
+    @Path("follower/{userid}/page")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getFollowerPage(@PathParam("userid") String userId,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("size") @DefaultValue("50") int size,
+            @QueryParam("fields") @DefaultValue("summary") String fields) {
+        try {
+            checkPageSize(size);
+            Projection.Selection selection = select(fields);
+            return Response.ok(followDao.getFollowerPage(userId, selection, cursor, size))
+                    .build();
+        } catch (FollowERROR ex) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ex)
+                    .build();
+        }
+    }
+
+    private static void checkPageSize(int size) throws FollowERROR {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new FollowERROR("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+    }
+
+    private static Projection.Selection select(String fields) throws FollowERROR {
+        try {
+            return UserDTO.FIELDS.select(fields);
+        } catch (IllegalArgumentException ex) {
+            throw new FollowERROR(ex.getMessage(), ex);
+        }
+    }
 }
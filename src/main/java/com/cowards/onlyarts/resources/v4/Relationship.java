@@ -0,0 +1,71 @@
+package com.cowards.onlyarts.resources.v4;
+
+import com.cowards.onlyarts.config.Authenticated;
+import com.cowards.onlyarts.config.UserPrincipal;
+import com.cowards.onlyarts.repositories.relationship.RelationshipDTO;
+import com.cowards.onlyarts.repositories.relationship.RelationshipERROR;
+import com.cowards.onlyarts.services.RelationshipDAO;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resource class for looking up how the logged-in user relates to the
+ * artworks and users shown on a page, so that a grid or a user list needs one
+ * request instead of one check per card and flag.
+ */
+@Path("v4/relationships")
+public class Relationship {
+
+    private static final RelationshipDAO relationshipDao = RelationshipDAO.getInstance();
+    private static final int MAX_BATCH_SIZE = 300;
+
+    /**
+     * Endpoint for retrieving the relationship flags of several artworks and
+     * users at once. For every artwork it tells whether the user favorited
+     * it, reacted to it, has it in their cart and bought it; for every user,
+     * whether the logged-in user follows them and is followed back.
+     *
+     * @param securityContext The security context holding the logged-in user.
+     * @param query The IDs of the artworks and users, at most
+     * {@value #MAX_BATCH_SIZE} of each; either list may be left out.
+     * @return Response containing the flags, in the order of the IDs.
+     */
+    @POST
+    @Authenticated
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getRelationships(@Context SecurityContext securityContext,
+            RelationshipDTO query) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
+        try {
+            List<String> artworkIds = ids(query == null ? null : query.getArtworkIds());
+            List<String> userIds = ids(query == null ? null : query.getUserIds());
+            RelationshipDTO result = new RelationshipDTO(artworkIds, userIds,
+                    relationshipDao.getArtworkRelations(principal.getUserId(), artworkIds),
+                    relationshipDao.getUserRelations(principal.getUserId(), userIds));
+            return Response.ok(result).build();
+        } catch (RelationshipERROR ex) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ex).build();
+        }
+    }
+
+    private static List<String> ids(List<String> ids) throws RelationshipERROR {
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        if (ids.size() > MAX_BATCH_SIZE) {
+            throw new RelationshipERROR("At most " + MAX_BATCH_SIZE
+                    + " artwork ids and " + MAX_BATCH_SIZE + " user ids are allowed");
+        }
+        return ids;
+    }
+}
@@ -1,25 +1,25 @@
 package com.cowards.onlyarts.resources.v4;
 
+import com.cowards.onlyarts.config.Authenticated;
+import com.cowards.onlyarts.config.UserPrincipal;
 import com.cowards.onlyarts.core.CodeGenerator;
 import com.cowards.onlyarts.repositories.request.RequestDTO;
 import com.cowards.onlyarts.repositories.request.RequestERROR;
 import com.cowards.onlyarts.repositories.token.TokenERROR;
-import com.cowards.onlyarts.repositories.user.UserDTO;
 import com.cowards.onlyarts.repositories.user.UserERROR;
 import com.cowards.onlyarts.services.RequestDAO;
-import com.cowards.onlyarts.services.TokenDAO;
-import com.cowards.onlyarts.services.UserDAO;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
-import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
 import java.util.List;
 
 /**
@@ -27,36 +27,36 @@ import java.util.List;
  * provides endpoints for retrieving, creating, updating, and deleting requests,
  * as well as approving, rejecting, and handling request status updates.
  *
- * This class interacts with the RequestDAO, TokenDAO, and UserDAO to handle
- * operations related to requests.
+ * This class interacts with the RequestDAO to handle operations related to
+ * requests.
  */
 @Path("v4/requests")
 public class Request {
 
     private final RequestDAO requestDAO = RequestDAO.getInstance();
-    private final TokenDAO tokenDao = TokenDAO.getInstance();
-    private final UserDAO userDAO = UserDAO.getInstance();
 
     /**
      * Endpoint for retrieving all requests. This method returns a list of all
      * requests based on the authenticated user's role.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @return Response containing the list of requests.
      */
     @GET
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAllRequests(@HeaderParam("authtoken") String tokenString) {
+    public Response getAllRequests(@Context SecurityContext securityContext) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            String userId = tokenDao.getToken(tokenString).getUserId();
-            String roleID = userDAO.getUserById(userId).getRoleId();
+            String userId = principal.getUserId();
+            String roleID = principal.getRoleId();
             if ("CT".equalsIgnoreCase(roleID) || "CR".equalsIgnoreCase(roleID)) {
                 List<RequestDTO> requestList = requestDAO.getAllRequest(userId, roleID);
                 return Response.status(Response.Status.OK).entity(requestList).build();
             } else {
                 throw new UserERROR("You do not have permission");
             }
-        } catch (TokenERROR | UserERROR ex) {
+        } catch (UserERROR ex) {
             return Response.status(Response.Status.UNAUTHORIZED).entity(ex).build();
         }
     }
@@ -65,17 +65,19 @@ public class Request {
      * Endpoint for retrieving a request by ID. This method returns the request
      * details specified by the request ID.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param requestId The ID of the request to retrieve.
      * @return Response containing the request details.
      */
     @GET
+    @Authenticated
     @Path("{request_id}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getRequestByID(@HeaderParam("authtoken") String tokenString,
+    public Response getRequestByID(@Context SecurityContext securityContext,
             @PathParam("request_id") String requestId) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            String userId = tokenDao.getToken(tokenString).getUserId();
+            String userId = principal.getUserId();
             RequestDTO request = requestDAO.getRequestById(requestId);
             if (userId.equalsIgnoreCase(request.getCustomerID()) || userId.equalsIgnoreCase(request.getPublisherId())) {
                 return Response.status(Response.Status.OK)
@@ -96,19 +98,20 @@ public class Request {
      * Endpoint for creating a new request. This method creates a new request
      * based on the provided request data.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param request The request data to create.
      * @return Response indicating success or failure of the operation.
      */
     @POST
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
     @Consumes(MediaType.APPLICATION_JSON)
-    public Response createRequest(@HeaderParam("authtoken") String tokenString,
+    public Response createRequest(@Context SecurityContext securityContext,
             RequestDTO request) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            String userId = tokenDao.getToken(tokenString).getUserId();
-            UserDTO user = userDAO.getUserById(userId);
-            if ("CT".equalsIgnoreCase(user.getRoleId())) {
+            String userId = principal.getUserId();
+            if ("CT".equalsIgnoreCase(principal.getRoleId())) {
                 String requestId = CodeGenerator.generateUUID(20);
                 request.setCustomerID(userId);
                 request.setRequestId(requestId);
@@ -123,7 +126,7 @@ public class Request {
             } else {
                 throw new UserERROR("Only customer can request");
             }
-        } catch (TokenERROR | UserERROR | RequestERROR e) {
+        } catch (UserERROR | RequestERROR e) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity(e)
                     .build();
@@ -134,17 +137,19 @@ public class Request {
      * Endpoint for updating an existing request. This method updates the
      * details of an existing request based on the provided request data.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param request The updated request data.
      * @return Response indicating success or failure of the operation.
      */
     @PUT
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
     @Consumes(MediaType.APPLICATION_JSON)
-    public Response updateRequest(@HeaderParam("authtoken") String tokenString,
+    public Response updateRequest(@Context SecurityContext securityContext,
             RequestDTO request) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            String userId = tokenDao.getToken(tokenString).getUserId();
+            String userId = principal.getUserId();
             if (userId.equalsIgnoreCase(request.getCustomerID())) {
                 boolean checkUpdate = requestDAO.updateRequest(request);
                 if (checkUpdate) {
@@ -168,17 +173,19 @@ public class Request {
      * Endpoint for deleting a request. This method deletes the specified
      * request.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param requestId The ID of the request to delete.
      * @return Response indicating success or failure of the operation.
      */
     @DELETE
+    @Authenticated
     @Path("{request_id}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response deleteRequest(@HeaderParam("authtoken") String tokenString,
+    public Response deleteRequest(@Context SecurityContext securityContext,
             @PathParam("request_id") String requestId) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            String userId = tokenDao.getToken(tokenString).getUserId();
+            String userId = principal.getUserId();
             RequestDTO request = requestDAO.getRequestById(requestId);
             if (userId.equalsIgnoreCase(request.getCustomerID())) {
                 boolean checkDelete = requestDAO.removeRequest(requestId);
@@ -192,7 +199,7 @@ public class Request {
             } else {
                 throw new RequestERROR("You do not have permission to delete this request");
             }
-        } catch (TokenERROR | RequestERROR e) {
+        } catch (RequestERROR e) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity(e)
                     .build();
@@ -203,17 +210,19 @@ public class Request {
      * Endpoint for approving a request. This method approves the specified
      * request.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param requestId The ID of the request to approve.
      * @return Response indicating success or failure of the operation.
      */
     @PUT
+    @Authenticated
     @Path("approve/{request_id}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response approveRequest(@HeaderParam("authtoken") String tokenString,
+    public Response approveRequest(@Context SecurityContext securityContext,
             @PathParam("request_id") String requestId) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            String userId = tokenDao.getToken(tokenString).getUserId();
+            String userId = principal.getUserId();
             RequestDTO request = requestDAO.getRequestById(requestId);
             if (userId.equalsIgnoreCase(request.getPublisherId())) {
                 boolean check = requestDAO.changeStatus(request, 0b0010);
@@ -227,7 +236,7 @@ public class Request {
             } else {
                 throw new RequestERROR("You do not have permission to approve/reject this request");
             }
-        } catch (TokenERROR | RequestERROR e) {
+        } catch (RequestERROR e) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity(e)
                     .build();
@@ -238,17 +247,19 @@ public class Request {
      * Endpoint for marking a request as seen. This method marks the specified
      * request as seen.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param requestId The ID of the request to mark as seen.
      * @return Response indicating success or failure of the operation.
      */
     @PUT
+    @Authenticated
     @Path("seen/{request_id}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response readRequest(@HeaderParam("authtoken") String tokenString,
+    public Response readRequest(@Context SecurityContext securityContext,
             @PathParam("request_id") String requestId) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            String userId = tokenDao.getToken(tokenString).getUserId();
+            String userId = principal.getUserId();
             RequestDTO request = requestDAO.getRequestById(requestId);
             if (userId.equalsIgnoreCase(request.getPublisherId())) {
                 boolean check = requestDAO.changeStatus(request, 0b1000);
@@ -262,7 +273,7 @@ public class Request {
             } else {
                 throw new RequestERROR("You do not have permission to seen/unseen this request");
             }
-        } catch (TokenERROR | RequestERROR e) {
+        } catch (RequestERROR e) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity(e)
                     .build();
@@ -273,17 +284,19 @@ public class Request {
      * Endpoint for responding to a request. This method responds to the
      * specified request.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param requestId The ID of the request to respond to.
      * @return Response indicating success or failure of the operation.
      */
     @PUT
+    @Authenticated
     @Path("response/{request_id}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response rejectRequest(@HeaderParam("authtoken") String tokenString,
+    public Response rejectRequest(@Context SecurityContext securityContext,
             @PathParam("request_id") String requestId) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            String userId = tokenDao.getToken(tokenString).getUserId();
+            String userId = principal.getUserId();
             RequestDTO request = requestDAO.getRequestById(requestId);
             if (userId.equalsIgnoreCase(request.getPublisherId())) {
                 boolean check = requestDAO.changeStatus(request, 0b0100);
@@ -297,7 +310,7 @@ public class Request {
             } else {
                 throw new RequestERROR("You do not have permission to response this request");
             }
-        } catch (TokenERROR | RequestERROR e) {
+        } catch (RequestERROR e) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity(e)
                     .build();
@@ -308,17 +321,19 @@ public class Request {
      * Endpoint for removing a request. This method removes the specified
      * request.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param requestId The ID of the request to remove.
      * @return Response indicating success or failure of the operation.
      */
     @PUT
+    @Authenticated
     @Path("remove/{request_id}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response doneRequest(@HeaderParam("authtoken") String tokenString,
+    public Response doneRequest(@Context SecurityContext securityContext,
             @PathParam("request_id") String requestId) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            String userId = tokenDao.getToken(tokenString).getUserId();
+            String userId = principal.getUserId();
             RequestDTO request = requestDAO.getRequestById(requestId);
             if (userId.equalsIgnoreCase(request.getCustomerID())) {
                 if (request.isApproved() || request.isResponse()) {
@@ -335,7 +350,7 @@ public class Request {
             } else {
                 throw new RequestERROR("You do not have permission to remove this request");
             }
-        } catch (TokenERROR | RequestERROR e) {
+        } catch (RequestERROR e) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity(e)
                     .build();
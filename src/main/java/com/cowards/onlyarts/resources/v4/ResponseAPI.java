@@ -1,28 +1,25 @@
 package com.cowards.onlyarts.resources.v4;
 
+import com.cowards.onlyarts.config.Authenticated;
+import com.cowards.onlyarts.config.UserPrincipal;
 import com.cowards.onlyarts.repositories.request.RequestDTO;
 import com.cowards.onlyarts.repositories.request.RequestERROR;
 import com.cowards.onlyarts.repositories.response.ResponseDTO;
 import com.cowards.onlyarts.repositories.response.ResponseERROR;
-import com.cowards.onlyarts.repositories.token.TokenDTO;
-import com.cowards.onlyarts.repositories.token.TokenERROR;
-import com.cowards.onlyarts.repositories.user.UserDTO;
-import com.cowards.onlyarts.repositories.user.UserERROR;
 import com.cowards.onlyarts.services.RequestDAO;
 import com.cowards.onlyarts.services.ResponseDAO;
-import com.cowards.onlyarts.services.TokenDAO;
-import com.cowards.onlyarts.services.UserDAO;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
-import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -35,23 +32,22 @@ import java.util.List;
 public class ResponseAPI {
 
     private final RequestDAO requestDAO = RequestDAO.getInstance();
-    private final TokenDAO tokenDAO = TokenDAO.getInstance();
     private final ResponseDAO responseDAO = ResponseDAO.getInstance();
-    private final UserDAO userDAO = UserDAO.getInstance();
 
     /**
      * Endpoint for adding a response. This method adds a response to a request.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param responseDTO The response data to add.
      * @return Response indicating success or failure of the operation.
      */
     @POST
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
     @Consumes(MediaType.APPLICATION_JSON)
-    public Response addResponse(@HeaderParam("authtoken") String tokenString, ResponseDTO responseDTO) {
+    public Response addResponse(@Context SecurityContext securityContext, ResponseDTO responseDTO) {
+        UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            TokenDTO user = tokenDAO.getToken(tokenString);
             RequestDTO request = requestDAO.getRequestById(responseDTO.getRequestId());
             if (request.getPublisherId().equalsIgnoreCase(user.getUserId())) {
                 boolean check = responseDAO.addResponse(responseDTO);
@@ -66,7 +62,7 @@ public class ResponseAPI {
                 throw new ResponseERROR("You can not response for this request");
             }
 
-        } catch (TokenERROR | RequestERROR | ResponseERROR ex) {
+        } catch (RequestERROR | ResponseERROR ex) {
             return Response.status(Response.Status.UNAUTHORIZED).entity(ex).build();
         }
     }
@@ -75,25 +71,25 @@ public class ResponseAPI {
      * Endpoint for retrieving all responses. This method retrieves all
      * responses based on the user's role.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @return Response containing the list of responses.
      */
     @GET
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAllResponsesById(@HeaderParam("authtoken") String tokenString) {
+    public Response getAllResponsesById(@Context SecurityContext securityContext) {
+        UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
         try {
             List<ResponseDTO> responseList = new ArrayList<>();
-            TokenDTO user = tokenDAO.getToken(tokenString);
-            UserDTO loginUser = userDAO.getUserById(user.getUserId());
-            if ("CR".equalsIgnoreCase(loginUser.getRoleId())) {
+            if ("CR".equalsIgnoreCase(user.getRoleId())) {
                 responseList = responseDAO.getAllResponseById(user.getUserId());
-            } else if ("CT".equalsIgnoreCase(loginUser.getRoleId())) {
+            } else if ("CT".equalsIgnoreCase(user.getRoleId())) {
                 responseList = responseDAO.getAllResponseByCustomerId(user.getUserId());
             } else {
                 throw new ResponseERROR("You do not have permission to view response");
             }
             return Response.status(Response.Status.OK).entity(responseList).build();
-        } catch (TokenERROR | UserERROR | ResponseERROR ex) {
+        } catch (ResponseERROR ex) {
             return Response.status(Response.Status.UNAUTHORIZED).entity(ex).build();
         }
     }
@@ -121,17 +117,18 @@ public class ResponseAPI {
      * Endpoint for removing a response by ID. This method removes a response
      * based on its ID.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param responseId The ID of the response to remove.
      * @return Response indicating success or failure of the operation.
      */
     @DELETE
     @Path("{responseId}")
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response removeResponseById(@HeaderParam("authtoken") String tokenString,
+    public Response removeResponseById(@Context SecurityContext securityContext,
             @PathParam("responseId") String responseId) {
+        UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            TokenDTO user = tokenDAO.getToken(tokenString);
             ResponseDTO response = responseDAO.getResponseById(responseId);
             RequestDTO request = requestDAO.getRequestById(response.getRequestId());
             if (user.getUserId().equalsIgnoreCase(request.getPublisherId())) {
@@ -146,7 +143,7 @@ public class ResponseAPI {
             } else {
                 throw new ResponseERROR("You can not delete this response");
             }
-        } catch (TokenERROR | ResponseERROR | RequestERROR ex) {
+        } catch (ResponseERROR | RequestERROR ex) {
             return Response.status(Response.Status.UNAUTHORIZED).entity(ex).build();
         }
     }
@@ -155,17 +152,18 @@ public class ResponseAPI {
      * Endpoint for marking a response as seen. This method marks a response as
      * seen by the customer.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @param responseId The ID of the response to mark as seen.
      * @return Response indicating success or failure of the operation.
      */
     @PUT
     @Path("seen/{responseId}")
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response seenResponse(@HeaderParam("authtoken") String tokenString,
+    public Response seenResponse(@Context SecurityContext securityContext,
             @PathParam("responseId") String responseId) {
+        UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            TokenDTO user = tokenDAO.getToken(tokenString);
             ResponseDTO response = responseDAO.getResponseById(responseId);
             RequestDTO request = requestDAO.getRequestById(response.getRequestId());
             if (user.getUserId().equalsIgnoreCase(request.getCustomerID())) {
@@ -180,7 +178,7 @@ public class ResponseAPI {
             } else {
                 throw new ResponseERROR("You can not seen this response");
             }
-        } catch (TokenERROR | ResponseERROR | RequestERROR ex) {
+        } catch (ResponseERROR | RequestERROR ex) {
             return Response.status(Response.Status.UNAUTHORIZED).entity(ex).build();
         }
     }
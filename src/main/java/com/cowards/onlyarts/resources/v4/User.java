@@ -1,21 +1,35 @@
 package com.cowards.onlyarts.resources.v4;
 
-import com.cowards.onlyarts.repositories.token.TokenDTO;
+import com.cowards.onlyarts.config.Authenticated;
+import com.cowards.onlyarts.config.EntityTags;
+import com.cowards.onlyarts.config.UserPrincipal;
+import com.cowards.onlyarts.repositories.follow.FollowCountDTO;
 import com.cowards.onlyarts.repositories.token.TokenERROR;
+import com.cowards.onlyarts.repositories.user.ProfileDTO;
 import com.cowards.onlyarts.repositories.user.UserDTO;
 import com.cowards.onlyarts.repositories.user.UserERROR;
-import com.cowards.onlyarts.services.TokenDAO;
+import com.cowards.onlyarts.services.FollowDAO;
+import com.cowards.onlyarts.services.PresenceTracker;
 import com.cowards.onlyarts.services.UserDAO;
+import jakarta.annotation.security.RolesAllowed;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
-import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The User class provides endpoints for managing user profiles and account
@@ -26,22 +40,24 @@ import jakarta.ws.rs.core.Response;
 public class User {
 
     private final UserDAO userDao = UserDAO.getInstance();
-    private final TokenDAO tokenDao = TokenDAO.getInstance();
+    private final FollowDAO followDao = FollowDAO.getInstance();
+    private final PresenceTracker presence = PresenceTracker.getInstance();
+    private static final int MAX_BATCH_SIZE = 300;
 
     /**
      * Endpoint for retrieving the user profile. This method retrieves the
-     * profile of the user associated with the provided authentication token.
+     * profile of the logged-in user.
      *
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @return Response containing the user profile.
      */
     @GET
+    @Authenticated
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getUserProfile(@HeaderParam("authtoken") String tokenString) {
+    public Response getUserProfile(@Context SecurityContext securityContext) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            UserDTO user = null;
-            TokenDTO token = tokenDao.getToken(tokenString);
-            user = userDao.getUserById(token.getUserId());
+            UserDTO user = userDao.getUserById(principal.getUserId());
             if (user.isBanned()) {
                 throw new UserERROR("Your account has been banned");
             }
@@ -55,29 +71,35 @@ public class User {
             return Response.status(Response.Status.NOT_FOUND)
                     .entity(ex)
                     .build();
-        } catch (TokenERROR ex) {
-            return Response.status(Response.Status.UNAUTHORIZED)
-                    .entity(ex)
-                    .build();
         }
     }
 
     /**
      * Endpoint for retrieving a user by ID. This method retrieves a user
-     * profile based on the provided user ID.
+     * profile based on the provided user ID, with the number of followers and
+     * followed users. The profile is tagged with the version of the user and
+     * the cached counts, so a client that already has it gets
+     * {@code 304 Not Modified} without reading the user.
      *
      * @param userId The ID of the user to retrieve.
+     * @param request The request, used to evaluate {@code If-None-Match}.
      * @return Response containing the retrieved user profile.
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("{user_id}")
-    public Response getUser(@PathParam("user_id") String userId) {
+    public Response getUser(@PathParam("user_id") String userId,
+            @Context Request request) {
         try {
-            UserDTO user = userDao.getUserById(userId);
-            return Response.status(Response.Status.OK)
-                    .entity(user)
-                    .build();
+            FollowCountDTO counts = followDao.getCounts(userId);
+            EntityTag tag = EntityTags.of("user", userId, userDao.getVersion(userId),
+                    counts.getFollowers(), counts.getFollowing());
+            Response notModified = EntityTags.notModified(request, tag);
+            if (notModified != null) {
+                return notModified;
+            }
+            UserDTO user = userDao.getProfile(userId);
+            return EntityTags.ok(new ProfileDTO(user, counts), tag);
         } catch (UserERROR ex) {
             return Response.status(Response.Status.NOT_FOUND)
                     .entity(ex)
@@ -85,27 +107,78 @@ public class User {
         }
     }
 
+    /**
+     * Endpoint for retrieving several users in one call. Unknown IDs are left
+     * out.
+     *
+     * @param userIds The IDs of the users, at most {@value #MAX_BATCH_SIZE}.
+     * @return Response containing the users in the order of their IDs.
+     */
+    @POST
+    @Path("batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getUsers(List<String> userIds) {
+        if (userIds == null || userIds.size() > MAX_BATCH_SIZE) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new UserERROR("Between 0 and " + MAX_BATCH_SIZE
+                            + " user ids are allowed"))
+                    .build();
+        }
+        return Response.status(Response.Status.OK)
+                .entity(userDao.getUsers(userIds))
+                .build();
+    }
+
+    /**
+     * Endpoint for checking whether users are online. The state is read from
+     * memory, so this never touches the database.
+     *
+     * @param userIds The IDs of the users to check, at most
+     * {@value #MAX_BATCH_SIZE}.
+     * @return Response containing the online state of each user, keyed by
+     * user ID.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("online")
+    public Response getOnlineStatus(@QueryParam("id") List<String> userIds) {
+        if (userIds.size() > MAX_BATCH_SIZE) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new UserERROR("At most " + MAX_BATCH_SIZE
+                            + " user ids are allowed"))
+                    .build();
+        }
+        Map<String, Boolean> online = new LinkedHashMap<>();
+        for (String userId : userIds) {
+            online.put(userId, presence.isOnline(userId));
+        }
+        return Response.status(Response.Status.OK)
+                .entity(online)
+                .build();
+    }
+
     /**
      * Endpoint for updating user information. This method updates the
-     * information of the user associated with the provided authentication
-     * token.
+     * information of the logged-in user, or of any user when called by an
+     * administrator.
      *
      * @param user The updated user information.
-     * @param tokenString The authentication token.
+     * @param securityContext The security context holding the logged-in user.
      * @return Response indicating success or failure of the operation.
      */
     @PUT
+    @Authenticated
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response updateUser(UserDTO user, @HeaderParam("authtoken") String tokenString) {
+    public Response updateUser(UserDTO user, @Context SecurityContext securityContext) {
+        UserPrincipal principal = (UserPrincipal) securityContext.getUserPrincipal();
         try {
-            TokenDTO token = tokenDao.getToken(tokenString);
-            UserDTO loginUser = userDao.getUserById(token.getUserId());
-            if (token.getUserId().equals(user.getUserId())
-                    || "AD".equals(loginUser.getRoleId())) {
+            if (principal.getUserId().equals(user.getUserId())
+                    || principal.hasRole("AD")) {
                 boolean checkUpdate = userDao.updateUserInfo(user);
                 if (checkUpdate) {
-                    loginUser = userDao.getUserById(token.getUserId());
+                    UserDTO loginUser = userDao.getUserById(principal.getUserId());
                     return Response.status(200).entity(loginUser).build();
                 } else {
                     throw new TokenERROR("You cannot update this account information");
@@ -122,39 +195,31 @@ public class User {
 
     /**
      * Endpoint for banning a user account. This method bans the user account
-     * associated with the provided user ID.
+     * associated with the provided user ID. Only administrators may call this
+     * endpoint.
      *
-     * @param tokenString The authentication token.
      * @param userId The ID of the user account to ban.
      * @return Response indicating success or failure of the operation.
      */
     @PUT
     @Path("ban/{userid}")
+    @RolesAllowed("AD")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response banUser(@HeaderParam("authtoken") String tokenString,
-            @PathParam("userid") String userId) {
+    public Response banUser(@PathParam("userid") String userId) {
         try {
-            TokenDTO token = tokenDao.getToken(tokenString);
-            UserDTO loginUser = userDao.getUserById(token.getUserId());
             UserDTO user = userDao.getUserById(userId);
-            if (!"AD".equals(loginUser.getRoleId())) {
-                throw new TokenERROR("You do not have permission to ban this account");
+            if (user.isBanned()) {
+                throw new UserERROR("This user already has been banned");
             } else {
-                if (user.isBanned()) {
-                    throw new UserERROR("This user already has been banned");
+                boolean check = userDao.changeStatus(user.getUserId(),
+                        user.getStatus(), 0b100);
+                if (check) {
+                    user = userDao.getUserById(userId);
+                    return Response.status(200).entity(user).build();
                 } else {
-                    boolean check = userDao.changeStatus(user.getUserId(),
-                            user.getStatus(), 0b100);
-                    if (check) {
-                        user = userDao.getUserById(userId);
-                        return Response.status(200).entity(user).build();
-                    } else {
-                        throw new UserERROR("Cannot ban this user");
-                    }
+                    throw new UserERROR("Cannot ban this user");
                 }
             }
-        } catch (TokenERROR ex) {
-            return Response.status(401).entity(ex).build();
         } catch (UserERROR ex) {
             return ex.getMessage().contains("exist")
                     ? Response.status(404).entity(ex).build()
@@ -164,39 +229,31 @@ public class User {
 
     /**
      * Endpoint for unbanning a user account. This method unbans the user
-     * account associated with the provided user ID.
+     * account associated with the provided user ID. Only administrators may
+     * call this endpoint.
      *
-     * @param tokenString The authentication token.
      * @param userId The ID of the user account to unban.
      * @return Response indicating success or failure of the operation.
      */
     @PUT
     @Path("unban/{userid}")
+    @RolesAllowed("AD")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response unbanUser(@HeaderParam("authtoken") String tokenString,
-            @PathParam("userid") String userId) {
+    public Response unbanUser(@PathParam("userid") String userId) {
         try {
-            TokenDTO token = tokenDao.getToken(tokenString);
-            UserDTO loginUser = userDao.getUserById(token.getUserId());
             UserDTO user = userDao.getUserById(userId);
-            if (!"AD".equals(loginUser.getRoleId())) {
-                throw new TokenERROR("You do not have permission to unban this account");
+            if (!user.isBanned()) {
+                throw new UserERROR("This user is not banned");
             } else {
-                if (!user.isBanned()) {
-                    throw new UserERROR("This user is not banned");
+                boolean check = userDao.changeStatus(user.getUserId(),
+                        user.getStatus(), 0b100);
+                if (check) {
+                    user = userDao.getUserById(userId);
+                    return Response.status(200).entity(user).build();
                 } else {
-                    boolean check = userDao.changeStatus(user.getUserId(),
-                            user.getStatus(), 0b100);
-                    if (check) {
-                        user = userDao.getUserById(userId);
-                        return Response.status(200).entity(user).build();
-                    } else {
-                        throw new UserERROR("Cannot unban this user");
-                    }
+                    throw new UserERROR("Cannot unban this user");
                 }
             }
-        } catch (TokenERROR ex) {
-            return Response.status(401).entity(ex).build();
         } catch (UserERROR ex) {
             return ex.getMessage().contains("exist")
                     ? Response.status(404).entity(ex).build()
@@ -206,14 +263,13 @@ public class User {
 
     @DELETE
     @Path("remove/{userid}")
+    @RolesAllowed("AD")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response removeUser(@HeaderParam("authtoken") String tokenString,
+    public Response removeUser(@Context SecurityContext securityContext,
             @PathParam("userid") String userId) {
         try {
-            TokenDTO token = tokenDao.getToken(tokenString);
-            UserDTO loginUser = userDao.getUserById(token.getUserId());
-            if (!"AD".equals(loginUser.getRoleId())
-                    || loginUser.getUserId().equals(userId)) {
+            UserPrincipal loginUser = (UserPrincipal) securityContext.getUserPrincipal();
+            if (loginUser.getUserId().equals(userId)) {
                 throw new TokenERROR("You dont have permission to do this action");
             } else {
                 UserDTO user = userDao.getUserById(userId);
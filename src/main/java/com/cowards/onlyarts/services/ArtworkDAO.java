@@ -1,15 +1,27 @@
 package com.cowards.onlyarts.services;
 
 import com.cowards.onlyarts.core.DBContext;
+import com.cowards.onlyarts.core.InClause;
+import com.cowards.onlyarts.core.PageCursor;
+import com.cowards.onlyarts.core.Projection;
+import com.cowards.onlyarts.core.Snapshot;
+import com.cowards.onlyarts.core.TtlCache;
 import com.cowards.onlyarts.repositories.artwork.ArtworkDTO;
 import com.cowards.onlyarts.repositories.artwork.ArtworkERROR;
+import com.cowards.onlyarts.repositories.page.PageDTO;
 import java.sql.Connection;
-import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -20,11 +32,48 @@ import java.util.logging.Logger;
 public class ArtworkDAO {
 
     private static final DBContext context = DBContext.getInstance();
+    private static final ArtworkSearchIndex searchIndex = ArtworkSearchIndex.getInstance();
+    private static final DuplicateDetector duplicates = DuplicateDetector.getInstance();
+    private static final HomeFeed feed = HomeFeed.getInstance();
     private static ArtworkDAO instance;
-        private static final String GET_ARTWORKS
+    private static final int CACHE_MAX_SIZE
+            = Integer.getInteger("onlyarts.cache.artworks.maxSize", 5_000);
+    private static final long CACHE_TTL_MILLIS
+            = Long.getLong("onlyarts.cache.artworks.ttlMillis", 300_000L);
+    private static final long TOP_10_REFRESH_MILLIS
+            = Long.getLong("onlyarts.top10.refreshMillis", 30_000L);
+    private final TtlCache<String, ArtworkDTO> cache
+            = new TtlCache<>(CACHE_MAX_SIZE, CACHE_TTL_MILLIS);
+    private final Snapshot<ArtworkDTO> top10 = new Snapshot<>("top artworks",
+            this::loadTop10, TOP_10_REFRESH_MILLIS);
+    private final AtomicLong generation = new AtomicLong();
+    private static final String GET_ARTWORKS
             = "SELECT [artwork_id], [owner_id], [cate_id], [name], [description], "
             + "[artwork_image], [price], [released_date], [status]"
             + " FROM [dbo].[Artworks]";
+    /**
+     * The catalog is paged on {@code [sort_date]}, a persisted computed
+     * column holding {@code [released_date]}, or 1753-01-01 when there is
+     * none, so that artworks without a release date sort as the oldest ones
+     * and every page is a seek on {@code IX_Artworks_sort_date}.
+     */
+    private static final String GET_FIRST_PAGE
+            = "SELECT TOP (?) [artwork_id], [owner_id], [cate_id], [name], [description], "
+            + "[artwork_image], [price], [released_date], [status], [sort_date]"
+            + " FROM [dbo].[Artworks]"
+            + " ORDER BY [sort_date] DESC, [artwork_id] DESC";
+    private static final String GET_NEXT_PAGE
+            = "SELECT TOP (?) [artwork_id], [owner_id], [cate_id], [name], [description], "
+            + "[artwork_image], [price], [released_date], [status], [sort_date]"
+            + " FROM [dbo].[Artworks]"
+            + " WHERE [sort_date] <= ? AND ([sort_date] < ? OR [artwork_id] < ?)"
+            + " ORDER BY [sort_date] DESC, [artwork_id] DESC";
+    private static final String GET_PAGE_AT
+            = "SELECT [artwork_id], [owner_id], [cate_id], [name], [description], "
+            + "[artwork_image], [price], [released_date], [status]"
+            + " FROM [dbo].[Artworks]"
+            + " ORDER BY [released_date] DESC"
+            + " OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
     private static final String GET_TOP_10_ARTWORKS
             = "SELECT TOP (10) [artwork_id], [owner_id], [cate_id], [name], [description], "
             + "[artwork_image], [price], [released_date], [status]"
@@ -50,21 +99,6 @@ public class ArtworkDAO {
             + " SET [cate_id] = ?, [name] = ?, [description] = ?,"
             + " [artwork_image] = ?, [price] = ?, [status] = ?"
             + " WHERE [artwork_id] = ?";
-    private static final String SEARCH_BY_TYPE = "SELECT aw.artwork_id, u.first_name, u.last_name, c.cate_name,\n"
-            + "aw.name, aw.description, aw.artwork_image, aw.price, aw.released_date, aw.status FROM Artworks aw\n"
-            + "LEFT JOIN Users u on aw.owner_id = u.user_id\n"
-            + "LEFT JOIN Categories c on aw.cate_id = c.cate_id\n"
-            + "WHERE c.cate_name like ? ";
-    private static final String SEARCH_BY_NAME = "SELECT aw.artwork_id, u.first_name, u.last_name, c.cate_name, \n"
-            + "aw.name, aw.description, aw.artwork_image, aw.price, aw.released_date, aw.status FROM Artworks aw\n"
-            + "LEFT JOIN Users u on aw.owner_id = u.user_id\n"
-            + "LEFT JOIN Categories c on aw.cate_id = c.cate_id\n"
-            + "WHERE aw.name like ?";
-    private static final String SEARCH_BY_CREATOR_NAME = "SELECT aw.artwork_id, u.first_name, u.last_name, c.cate_name,\n"
-            + "aw.name, aw.description, aw.artwork_image, aw.price, aw.released_date, aw.status FROM Artworks aw\n"
-            + "LEFT JOIN Users u on aw.owner_id = u.user_id\n"
-            + "LEFT JOIN Categories c on aw.cate_id = c.cate_id\n"
-            + "WHERE CONCAT(u.first_name, ' ', u.last_name) like ?";
     private static final String UPDATE_STATUS
             = "UPDATE [dbo].[Artworks]"
             + "SET [status] = ?"
@@ -118,10 +152,158 @@ public class ArtworkDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return artworks;
     }
 
+    /**
+     * Retrieves the chosen fields of all artworks, newest first. Only the
+     * columns of the chosen fields are read from the database.
+     *
+     * @param fields The fields to read.
+     * @return One map of field values per artwork.
+     */
+    public List<Map<String, Object>> getAll(Projection.Selection fields) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        List<Map<String, Object>> list = new ArrayList<>();
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement("SELECT " + fields.columns("a")
+                    + " FROM [dbo].[Artworks] a ORDER BY a.[released_date] DESC");
+            rs = stm.executeQuery();
+            while (rs.next()) {
+                list.add(fields.read(rs));
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on getAll(Selection) method", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return list;
+    }
+
+    /**
+     * Retrieves one page of the artwork catalog, newest first. The page is
+     * located by the sort key of the last artwork of the previous page, so
+     * the cost of a page does not depend on how deep it is in the catalog.
+     *
+     * @param cursor The cursor returned with the previous page, or
+     * {@code null} for the first page.
+     * @param pageSize The maximum number of artworks on the page.
+     * @return The page of artworks and the cursor of the next page.
+     * @throws ArtworkERROR if the cursor is malformed.
+     */
+    public PageDTO<ArtworkDTO> getPage(String cursor, int pageSize) throws ArtworkERROR {
+        Timestamp releasedAfter = null;
+        String artworkAfter = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                String[] key = PageCursor.decode(cursor, 2);
+                releasedAfter = new Timestamp(Long.parseLong(key[0]));
+                artworkAfter = key[1];
+            } catch (IllegalArgumentException ex) {
+                throw new ArtworkERROR("Invalid page cursor", ex);
+            }
+        }
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        List<ArtworkDTO> artworks = new ArrayList<>();
+        String nextCursor = null;
+        try {
+            conn = context.getConnection();
+            if (releasedAfter == null) {
+                stm = conn.prepareStatement(GET_FIRST_PAGE);
+                stm.setInt(1, pageSize + 1);
+            } else {
+                stm = conn.prepareStatement(GET_NEXT_PAGE);
+                stm.setInt(1, pageSize + 1);
+                stm.setTimestamp(2, releasedAfter);
+                stm.setTimestamp(3, releasedAfter);
+                stm.setString(4, artworkAfter);
+            }
+            rs = stm.executeQuery();
+            Timestamp lastReleased = null;
+            while (rs.next()) {
+                if (artworks.size() == pageSize) {
+                    ArtworkDTO last = artworks.get(pageSize - 1);
+                    nextCursor = PageCursor.encode(
+                            Long.toString(lastReleased.getTime()),
+                            last.getArtworkId());
+                    break;
+                }
+                lastReleased = rs.getTimestamp("sort_date");
+                artworks.add(toArtwork(rs));
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on getPage() method", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return new PageDTO<>(artworks, nextCursor);
+    }
+
+    /**
+     * Retrieves the artworks at a given position of the catalog, newest
+     * first, in the same order as {@link #getAll()}. Only the requested rows
+     * are read from the database.
+     *
+     * @param offset The number of artworks to skip.
+     * @param count The maximum number of artworks to return.
+     * @return a list of ArtworkDTO objects representing the artworks.
+     */
+    public List<ArtworkDTO> getRange(int offset, int count) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        List<ArtworkDTO> artworks = new ArrayList<>();
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement(GET_PAGE_AT);
+            stm.setInt(1, offset);
+            stm.setInt(2, count);
+            rs = stm.executeQuery();
+            while (rs.next()) {
+                artworks.add(toArtwork(rs));
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on getRange() method", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return artworks;
+    }
+
+    private ArtworkDTO toArtwork(ResultSet rs) throws SQLException {
+        ArtworkDTO artwork = new ArtworkDTO();
+        artwork.setArtworkId(rs.getString(1));
+        artwork.setOwnerId(rs.getString(2));
+        artwork.setCateId(rs.getString(3));
+        artwork.setName(rs.getString(4));
+        artwork.setDescription(rs.getString(5));
+        artwork.setArtworkImage(rs.getString(6));
+        artwork.setPrice(rs.getFloat(7));
+        artwork.setReleasedDate(rs.getDate(8));
+        artwork.setStatus(rs.getInt(9));
+        return artwork;
+    }
+
+    private static ArtworkDTO copy(ArtworkDTO artwork) {
+        return new ArtworkDTO(artwork.getArtworkId(), artwork.getOwnerId(),
+                artwork.getCateId(), artwork.getName(), artwork.getDescription(),
+                artwork.getArtworkImage(), artwork.getPrice(),
+                artwork.getReleasedDate(), artwork.getStatus());
+    }
+
     /**
      * Retrieves artworks owned by a specific user.
      *
@@ -159,18 +341,25 @@ public class ArtworkDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return artworks;
     }
 
     /**
-     * Retrieves an artwork by its ID.
+     * Retrieves an artwork by its ID. Artworks are served from a cache that is
+     * invalidated whenever this DAO writes to them, so repeated lookups of the
+     * same artwork do not hit the database.
      *
      * @param artworkId the ID of the artwork.
      * @return the ArtworkDTO object representing the artwork.
      * @throws ArtworkERROR if the artwork with the specified ID does not exist.
      */
     public ArtworkDTO getArtwork(String artworkId) throws ArtworkERROR {
+        ArtworkDTO cached = cache.get(artworkId);
+        if (cached != null) {
+            return copy(cached);
+        }
         Connection conn = null;
         PreparedStatement stm = null;
         ResultSet rs = null;
@@ -181,16 +370,10 @@ public class ArtworkDAO {
             stm.setString(1, artworkId);
             rs = stm.executeQuery();
             if (rs.next()) {
-                artwork = new ArtworkDTO();
-                artwork.setArtworkId(rs.getString(1));
-                artwork.setOwnerId(rs.getString(2));
-                artwork.setCateId(rs.getString(3));
-                artwork.setName(rs.getString(4));
-                artwork.setDescription(rs.getString(5));
-                artwork.setArtworkImage(rs.getString(6));
-                artwork.setPrice(rs.getFloat(7));
-                artwork.setReleasedDate(rs.getDate(8));
-                artwork.setStatus(rs.getInt(9));
+                artwork = toArtwork(rs);
+                if (!context.inTransaction()) {
+                    cache.put(artworkId, copy(artwork));
+                }
             } else {
                 throw new ArtworkERROR("This artowrk does not exist");
             }
@@ -199,10 +382,76 @@ public class ArtworkDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return artwork;
     }
 
+    /**
+     * Retrieves several artworks at once. Cached artworks are served from the
+     * cache and the rest are read with one {@code IN} query per chunk of
+     * IDs.
+     *
+     * @param artworkIds the IDs of the artworks.
+     * @return the existing artworks, in the order of their IDs. Unknown IDs are
+     * left out.
+     */
+    public List<ArtworkDTO> getArtworks(Collection<String> artworkIds) {
+        Map<String, ArtworkDTO> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String artworkId : artworkIds) {
+            ArtworkDTO cached = artworkId == null ? null : cache.get(artworkId);
+            if (cached != null) {
+                found.put(artworkId, copy(cached));
+            } else if (artworkId != null) {
+                missing.add(artworkId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            boolean cacheable = !context.inTransaction();
+            Connection conn = null;
+            PreparedStatement stm = null;
+            ResultSet rs = null;
+            try {
+                conn = context.getConnection();
+                for (List<String> chunk : InClause.partition(missing)) {
+                    stm = conn.prepareStatement(GET_ARTWORKS + " WHERE [artwork_id] IN "
+                            + InClause.placeholders(chunk.size()));
+                    for (int i = 0; i < chunk.size(); i++) {
+                        stm.setString(i + 1, chunk.get(i));
+                    }
+                    rs = stm.executeQuery();
+                    while (rs.next()) {
+                        ArtworkDTO artwork = toArtwork(rs);
+                        found.put(artwork.getArtworkId(), artwork);
+                        if (cacheable) {
+                            cache.put(artwork.getArtworkId(), copy(artwork));
+                        }
+                    }
+                    context.closeResultSet(rs);
+                    context.closeStatement(stm);
+                    rs = null;
+                    stm = null;
+                }
+            } catch (SQLException ex) {
+                logError("Exception found on getArtworks() method", ex);
+            } finally {
+                context.closeResultSet(rs);
+                context.closeStatement(stm);
+                context.closeConnection(conn);
+            }
+        }
+        List<ArtworkDTO> artworks = new ArrayList<>();
+        Set<String> added = new HashSet<>();
+        for (String artworkId : artworkIds) {
+            ArtworkDTO artwork = found.get(artworkId);
+            if (artwork != null && added.add(artworkId)) {
+                artworks.add(artwork);
+            }
+        }
+        return artworks;
+    }
+
     /**
      * Adds a new artwork to the database.
      *
@@ -230,6 +479,17 @@ public class ArtworkDAO {
             logError("Exception found on addArtwork() method", ex);
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        if (check) {
+            top10.invalidate();
+            changed();
+            searchIndex.refresh(artwork.getArtworkId());
+            // Reports and timelines must only ever see committed artworks.
+            context.afterCommit(() -> {
+                duplicates.check(artwork);
+                feed.published(artwork);
+            });
         }
         return check;
     }
@@ -257,6 +517,13 @@ public class ArtworkDAO {
             res = false;
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        if (res) {
+            top10.invalidate();
+            changed();
+            evict(artwork.getArtworkId());
+            searchIndex.refresh(artwork.getArtworkId());
         }
         return res;
     }
@@ -285,6 +552,14 @@ public class ArtworkDAO {
             logError("Exception found on delete(String artworkId) method", e);
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        if (check) {
+            top10.invalidate();
+            changed();
+            evict(artworkId);
+            searchIndex.refresh(artworkId);
+            context.afterCommit(() -> duplicates.remove(artworkId));
         }
         return check;
     }
@@ -322,128 +597,51 @@ public class ArtworkDAO {
             logError("Exception found on update(ArtworkDTO artworkDTO) method", e);
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        if (check) {
+            top10.invalidate();
+            changed();
+            evict(artworkDTO.getArtworkId());
+            searchIndex.refresh(artworkDTO.getArtworkId());
+            if ((artworkDTO.getStatus() & 3) == 0) {
+                context.afterCommit(() -> duplicates.check(artworkDTO));
+            } else {
+                context.afterCommit(() -> duplicates.remove(artworkDTO.getArtworkId()));
+            }
         }
         return check;
     }
 
     /**
-     * Retrieves a list of artworks filtered by category type.
+     * Retrieves a list of artworks whose category name contains the given
+     * text.
      *
      * @param typeInput the category type to filter artworks by.
      * @return a list of ArtworkDTO objects representing the filtered artworks.
      */
     public List<ArtworkDTO> getListArtworkWithType(String typeInput) {
-        List<ArtworkDTO> list = new ArrayList<>();
-        Connection conn = null;
-        PreparedStatement stm = null;
-        ResultSet rs = null;
-
-        try {
-            conn = context.getConnection();
-            if (conn != null) {
-                stm = conn.prepareStatement(SEARCH_BY_TYPE);
-                stm.setString(1, "%" + typeInput + "%");
-                rs = stm.executeQuery();
-                while (rs.next()) {
-                    String artworkId = rs.getString("artwork_id");
-                    String ownerId = rs.getString("first_name").concat(" ").concat(rs.getString("last_name"));
-                    String cateId = rs.getString("cate_name");
-                    String name = rs.getString("name");
-                    String description = rs.getString("description");
-                    String artworkImage = rs.getString("artwork_image");
-                    float price = rs.getFloat("price");
-                    Date releaseDate = rs.getDate("released_date");
-                    int status = rs.getInt("status");
-                    list.add(new ArtworkDTO(artworkId, ownerId, cateId, name, description, artworkImage, price, releaseDate, status));
-                }
-            }
-        } catch (SQLException e) {
-            logError("Exception found on getListArtworkWithType() method", e);
-        } finally {
-            context.closeResultSet(rs);
-            context.closeStatement(stm);
-        }
-        return list;
+        return searchIndex.find(typeInput, ArtworkSearchIndex.Field.CATEGORY);
     }
 
     /**
-     * Retrieves a list of artworks filtered by artwork name.
+     * Retrieves a list of artworks whose name contains the given text.
      *
      * @param titleInput the artwork name to filter artworks by.
      * @return a list of ArtworkDTO objects representing the filtered artworks.
      */
     public List<ArtworkDTO> getListArtworkWithName(String titleInput) {
-        List<ArtworkDTO> list = new ArrayList<>();
-        Connection conn = null;
-        PreparedStatement stm = null;
-        ResultSet rs = null;
-
-        try {
-            conn = context.getConnection();
-            if (conn != null) {
-                stm = conn.prepareStatement(SEARCH_BY_NAME);
-                stm.setString(1, "%" + titleInput + "%");
-                rs = stm.executeQuery();
-                while (rs.next()) {
-                    String artworkId = rs.getString("artwork_id");
-                    String ownerId = rs.getString("first_name").concat(" ").concat(rs.getString("last_name"));
-                    String cateId = rs.getString("cate_name");
-                    String name = rs.getString("name");
-                    String description = rs.getString("description");
-                    String artworkImage = rs.getString("artwork_image");
-                    float price = rs.getFloat("price");
-                    Date releaseDate = rs.getDate("released_date");
-                    int status = rs.getInt("status");
-                    list.add(new ArtworkDTO(artworkId, ownerId, cateId, name, description, artworkImage, price, releaseDate, status));
-                }
-            }
-        } catch (SQLException e) {
-            logError("Exception found on getListArtworkWithName() method", e);
-        } finally {
-            context.closeResultSet(rs);
-            context.closeStatement(stm);
-        }
-        return list;
+        return searchIndex.find(titleInput, ArtworkSearchIndex.Field.NAME);
     }
 
     /**
-     * Retrieves a list of artworks filtered by creator name.
+     * Retrieves a list of artworks whose creator name contains the given text.
      *
      * @param creatorInput the creator name to filter artworks by.
      * @return a list of ArtworkDTO objects representing the filtered artworks.
      */
     public List<ArtworkDTO> getListArtworkWithNameOfCreator(String creatorInput) {
-        List<ArtworkDTO> list = new ArrayList<>();
-        Connection conn = null;
-        PreparedStatement stm = null;
-        ResultSet rs = null;
-
-        try {
-            conn = context.getConnection();
-            if (conn != null) {
-                stm = conn.prepareStatement(SEARCH_BY_CREATOR_NAME);
-                stm.setString(1, "%" + creatorInput + "%");
-                rs = stm.executeQuery();
-                while (rs.next()) {
-                    String artworkId = rs.getString("artwork_id");
-                    String ownerId = rs.getString("first_name").concat(" ").concat(rs.getString("last_name"));
-                    String cateId = rs.getString("cate_name");
-                    String name = rs.getString("name");
-                    String description = rs.getString("description");
-                    String artworkImage = rs.getString("artwork_image");
-                    float price = rs.getFloat("price");
-                    Date releaseDate = rs.getDate("released_date");
-                    int status = rs.getInt("status");
-                    list.add(new ArtworkDTO(artworkId, ownerId, cateId, name, description, artworkImage, price, releaseDate, status));
-                }
-            }
-        } catch (SQLException e) {
-            logError("Exception found on getListArtworkWithNameOfCreator() method", e);
-        } finally {
-            context.closeResultSet(rs);
-            context.closeStatement(stm);
-        }
-        return list;
+        return searchIndex.find(creatorInput, ArtworkSearchIndex.Field.CREATOR);
     }
 
     /**
@@ -452,6 +650,19 @@ public class ArtworkDAO {
      * @return a list of ArtworkDTO objects representing the top 10 artworks.
      */
     public List<ArtworkDTO> getTop10() {
+        return top10.get();
+    }
+
+    /**
+     * Retrieves a counter that changes every time the top 10 list changes.
+     *
+     * @return The generation of the top 10 list.
+     */
+    public long getTop10Generation() {
+        return top10.getGeneration();
+    }
+
+    private List<ArtworkDTO> loadTop10() {
         Connection conn = null;
         PreparedStatement stm = null;
         ResultSet rs = null;
@@ -479,6 +690,7 @@ public class ArtworkDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return artworks;
     }
@@ -497,7 +709,84 @@ public class ArtworkDAO {
             logError("Exception found on update(ArtworkDTO artworkDTO) method", e);
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        if (check) {
+            top10.invalidate();
+            changed();
+            evict(artworkId);
+            searchIndex.refresh(artworkId);
+            if (((status ^ state) & 3) != 0) {
+                context.afterCommit(() -> duplicates.remove(artworkId));
+            } else {
+                context.afterCommit(() -> recheck(artworkId));
+            }
         }
         return check;
     }
+
+    /**
+     * Retrieves a counter that changes every time an artwork is written
+     * through this DAO, and once more when the transaction of the write
+     * commits.
+     *
+     * @return The generation of the artwork catalog.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    private void changed() {
+        generation.incrementAndGet();
+        context.afterCommit(generation::incrementAndGet);
+    }
+
+    /**
+     * Queues the duplicate check of an artwork that became visible again. It
+     * is read back once committed, as {@code changeStatus} only knows its ID.
+     */
+    private void recheck(String artworkId) {
+        try {
+            duplicates.check(getArtwork(artworkId));
+        } catch (ArtworkERROR ex) {
+            logError("Exception found on recheck() method", ex);
+        }
+    }
+
+    /**
+     * Drops a written artwork from the cache, and again once the current
+     * transaction has committed, so that a copy read before the commit is
+     * not kept.
+     */
+    private void evict(String artworkId) {
+        cache.invalidate(artworkId);
+        context.afterCommit(() -> cache.invalidate(artworkId));
+    }
+
+    /**
+     * Retrieves the number of artwork lookups served from the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long getCacheHits() {
+        return cache.getHits();
+    }
+
+    /**
+     * Retrieves the number of artwork lookups that had to query the database.
+     *
+     * @return The number of cache misses.
+     */
+    public long getCacheMisses() {
+        return cache.getMisses();
+    }
+
+    /**
+     * Retrieves the share of artwork lookups served from the cache.
+     *
+     * @return A ratio between {@code 0} and {@code 1}.
+     */
+    public double getCacheHitRate() {
+        return cache.getHitRate();
+    }
 }
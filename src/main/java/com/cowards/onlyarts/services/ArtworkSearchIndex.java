@@ -0,0 +1,622 @@
+package com.cowards.onlyarts.services;
+
+import com.cowards.onlyarts.core.DBContext;
+import com.cowards.onlyarts.core.InClause;
+import com.cowards.onlyarts.core.PageCursor;
+import com.cowards.onlyarts.repositories.artwork.ArtworkDTO;
+import com.cowards.onlyarts.repositories.artwork.ArtworkERROR;
+import com.cowards.onlyarts.repositories.page.PageDTO;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code ArtworkSearchIndex} class keeps an in-memory inverted index of
+ * the words in the name, description, category name and creator name of every
+ * visible artwork, so that searches do not scan the {@code Artworks} table.
+ * <p>
+ * The index is loaded once with a single query, kept up to date by
+ * {@link ArtworkDAO} after each committed write, and rebuilt in the background
+ * every {@code onlyarts.search.rebuildMillis} to pick up changes made by other
+ * nodes or to user and category names. Query words match indexed words by
+ * prefix, and results are ranked by the fields they matched in. Images are not
+ * kept in the index; they are read for the returned artworks only.
+ */
+public final class ArtworkSearchIndex {
+
+    /**
+     * The fields of an artwork that can be searched, with the weight a match
+     * in each field adds to the rank of a result.
+     */
+    public enum Field {
+        NAME(8), CATEGORY(4), CREATOR(4), DESCRIPTION(1);
+
+        private final int weight;
+
+        Field(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static final DBContext context = DBContext.getInstance();
+    private static ArtworkSearchIndex instance;
+    private static final long REBUILD_MILLIS
+            = Long.getLong("onlyarts.search.rebuildMillis", 600_000L);
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final String GET_DOCUMENTS
+            = "SELECT aw.artwork_id, u.first_name, u.last_name, c.cate_name, "
+            + "aw.name, aw.description, aw.price, aw.released_date, aw.status "
+            + "FROM Artworks aw "
+            + "LEFT JOIN Users u on aw.owner_id = u.user_id "
+            + "LEFT JOIN Categories c on aw.cate_id = c.cate_id";
+    private static final String GET_DOCUMENT = GET_DOCUMENTS
+            + " WHERE aw.artwork_id = ?";
+    private static final String GET_IMAGES
+            = "SELECT [artwork_id], [artwork_image] FROM [dbo].[Artworks] "
+            + "WHERE [artwork_id] IN ";
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<String, Document> documents = new HashMap<>();
+    private TreeMap<String, Map<String, Integer>> postings = new TreeMap<>();
+    /**
+     * The artworks refreshed while a rebuild is loading, or {@code null} when
+     * no rebuild is running. Guarded by {@link #lock}.
+     */
+    private Set<String> refreshedDuringRebuild;
+    private volatile boolean built;
+    private ScheduledExecutorService rebuilder;
+
+    private ArtworkSearchIndex() {
+    }
+
+    private void logError(String message, Exception ex) {
+        Logger.getLogger(ArtworkSearchIndex.class.getName())
+                .log(Level.SEVERE, message, ex);
+    }
+
+    /**
+     * Retrieves the singleton instance of {@code ArtworkSearchIndex}.
+     *
+     * @return The singleton instance of {@code ArtworkSearchIndex}.
+     */
+    public static synchronized ArtworkSearchIndex getInstance() {
+        if (instance == null) {
+            instance = new ArtworkSearchIndex();
+        }
+        return instance;
+    }
+
+    /**
+     * Searches the index. Every word of the query must match a word of at
+     * least one of the given fields. Results are ordered by rank, then newest
+     * first.
+     *
+     * @param query The words to search for.
+     * @param fields The fields to search in.
+     * @return Every matching artwork.
+     */
+    public List<ArtworkDTO> search(String query, Set<Field> fields) {
+        List<Hit> ranked = rank(query, fields);
+        List<Document> docs = new ArrayList<>(ranked.size());
+        for (Hit hit : ranked) {
+            docs.add(hit.doc);
+        }
+        return toArtworks(docs);
+    }
+
+    /**
+     * Finds the artworks whose field contains the given text, ignoring case,
+     * as the old {@code LIKE '%text%'} searches did. Results are ordered
+     * newest first.
+     *
+     * @param text The text to look for.
+     * @param field The field to look in.
+     * @return Every matching artwork.
+     */
+    public List<ArtworkDTO> find(String text, Field field) {
+        ensureBuilt();
+        String needle = text == null ? "" : text.toLowerCase(Locale.ROOT);
+        List<Document> docs = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Document doc : documents.values()) {
+                String value = doc.lowerCase(field);
+                if (value != null && value.contains(needle)) {
+                    docs.add(doc);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        docs.sort(Comparator.comparingLong((Document doc) -> doc.releasedAt).reversed()
+                .thenComparing(doc -> doc.artworkId));
+        return toArtworks(docs);
+    }
+
+    /**
+     * Searches the index and returns one page of the results.
+     *
+     * @param query The words to search for.
+     * @param fields The fields to search in.
+     * @param cursor The cursor returned with the previous page, or
+     * {@code null} for the first page.
+     * @param pageSize The maximum number of artworks on the page.
+     * @return The page of matching artworks and the cursor of the next page.
+     * @throws ArtworkERROR if the cursor is malformed.
+     * @see #search(String, Set)
+     */
+    public PageDTO<ArtworkDTO> search(String query, Set<Field> fields,
+            String cursor, int pageSize) throws ArtworkERROR {
+        int offset = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                offset = Integer.parseInt(PageCursor.decode(cursor, 1)[0]);
+                if (offset < 0) {
+                    throw new IllegalArgumentException("Negative offset");
+                }
+            } catch (IllegalArgumentException ex) {
+                throw new ArtworkERROR("Invalid page cursor", ex);
+            }
+        }
+        List<Hit> ranked = rank(query, fields);
+        List<Document> docs = new ArrayList<>();
+        for (int i = offset; i < ranked.size() && docs.size() < pageSize; i++) {
+            docs.add(ranked.get(i).doc);
+        }
+        List<ArtworkDTO> items = toArtworks(docs);
+        int next = offset + docs.size();
+        return new PageDTO<>(items,
+                next < ranked.size() ? PageCursor.encode(Integer.toString(next)) : null);
+    }
+
+    private List<Hit> rank(String query, Set<Field> fields) {
+        ensureBuilt();
+        int mask = 0;
+        for (Field field : fields) {
+            mask |= 1 << field.ordinal();
+        }
+        List<Hit> ranked = new ArrayList<>();
+        Map<String, Integer> scores = null;
+        lock.readLock().lock();
+        try {
+            for (String word : tokenize(query)) {
+                Map<String, Integer> matches = match(word, mask);
+                if (scores == null) {
+                    scores = matches;
+                } else {
+                    Map<String, Integer> both = new HashMap<>();
+                    for (Map.Entry<String, Integer> entry : scores.entrySet()) {
+                        Integer score = matches.get(entry.getKey());
+                        if (score != null) {
+                            both.put(entry.getKey(), entry.getValue() + score);
+                        }
+                    }
+                    scores = both;
+                }
+                if (scores.isEmpty()) {
+                    break;
+                }
+            }
+            if (scores != null) {
+                for (Map.Entry<String, Integer> entry : scores.entrySet()) {
+                    ranked.add(new Hit(documents.get(entry.getKey()), entry.getValue()));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        ranked.sort(Comparator.comparingInt((Hit hit) -> hit.score).reversed()
+                .thenComparing(hit -> hit.doc.releasedAt, Comparator.reverseOrder())
+                .thenComparing(hit -> hit.doc.artworkId));
+        return ranked;
+    }
+
+    /**
+     * Turns documents into artworks, reading their images with one
+     * {@code IN} query per chunk of IDs.
+     */
+    private List<ArtworkDTO> toArtworks(List<Document> docs) {
+        Map<String, String> images = new HashMap<>();
+        if (!docs.isEmpty()) {
+            List<String> artworkIds = new ArrayList<>(docs.size());
+            for (Document doc : docs) {
+                artworkIds.add(doc.artworkId);
+            }
+            Connection conn = null;
+            PreparedStatement stm = null;
+            ResultSet rs = null;
+            try {
+                conn = context.getConnection();
+                for (List<String> chunk : InClause.partition(artworkIds)) {
+                    stm = conn.prepareStatement(GET_IMAGES
+                            + InClause.placeholders(chunk.size()));
+                    for (int i = 0; i < chunk.size(); i++) {
+                        stm.setString(i + 1, chunk.get(i));
+                    }
+                    rs = stm.executeQuery();
+                    while (rs.next()) {
+                        images.put(rs.getString(1), rs.getString(2));
+                    }
+                    context.closeResultSet(rs);
+                    context.closeStatement(stm);
+                    rs = null;
+                    stm = null;
+                }
+            } catch (SQLException ex) {
+                logError("Exception found on toArtworks() method", ex);
+            } finally {
+                context.closeResultSet(rs);
+                context.closeStatement(stm);
+                context.closeConnection(conn);
+            }
+        }
+        List<ArtworkDTO> artworks = new ArrayList<>(docs.size());
+        for (Document doc : docs) {
+            artworks.add(doc.toArtwork(images.get(doc.artworkId)));
+        }
+        return artworks;
+    }
+
+    /**
+     * Reloads one artwork into the index, or drops it if it is no longer
+     * visible. Called after every write to an artwork; inside a transaction
+     * the artwork is reloaded once the transaction has committed, so the
+     * index never holds writes that may still be rolled back.
+     *
+     * @param artworkId The ID of the artwork.
+     */
+    public void refresh(String artworkId) {
+        context.afterCommit(() -> reload(artworkId));
+    }
+
+    private void reload(String artworkId) {
+        if (!built) {
+            lock.readLock().lock();
+            try {
+                // Nothing to keep up to date until the first build starts.
+                if (refreshedDuringRebuild == null) {
+                    return;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement(GET_DOCUMENT);
+            stm.setString(1, artworkId);
+            rs = stm.executeQuery();
+            Document doc = rs.next() ? toDocument(rs) : null;
+            lock.writeLock().lock();
+            try {
+                unindex(documents, postings, artworkId);
+                if (doc != null) {
+                    index(documents, postings, doc);
+                }
+                if (refreshedDuringRebuild != null) {
+                    refreshedDuringRebuild.add(artworkId);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on reload() method", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+    }
+
+    /**
+     * Loads every visible artwork from the database into a new index and
+     * swaps it in place of the current one. Artworks refreshed while the new
+     * index was loading keep their refreshed state, which may be newer than
+     * the rows the rebuild read.
+     *
+     * @return {@code true} if the index was rebuilt, {@code false} if the
+     * artworks could not be loaded.
+     */
+    public synchronized boolean rebuild() {
+        lock.writeLock().lock();
+        try {
+            refreshedDuringRebuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        Map<String, Document> newDocuments = new HashMap<>();
+        TreeMap<String, Map<String, Integer>> newPostings = new TreeMap<>();
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement(GET_DOCUMENTS);
+            rs = stm.executeQuery();
+            while (rs.next()) {
+                Document doc = toDocument(rs);
+                if (doc != null) {
+                    index(newDocuments, newPostings, doc);
+                }
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on rebuild() method", ex);
+            lock.writeLock().lock();
+            try {
+                refreshedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return false;
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        lock.writeLock().lock();
+        try {
+            for (String artworkId : refreshedDuringRebuild) {
+                unindex(newDocuments, newPostings, artworkId);
+                Document doc = documents.get(artworkId);
+                if (doc != null) {
+                    index(newDocuments, newPostings, doc);
+                }
+            }
+            refreshedDuringRebuild = null;
+            documents = newDocuments;
+            postings = newPostings;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        built = true;
+        return true;
+    }
+
+    /**
+     * Builds the index if it has not been built yet and starts the periodic
+     * background rebuild.
+     */
+    public void ensureBuilt() {
+        if (built) {
+            return;
+        }
+        synchronized (this) {
+            if (!built && rebuild() && rebuilder == null) {
+                rebuilder = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "onlyarts-search-index");
+                    t.setDaemon(true);
+                    return t;
+                });
+                rebuilder.scheduleWithFixedDelay(this::rebuild,
+                        REBUILD_MILLIS, REBUILD_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Stops the periodic background rebuild.
+     */
+    public synchronized void shutdown() {
+        if (rebuilder != null) {
+            rebuilder.shutdownNow();
+            rebuilder = null;
+        }
+    }
+
+    /**
+     * Retrieves the number of artworks in the index.
+     *
+     * @return The number of indexed artworks.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<String, Integer> match(String word, int fieldMask) {
+        Map<String, Integer> matches = new HashMap<>();
+        for (Map.Entry<String, Map<String, Integer>> term
+                : postings.subMap(word, true, word + Character.MAX_VALUE, false).entrySet()) {
+            boolean exact = term.getKey().length() == word.length();
+            for (Map.Entry<String, Integer> posting : term.getValue().entrySet()) {
+                int fields = posting.getValue() & fieldMask;
+                if (fields == 0) {
+                    continue;
+                }
+                int score = 0;
+                for (Field field : Field.values()) {
+                    if ((fields & (1 << field.ordinal())) != 0) {
+                        score += field.weight;
+                    }
+                }
+                if (exact) {
+                    score *= 2;
+                }
+                matches.merge(posting.getKey(), score, Math::max);
+            }
+        }
+        return matches;
+    }
+
+    private static void index(Map<String, Document> documents,
+            TreeMap<String, Map<String, Integer>> postings, Document doc) {
+        String artworkId = doc.artworkId;
+        documents.put(artworkId, doc);
+        for (Map.Entry<String, Integer> term : doc.terms.entrySet()) {
+            postings.computeIfAbsent(term.getKey(), k -> new HashMap<>())
+                    .put(artworkId, term.getValue());
+        }
+    }
+
+    private static void unindex(Map<String, Document> documents,
+            TreeMap<String, Map<String, Integer>> postings, String artworkId) {
+        Document old = documents.remove(artworkId);
+        if (old == null) {
+            return;
+        }
+        for (String term : old.terms.keySet()) {
+            Map<String, Integer> posting = postings.get(term);
+            if (posting != null) {
+                posting.remove(artworkId);
+                if (posting.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private static Document toDocument(ResultSet rs) throws SQLException {
+        int status = rs.getInt("status");
+        if ((status & 0b111) != 0) {
+            // Removed, banned and private artworks are never shown in search
+            // results.
+            return null;
+        }
+        String firstName = rs.getString("first_name");
+        String lastName = rs.getString("last_name");
+        // Matches CONCAT(first_name, ' ', last_name) of the old searches.
+        String creator = (firstName == null ? "" : firstName) + " "
+                + (lastName == null ? "" : lastName);
+        Document doc = new Document(rs.getString("artwork_id"), creator,
+                rs.getString("cate_name"), rs.getString("name"),
+                rs.getString("description"), rs.getFloat("price"),
+                rs.getDate("released_date"), status);
+        addTerms(doc.terms, doc.name, Field.NAME);
+        addTerms(doc.terms, doc.category, Field.CATEGORY);
+        addTerms(doc.terms, creator, Field.CREATOR);
+        addTerms(doc.terms, doc.description, Field.DESCRIPTION);
+        Timestamp released = rs.getTimestamp("released_date");
+        doc.releasedAt = released == null ? 0L : released.getTime();
+        return doc;
+    }
+
+    private static void addTerms(Map<String, Integer> terms, String text, Field field) {
+        for (String word : tokenize(text)) {
+            terms.merge(word, 1 << field.ordinal(), (a, b) -> a | b);
+        }
+    }
+
+    /**
+     * Splits a text into lower case words without diacritics, so that a
+     * Vietnamese word typed with or without its accents matches the same
+     * artworks.
+     *
+     * @param text The text to split.
+     * @return The distinct words of the text, in order.
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        if (text == null || text.isBlank()) {
+            return words;
+        }
+        String folded = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD))
+                .replaceAll("")
+                .replace('\u0111', 'd')
+                .replace('\u0110', 'D')
+                .toLowerCase(Locale.ROOT);
+        for (String word : SEPARATORS.split(folded)) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * An indexed artwork, without its image, and the words it contains, each
+     * with the fields it appears in. The searchable fields are also kept in
+     * lower case, so that {@link #find(String, Field)} does not convert every
+     * artwork on every call.
+     */
+    private static final class Document {
+
+        private final String artworkId;
+        private final String creator;
+        private final String category;
+        private final String name;
+        private final String description;
+        private final float price;
+        private final Date releasedDate;
+        private final int status;
+        private final Map<String, Integer> terms = new HashMap<>();
+        private final String[] lowerCase = new String[Field.values().length];
+        private long releasedAt;
+
+        private Document(String artworkId, String creator, String category,
+                String name, String description, float price, Date releasedDate,
+                int status) {
+            this.artworkId = artworkId;
+            this.creator = creator;
+            this.category = category;
+            this.name = name;
+            this.description = description;
+            this.price = price;
+            this.releasedDate = releasedDate;
+            this.status = status;
+            lowerCase[Field.NAME.ordinal()] = toLowerCase(name);
+            lowerCase[Field.CATEGORY.ordinal()] = toLowerCase(category);
+            lowerCase[Field.CREATOR.ordinal()] = toLowerCase(creator);
+            lowerCase[Field.DESCRIPTION.ordinal()] = toLowerCase(description);
+        }
+
+        private static String toLowerCase(String value) {
+            return value == null ? null : value.toLowerCase(Locale.ROOT);
+        }
+
+        private String lowerCase(Field field) {
+            return lowerCase[field.ordinal()];
+        }
+
+        /**
+         * Creates the artwork of the search results, which holds the name of
+         * the creator and of the category in place of their IDs.
+         */
+        private ArtworkDTO toArtwork(String artworkImage) {
+            return new ArtworkDTO(artworkId, creator, category, name, description,
+                    artworkImage, price, releasedDate, status);
+        }
+    }
+
+    /**
+     * A document matched by a search, with its rank.
+     */
+    private static final class Hit {
+
+        private final Document doc;
+        private final int score;
+
+        private Hit(Document doc, int score) {
+            this.doc = doc;
+            this.score = score;
+        }
+    }
+}
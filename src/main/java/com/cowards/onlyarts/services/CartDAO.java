@@ -1,6 +1,7 @@
 package com.cowards.onlyarts.services;
 
 import com.cowards.onlyarts.core.DBContext;
+import com.cowards.onlyarts.core.Projection;
 import com.cowards.onlyarts.repositories.artwork.ArtworkDTO;
 import com.cowards.onlyarts.repositories.cart.CartERROR;
 import java.sql.Connection;
@@ -9,6 +10,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -72,6 +74,7 @@ public class CartDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return check;
     }
@@ -111,6 +114,40 @@ public class CartDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
+        }
+        return list;
+    }
+
+    /**
+     * Retrieves the chosen fields of the artworks in the cart of a user. Only
+     * the columns of the chosen fields are read from the database.
+     *
+     * @param userId the ID of the user.
+     * @param fields the fields to read.
+     * @return one map of field values per artwork in the cart.
+     */
+    public List<Map<String, Object>> getAll(String userId, Projection.Selection fields) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        List<Map<String, Object>> list = new ArrayList<>();
+        try {
+            conn = DB.getConnection();
+            stm = conn.prepareStatement("SELECT " + fields.columns("a")
+                    + " FROM [dbo].[Carts] c JOIN [dbo].[Artworks] a"
+                    + " ON c.[artwork_id] = a.[artwork_id] WHERE c.[user_id] = ?");
+            stm.setString(1, userId);
+            rs = stm.executeQuery();
+            while (rs.next()) {
+                list.add(fields.read(rs));
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on getAll(String user_id, Selection) method", ex);
+        } finally {
+            DB.closeResultSet(rs);
+            DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return list;
     }
@@ -141,6 +178,7 @@ public class CartDAO {
             logError("Exception found on insert() method", ex);
         } finally {
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return check;
     }
@@ -171,6 +209,7 @@ public class CartDAO {
             logError("Exception found on delete(String userId, String artworkId) method", ex);
         } finally {
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return check;
     }
@@ -199,6 +238,7 @@ public class CartDAO {
             logError("Exception found on delete(String userId) method", ex);
         } finally {
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return check;
     }
@@ -63,6 +63,7 @@ public class CategoryDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return categoryDTO;
     }
@@ -86,6 +87,7 @@ public class CategoryDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return categoryDTO;
     }
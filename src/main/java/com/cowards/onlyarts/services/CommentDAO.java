@@ -82,6 +82,7 @@ public class CommentDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return comments;
     }
@@ -114,6 +115,7 @@ public class CommentDAO {
             logError("Exception found on getComment() method", ex);
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return comment;
     }
@@ -141,6 +143,7 @@ public class CommentDAO {
             res = false;
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return res;
     }
@@ -165,6 +168,7 @@ public class CommentDAO {
             res = false;
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return res;
     }
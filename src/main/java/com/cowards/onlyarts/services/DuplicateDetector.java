@@ -0,0 +1,398 @@
+package com.cowards.onlyarts.services;
+
+import com.cowards.onlyarts.core.BkTree;
+import com.cowards.onlyarts.core.CodeGenerator;
+import com.cowards.onlyarts.core.DBContext;
+import com.cowards.onlyarts.core.PerceptualHash;
+import com.cowards.onlyarts.repositories.artwork.ArtworkDTO;
+import com.cowards.onlyarts.repositories.image.ImageContent;
+import com.cowards.onlyarts.repositories.image.ImageSize;
+import com.cowards.onlyarts.repositories.report.ReportDTO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@code DuplicateDetector} class flags newly published artworks whose
+ * image is a near-duplicate of an artwork of another creator, such as a
+ * rescaled or recompressed copy.
+ * <p>
+ * Every visible artwork is kept in an in-memory {@link BkTree} keyed by the
+ * {@link PerceptualHash} of its image, so a check only compares against the
+ * few artworks within {@code onlyarts.duplicates.radius} bits instead of
+ * scanning them all. Fingerprints are stored in {@code Images.phash} by
+ * {@link ThumbnailPipeline} on upload; images uploaded before that are
+ * fingerprinted here on first use.
+ * <p>
+ * Checks run on one daemon thread, and a match is filed as a report for the
+ * moderators through {@link ReportDAO}. The reporter is the user named by
+ * {@code onlyarts.duplicates.reporterId}; while it is not set, matches are
+ * only logged, never filed in another user's name.
+ */
+public final class DuplicateDetector {
+
+    private static final DBContext context = DBContext.getInstance();
+    private static DuplicateDetector instance;
+    private static final int RADIUS
+            = Integer.getInteger("onlyarts.duplicates.radius", 8);
+    private static final int QUEUE_SIZE
+            = Integer.getInteger("onlyarts.duplicates.queueSize", 200);
+    private static final String REPORTER_ID
+            = System.getProperty("onlyarts.duplicates.reporterId");
+    private static final int MAX_LISTED_MATCHES = 3;
+    private static final String GET_VISIBLE_ARTWORKS
+            = "SELECT [artwork_id], [owner_id], [artwork_image] FROM [dbo].[Artworks] "
+            + "WHERE ([status] & 3) = 0";
+    private static final String GET_FINGERPRINTS
+            = "SELECT [image_id], [phash] FROM [dbo].[Images] WHERE [phash] IS NOT NULL";
+    private final ImageDAO imageDao = ImageDAO.getInstance();
+    private final ReportDAO reportDao = ReportDAO.getInstance();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private BkTree<String> tree = new BkTree<>();
+    private Map<String, Fingerprinted> artworks = new HashMap<>();
+    private final Object loading = new Object();
+    private volatile boolean loaded;
+    private ThreadPoolExecutor worker;
+
+    private DuplicateDetector() {
+    }
+
+    private void logError(String message, Exception ex) {
+        Logger.getLogger(DuplicateDetector.class.getName())
+                .log(Level.SEVERE, message, ex);
+    }
+
+    /**
+     * Retrieves the singleton instance of {@code DuplicateDetector}.
+     *
+     * @return The singleton instance of {@code DuplicateDetector}.
+     */
+    public static synchronized DuplicateDetector getInstance() {
+        if (instance == null) {
+            instance = new DuplicateDetector();
+        }
+        return instance;
+    }
+
+    /**
+     * Queues the check of a newly published or updated artwork. An artwork
+     * whose image did not change is not checked again. When the queue is
+     * full the check is skipped.
+     *
+     * @param artwork The artwork, as it was stored.
+     * @return {@code true} if the check was queued.
+     */
+    public boolean check(ArtworkDTO artwork) {
+        try {
+            worker().execute(() -> {
+                try {
+                    checkNow(artwork);
+                } catch (RuntimeException ex) {
+                    logError("Exception found on checking artwork "
+                            + artwork.getArtworkId() + " for duplicates", ex);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Drops an artwork that was deleted or hidden, so that it is no longer
+     * matched against.
+     *
+     * @param artworkId The ID of the artwork.
+     */
+    public void remove(String artworkId) {
+        lock.writeLock().lock();
+        try {
+            artworks.remove(artworkId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the visible artworks whose image is within the configured radius
+     * of a fingerprint, nearest first.
+     *
+     * @param fingerprint The fingerprint to look for.
+     * @return The matches; their values are artwork IDs.
+     */
+    public List<BkTree.Match<String>> findSimilar(long fingerprint) {
+        ensureLoaded();
+        List<BkTree.Match<String>> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (BkTree.Match<String> match : tree.search(fingerprint, RADIUS)) {
+                Fingerprinted current = artworks.get(match.getValue());
+                // The tree cannot remove entries, so removed or re-imaged
+                // artworks are told apart by the map.
+                if (current != null && current.fingerprint == match.getHash()) {
+                    matches.add(match);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        matches.sort(Comparator.comparingInt(BkTree.Match::getDistance));
+        return matches;
+    }
+
+    private void checkNow(ArtworkDTO artwork) {
+        String imageId = imageIdOf(artwork.getArtworkImage());
+        Long fingerprint = fingerprintOf(imageId);
+        if (fingerprint == null) {
+            return;
+        }
+        ensureLoaded();
+        if (!isChanged(artwork.getArtworkId(), fingerprint)) {
+            return;
+        }
+        List<BkTree.Match<String>> matches = new ArrayList<>();
+        for (BkTree.Match<String> match : findSimilar(fingerprint)) {
+            String ownerId = ownerOf(match.getValue());
+            if (!match.getValue().equals(artwork.getArtworkId())
+                    && ownerId != null && !ownerId.equals(artwork.getOwnerId())) {
+                matches.add(match);
+            }
+        }
+        if (!matches.isEmpty()) {
+            report(artwork, matches);
+        }
+        if ((artwork.getStatus() & 3) == 0) {
+            add(artwork.getArtworkId(), artwork.getOwnerId(), fingerprint);
+        }
+    }
+
+    private void report(ArtworkDTO artwork, List<BkTree.Match<String>> matches) {
+        StringBuilder sb = new StringBuilder("Automatic check: near-duplicate of ");
+        for (int i = 0; i < matches.size() && i < MAX_LISTED_MATCHES; i++) {
+            BkTree.Match<String> match = matches.get(i);
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append("artwork ").append(match.getValue())
+                    .append(" (distance ").append(match.getDistance()).append("/64)");
+        }
+        if (REPORTER_ID == null || REPORTER_ID.isBlank()) {
+            Logger.getLogger(DuplicateDetector.class.getName()).log(Level.WARNING,
+                    "Artwork {0} was not reported because onlyarts.duplicates.reporterId "
+                    + "is not set. {1}", new Object[]{artwork.getArtworkId(), sb});
+            return;
+        }
+        ReportDTO report = new ReportDTO(CodeGenerator.generateUUID(20),
+                artwork.getArtworkId(), REPORTER_ID, sb.toString(), null, 0);
+        if (!reportDao.reportArtwork(report)) {
+            Logger.getLogger(DuplicateDetector.class.getName()).log(Level.WARNING,
+                    "Could not report artwork {0} as a near-duplicate",
+                    artwork.getArtworkId());
+        }
+    }
+
+    /**
+     * Reads the stored fingerprint of an image, or computes and stores it if
+     * the image was uploaded before fingerprints were kept.
+     */
+    private Long fingerprintOf(String imageId) {
+        if (imageId == null) {
+            return null;
+        }
+        Long fingerprint = imageDao.getFingerprint(imageId);
+        if (fingerprint != null) {
+            return fingerprint;
+        }
+        ImageContent content = imageDao.getContent(imageId);
+        if (content == null || !content.getContentType().startsWith("image/")) {
+            return null;
+        }
+        try {
+            BufferedImage image = ThumbnailPipeline.decode(content,
+                    ImageSize.THUMBNAIL.getMaxEdge());
+            if (image == null) {
+                return null;
+            }
+            fingerprint = PerceptualHash.of(image);
+            imageDao.setFingerprint(imageId, fingerprint);
+            return fingerprint;
+        } catch (IOException ex) {
+            Logger.getLogger(DuplicateDetector.class.getName()).log(Level.WARNING,
+                    "Exception found on fingerprinting image " + imageId, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Extracts the image ID from the {@code artwork_image} column, which
+     * holds either the ID itself or a URL ending with it.
+     */
+    private static String imageIdOf(String artworkImage) {
+        if (artworkImage == null || artworkImage.isEmpty()) {
+            return null;
+        }
+        String path = artworkImage;
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        if (path.endsWith("/raw")) {
+            path = path.substring(0, path.length() - "/raw".length());
+        }
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Tells whether an artwork is new or now has another image, so that an
+     * update that keeps the image does not file the same report again.
+     */
+    private boolean isChanged(String artworkId, long fingerprint) {
+        lock.readLock().lock();
+        try {
+            Fingerprinted current = artworks.get(artworkId);
+            return current == null || current.fingerprint != fingerprint;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private String ownerOf(String artworkId) {
+        lock.readLock().lock();
+        try {
+            Fingerprinted current = artworks.get(artworkId);
+            return current == null ? null : current.ownerId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(String artworkId, String ownerId, long fingerprint) {
+        lock.writeLock().lock();
+        try {
+            Fingerprinted previous = artworks.put(artworkId,
+                    new Fingerprinted(ownerId, fingerprint));
+            if (previous == null || previous.fingerprint != fingerprint) {
+                tree.add(fingerprint, artworkId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads the fingerprints of every visible artwork the first time the
+     * tree is needed. Artworks and fingerprints are read with one query each
+     * and matched up here, since {@code artwork_image} may hold a URL rather
+     * than the bare image ID.
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (loading) {
+            if (loaded) {
+                return;
+            }
+            BkTree<String> loadedTree = new BkTree<>();
+            Map<String, Fingerprinted> loadedArtworks = new HashMap<>();
+            Map<String, Long> fingerprints = new HashMap<>();
+            Connection conn = null;
+            PreparedStatement stm = null;
+            ResultSet rs = null;
+            try {
+                conn = context.getConnection();
+                stm = conn.prepareStatement(GET_FINGERPRINTS);
+                rs = stm.executeQuery();
+                while (rs.next()) {
+                    fingerprints.put(rs.getString("image_id"), rs.getLong("phash"));
+                }
+                context.closeResultSet(rs);
+                context.closeStatement(stm);
+                stm = conn.prepareStatement(GET_VISIBLE_ARTWORKS);
+                rs = stm.executeQuery();
+                while (rs.next()) {
+                    String artworkId = rs.getString("artwork_id");
+                    Long fingerprint = fingerprints.get(imageIdOf(rs.getString("artwork_image")));
+                    if (fingerprint != null) {
+                        loadedArtworks.put(artworkId,
+                                new Fingerprinted(rs.getString("owner_id"), fingerprint));
+                        loadedTree.add(fingerprint, artworkId);
+                    }
+                }
+            } catch (SQLException ex) {
+                logError("Exception found on loading image fingerprints", ex);
+                return;
+            } finally {
+                context.closeResultSet(rs);
+                context.closeStatement(stm);
+                context.closeConnection(conn);
+            }
+            lock.writeLock().lock();
+            try {
+                // Keep artworks added while the queries ran.
+                for (Map.Entry<String, Fingerprinted> e : artworks.entrySet()) {
+                    if (loadedArtworks.putIfAbsent(e.getKey(), e.getValue()) == null) {
+                        loadedTree.add(e.getValue().fingerprint, e.getKey());
+                    }
+                }
+                tree = loadedTree;
+                artworks = loadedArtworks;
+                loaded = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private synchronized ThreadPoolExecutor worker() {
+        if (worker == null) {
+            worker = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(QUEUE_SIZE), r -> {
+                        Thread t = new Thread(r, "onlyarts-duplicates");
+                        t.setDaemon(true);
+                        return t;
+                    });
+        }
+        return worker;
+    }
+
+    /**
+     * Stops the background thread that checks artworks.
+     */
+    public synchronized void shutdown() {
+        if (worker != null) {
+            worker.shutdownNow();
+            worker = null;
+        }
+    }
+
+    /**
+     * The owner and fingerprint of a visible artwork.
+     */
+    private static final class Fingerprinted {
+
+        private final String ownerId;
+        private final long fingerprint;
+
+        private Fingerprinted(String ownerId, long fingerprint) {
+            this.ownerId = ownerId;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
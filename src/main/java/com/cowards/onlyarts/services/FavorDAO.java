@@ -1,6 +1,7 @@
 package com.cowards.onlyarts.services;
 
 import com.cowards.onlyarts.core.DBContext;
+import com.cowards.onlyarts.core.Projection;
 import com.cowards.onlyarts.repositories.artwork.ArtworkDTO;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -8,6 +9,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -74,6 +76,7 @@ public class FavorDAO {
             res = false;
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return res;
     }
@@ -101,6 +104,7 @@ public class FavorDAO {
             res = false;
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return res;
     }
@@ -128,6 +132,7 @@ public class FavorDAO {
             res = false;
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return res;
     }
@@ -168,7 +173,41 @@ public class FavorDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return artworks;
     }
+
+    /**
+     * Retrieves the chosen fields of the favorite artworks of a user. Only the
+     * columns of the chosen fields are read from the database.
+     *
+     * @param userId the ID of the user.
+     * @param fields the fields to read.
+     * @return one map of field values per favorite artwork.
+     */
+    public List<Map<String, Object>> getFavoriteArtworks(String userId, Projection.Selection fields) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        List<Map<String, Object>> list = new ArrayList<>();
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement("SELECT " + fields.columns("a")
+                    + " FROM [dbo].[Artworks] a JOIN [dbo].[Users_favor] f"
+                    + " ON a.[artwork_id] = f.[artwork_id] WHERE f.[user_id] = ?");
+            stm.setString(1, userId);
+            rs = stm.executeQuery();
+            while (rs.next()) {
+                list.add(fields.read(rs));
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on getFavoriteArtworks(Selection) method", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return list;
+    }
 }
@@ -1,44 +1,94 @@
 package com.cowards.onlyarts.services;
 
 import com.cowards.onlyarts.core.DBContext;
+import com.cowards.onlyarts.core.PageCursor;
+import com.cowards.onlyarts.core.Projection;
+import com.cowards.onlyarts.core.TtlCache;
+import com.cowards.onlyarts.repositories.follow.FollowCountDTO;
+import com.cowards.onlyarts.repositories.follow.FollowERROR;
+import com.cowards.onlyarts.repositories.page.PageDTO;
 import com.cowards.onlyarts.repositories.user.UserDTO;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This class provides data access methods for managing user following and
  * follower relationships in the database.
+ * <p>
+ * The number of followers and followed users of each user is kept in the
+ * {@code FollowCounts} table, which {@link #addFollow} and
+ * {@link #unfollowUser} update in the same transaction as the follow itself,
+ * so counting never reads the follow lists.
  */
 public class FollowDAO {
 
     private static final DBContext context = DBContext.getInstance();
     private static FollowDAO instance;
+    private static final HomeFeed feed = HomeFeed.getInstance();
+    private static final int COUNTS_MAX_SIZE
+            = Integer.getInteger("onlyarts.cache.followCounts.maxSize", 10_000);
+    private static final long COUNTS_TTL_MILLIS
+            = Long.getLong("onlyarts.cache.followCounts.ttlMillis", 300_000L);
+    private final TtlCache<String, FollowCountDTO> counts
+            = new TtlCache<>(COUNTS_MAX_SIZE, COUNTS_TTL_MILLIS);
+    /**
+     * Adds the deltas in the parameters 1 to 4 to the counters of the
+     * follower and the followed user. Grouped, so that a user following
+     * themselves is one source row.
+     */
+    private static final String UPDATE_COUNTS
+            = "MERGE [dbo].[FollowCounts] WITH (HOLDLOCK) c "
+            + "USING (SELECT [user_id], SUM([following]) [following], SUM([followers]) [followers] "
+            + "FROM (VALUES (?, ?, 0), (?, 0, ?)) v([user_id],[following],[followers]) "
+            + "GROUP BY [user_id]) d ON c.[user_id] = d.[user_id] "
+            + "WHEN MATCHED THEN UPDATE SET c.[following] = c.[following] + d.[following], "
+            + "c.[followers] = c.[followers] + d.[followers] "
+            + "WHEN NOT MATCHED THEN INSERT ([user_id],[following],[followers]) "
+            + "VALUES (d.[user_id], d.[following], d.[followers]);";
     private static final String ADD_FOLLOW
-            = "INSERT INTO [dbo].[Followings]"
-            + "([user_id],[followed_user_id]) VALUES (?,?)";
+            = "SET NOCOUNT ON; SET XACT_ABORT ON; DECLARE @changed INT; "
+            + "BEGIN TRANSACTION; "
+            + "INSERT INTO [dbo].[Followings]([user_id],[followed_user_id]) "
+            + "SELECT ?, ? WHERE NOT EXISTS (SELECT 1 FROM [dbo].[Followings] "
+            + "WITH (UPDLOCK, HOLDLOCK) WHERE [user_id] = ? AND [followed_user_id] = ?); "
+            + "SET @changed = @@ROWCOUNT; "
+            + "IF @changed > 0 " + UPDATE_COUNTS + " "
+            + "COMMIT TRANSACTION; "
+            + "SELECT @changed AS [changed]";
     private static final String UNFOLLOW
-            = "DELETE FROM [dbo].[Followings]"
-            + "WHERE [user_id] = ? AND [followed_user_id] = ?";
+            = "SET NOCOUNT ON; SET XACT_ABORT ON; DECLARE @changed INT; "
+            + "BEGIN TRANSACTION; "
+            + "DELETE FROM [dbo].[Followings] "
+            + "WHERE [user_id] = ? AND [followed_user_id] = ?; "
+            + "SET @changed = @@ROWCOUNT; "
+            + "IF @changed > 0 " + UPDATE_COUNTS + " "
+            + "COMMIT TRANSACTION; "
+            + "SELECT @changed AS [changed]";
+    private static final String GET_COUNTS
+            = "SELECT [followers], [following] FROM [dbo].[FollowCounts] "
+            + "WHERE [user_id] = ?";
     private static final String CHECK_FOLLOW
             = "SELECT * FROM [dbo].[Followings]"
             + "WHERE [user_id] = ? AND [followed_user_id] = ?";
     private static final String GET_FOLLOWING = "SELECT tb2.[user_id],[role_id],"
             + "[first_name],[last_name],[avatar],[phone],[email],[address],"
-            + "[join_date],[bio],[status],[password] "
+            + "[join_date],[bio],[status] "
             + "FROM [OnlyArts].[dbo].[Followings] tb1 "
             + "RIGHT JOIN [OnlyArts].[dbo].[Users] tb2 "
             + "ON tb1.[followed_user_id]  = tb2.[user_id] "
             + "WHERE tb1.[user_id] = ?";
     private static final String GET_FOLLOWER = "SELECT tb2.[user_id],[role_id],"
             + "[first_name],[last_name],[avatar],[phone],[email],[address],"
-            + "[join_date],[bio],[status],[password] "
+            + "[join_date],[bio],[status] "
             + "FROM [OnlyArts].[dbo].[Followings] tb1 "
             + "RIGHT JOIN [OnlyArts].[dbo].[Users] tb2 "
             + "ON tb1.[user_id]  = tb2.[user_id] "
@@ -81,6 +131,7 @@ public class FollowDAO {
             check = false;
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return check;
     }
@@ -96,18 +147,29 @@ public class FollowDAO {
     public boolean addFollow(String userId, String userFollowedId) {
         Connection conn = null;
         PreparedStatement stm = null;
+        ResultSet rs = null;
         boolean check = false;
         try {
             conn = context.getConnection();
             stm = conn.prepareStatement(ADD_FOLLOW);
             stm.setString(1, userId);
             stm.setString(2, userFollowedId);
-            check = stm.executeUpdate() > 0;
+            stm.setString(3, userId);
+            stm.setString(4, userFollowedId);
+            setCountDeltas(stm, 5, userId, userFollowedId, 1);
+            rs = stm.executeQuery();
+            check = rs.next() && rs.getInt("changed") > 0;
         } catch (SQLException ex) {
             logError("Exception found on addfollow() method", ex);
             check = false;
         } finally {
+            context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        if (check) {
+            countsChanged(userId, userFollowedId);
+            context.afterCommit(() -> feed.followed(userId, userFollowedId));
         }
         return check;
     }
@@ -123,22 +185,93 @@ public class FollowDAO {
     public boolean unfollowUser(String userId, String userFollowedId) {
         Connection conn = null;
         PreparedStatement stm = null;
+        ResultSet rs = null;
         boolean check = false;
         try {
             conn = context.getConnection();
             stm = conn.prepareStatement(UNFOLLOW);
             stm.setString(1, userId);
             stm.setString(2, userFollowedId);
-            check = stm.executeUpdate() > 0;
+            setCountDeltas(stm, 3, userId, userFollowedId, -1);
+            rs = stm.executeQuery();
+            check = rs.next() && rs.getInt("changed") > 0;
         } catch (SQLException ex) {
-            logError("Exception found on addfollow() method", ex);
+            logError("Exception found on unfollowUser() method", ex);
             check = false;
         } finally {
+            context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        if (check) {
+            countsChanged(userId, userFollowedId);
+            context.afterCommit(() -> feed.unfollowed(userId, userFollowedId));
         }
         return check;
     }
 
+    private static void setCountDeltas(PreparedStatement stm, int index,
+            String userId, String userFollowedId, int delta) throws SQLException {
+        stm.setString(index, userId);
+        stm.setInt(index + 1, delta);
+        stm.setString(index + 2, userFollowedId);
+        stm.setInt(index + 3, delta);
+    }
+
+    /**
+     * Drops the cached counts of both users, and again once the current
+     * transaction has committed, so that counts read before the commit are
+     * not kept.
+     */
+    private void countsChanged(String userId, String userFollowedId) {
+        Runnable invalidate = () -> {
+            counts.invalidate(userId);
+            counts.invalidate(userFollowedId);
+        };
+        invalidate.run();
+        context.afterCommit(invalidate);
+    }
+
+    /**
+     * Retrieves how many users follow a user and how many users that user
+     * follows. The counts are read from the counter table, or from the cache
+     * when they were read recently.
+     *
+     * @param userId the ID of the user.
+     * @return the counts; zero for a user without any follows.
+     */
+    public FollowCountDTO getCounts(String userId) {
+        FollowCountDTO cached = counts.get(userId);
+        if (cached != null) {
+            return new FollowCountDTO(userId, cached.getFollowers(), cached.getFollowing());
+        }
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        FollowCountDTO found = new FollowCountDTO(userId, 0, 0);
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement(GET_COUNTS);
+            stm.setString(1, userId);
+            rs = stm.executeQuery();
+            if (rs.next()) {
+                found.setFollowers(rs.getInt("followers"));
+                found.setFollowing(rs.getInt("following"));
+            }
+            if (!context.inTransaction()) {
+                counts.put(userId, new FollowCountDTO(userId,
+                        found.getFollowers(), found.getFollowing()));
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on getCounts() method", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return found;
+    }
+
     /**
      * Retrieves a list of users that the specified user is following.
      *
@@ -178,6 +311,7 @@ public class FollowDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
 
         return followingList;
@@ -222,7 +356,181 @@ public class FollowDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return followerList;
     }
+
+    /**
+     * Retrieves the chosen fields of the users that a user is following. Only
+     * the columns of the chosen fields are read from the database.
+     *
+     * @param userId the ID of the user whose following list is to be retrieved.
+     * @param fields the fields to read.
+     * @return one map of field values per followed user.
+     */
+    public List<Map<String, Object>> getFollowing(String userId, Projection.Selection fields) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        List<Map<String, Object>> list = new ArrayList<>();
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement("SELECT " + fields.columns("u")
+                    + " FROM [dbo].[Followings] f JOIN [dbo].[Users] u"
+                    + " ON f.[followed_user_id] = u.[user_id] WHERE f.[user_id] = ?");
+            stm.setString(1, userId);
+            rs = stm.executeQuery();
+            while (rs.next()) {
+                list.add(fields.read(rs));
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on getFollowing(Selection) method", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return list;
+    }
+
+    /**
+     * Retrieves the chosen fields of the users who follow a user. Only the
+     * columns of the chosen fields are read from the database.
+     *
+     * @param userId the ID of the user.
+     * @param fields the fields to read.
+     * @return one map of field values per follower.
+     */
+    public List<Map<String, Object>> getFollower(String userId, Projection.Selection fields) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        List<Map<String, Object>> list = new ArrayList<>();
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement("SELECT " + fields.columns("u")
+                    + " FROM [dbo].[Followings] f JOIN [dbo].[Users] u"
+                    + " ON f.[user_id] = u.[user_id] WHERE f.[followed_user_id] = ?");
+            stm.setString(1, userId);
+            rs = stm.executeQuery();
+            while (rs.next()) {
+                list.add(fields.read(rs));
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on getFollower(Selection) method", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return list;
+    }
+
+    /**
+     * Retrieves one page of the users that a user is following, most recently
+     * followed first.
+     *
+     * @param userId the ID of the user whose following list is to be retrieved.
+     * @param fields the fields to read.
+     * @param cursor the cursor returned with the previous page, or null for
+     * the first page.
+     * @param pageSize the maximum number of users on the page.
+     * @return the page of users, each with the time they were followed as
+     * {@code followedAt}, and the cursor of the next page.
+     * @throws FollowERROR if the cursor is malformed.
+     */
+    public PageDTO<Map<String, Object>> getFollowingPage(String userId,
+            Projection.Selection fields, String cursor, int pageSize) throws FollowERROR {
+        return getPage("followed_user_id", "user_id", userId, fields, cursor, pageSize);
+    }
+
+    /**
+     * Retrieves one page of the users who follow a user, most recent
+     * followers first.
+     *
+     * @param userId the ID of the user.
+     * @param fields the fields to read.
+     * @param cursor the cursor returned with the previous page, or null for
+     * the first page.
+     * @param pageSize the maximum number of users on the page.
+     * @return the page of users, each with the time they followed as
+     * {@code followedAt}, and the cursor of the next page.
+     * @throws FollowERROR if the cursor is malformed.
+     */
+    public PageDTO<Map<String, Object>> getFollowerPage(String userId,
+            Projection.Selection fields, String cursor, int pageSize) throws FollowERROR {
+        return getPage("user_id", "followed_user_id", userId, fields, cursor, pageSize);
+    }
+
+    /**
+     * Reads one page of a follow list. The page is located by the follow time
+     * and user ID of the last user of the previous page, so a deep page costs
+     * the same as the first one.
+     *
+     * @param listed the column of {@code Followings} holding the listed users.
+     * @param owner the column of {@code Followings} holding the user whose
+     * list it is.
+     */
+    private PageDTO<Map<String, Object>> getPage(String listed, String owner, String userId,
+            Projection.Selection fields, String cursor, int pageSize) throws FollowERROR {
+        Timestamp followedAfter = null;
+        String userAfter = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                String[] key = PageCursor.decode(cursor, 2);
+                followedAfter = new Timestamp(Long.parseLong(key[0]));
+                userAfter = key[1];
+            } catch (IllegalArgumentException ex) {
+                throw new FollowERROR("Invalid page cursor", ex);
+            }
+        }
+        StringBuilder sql = new StringBuilder("SELECT TOP (?) ")
+                .append(fields.columns("u"))
+                .append(", f.[followed_at] AS [followedAt]")
+                .append(" FROM [dbo].[Followings] f JOIN [dbo].[Users] u")
+                .append(" ON f.[").append(listed).append("] = u.[user_id]")
+                .append(" WHERE f.[").append(owner).append("] = ?");
+        if (followedAfter != null) {
+            sql.append(" AND (f.[followed_at] < ?")
+                    .append(" OR (f.[followed_at] = ? AND u.[user_id] < ?))");
+        }
+        sql.append(" ORDER BY f.[followed_at] DESC, u.[user_id] DESC");
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        List<Map<String, Object>> items = new ArrayList<>();
+        String nextCursor = null;
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement(sql.toString());
+            stm.setInt(1, pageSize + 1);
+            stm.setString(2, userId);
+            if (followedAfter != null) {
+                stm.setTimestamp(3, followedAfter);
+                stm.setTimestamp(4, followedAfter);
+                stm.setString(5, userAfter);
+            }
+            rs = stm.executeQuery();
+            while (rs.next()) {
+                if (items.size() == pageSize) {
+                    Map<String, Object> last = items.get(pageSize - 1);
+                    nextCursor = PageCursor.encode(
+                            Long.toString(((Timestamp) last.get("followedAt")).getTime()),
+                            (String) last.get("userId"));
+                    break;
+                }
+                Map<String, Object> row = fields.read(rs);
+                row.put("followedAt", rs.getTimestamp("followedAt"));
+                items.add(row);
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on getPage() method", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return new PageDTO<>(items, nextCursor);
+    }
 }
@@ -0,0 +1,501 @@
+package com.cowards.onlyarts.services;
+
+import com.cowards.onlyarts.core.DBContext;
+import com.cowards.onlyarts.core.PageCursor;
+import com.cowards.onlyarts.core.TimelineBuffer;
+import com.cowards.onlyarts.repositories.artwork.ArtworkDTO;
+import com.cowards.onlyarts.repositories.artwork.ArtworkERROR;
+import com.cowards.onlyarts.repositories.page.PageDTO;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@code HomeFeed} class builds the home feed of a user: the newest
+ * artworks of the creators the user follows.
+ * <p>
+ * Every user has a timeline of at most {@code onlyarts.feed.timelineSize}
+ * artworks in the {@code Timelines} table. When an artwork is published it is
+ * written into the timeline of every follower with one statement (fan-out on
+ * write), so reading a feed never joins the follow graph. Creators with more
+ * than {@code onlyarts.feed.fanoutLimit} followers are not fanned out;
+ * instead their newest artworks are merged into the feeds of their followers
+ * when read (fan-out on read).
+ * <p>
+ * The timelines of recent readers and of those large creators are kept in
+ * memory as {@link TimelineBuffer}s, at most
+ * {@code onlyarts.feed.maxTimelines} of them, so a page costs its own size
+ * plus one batched artwork lookup. Fan-out runs on one daemon thread.
+ */
+public final class HomeFeed {
+
+    private static final DBContext context = DBContext.getInstance();
+    private static HomeFeed instance;
+    private static final int TIMELINE_SIZE
+            = Integer.getInteger("onlyarts.feed.timelineSize", 500);
+    private static final int MAX_TIMELINES
+            = Integer.getInteger("onlyarts.feed.maxTimelines", 10_000);
+    private static final int FANOUT_LIMIT
+            = Integer.getInteger("onlyarts.feed.fanoutLimit", 10_000);
+    private static final long REFRESH_MILLIS
+            = Long.getLong("onlyarts.feed.refreshMillis", 300_000L);
+    private static final int QUEUE_SIZE
+            = Integer.getInteger("onlyarts.feed.queueSize", 1_000);
+    // [Artworks].[sort_date] is the release date, or 1753-01-01 when there
+    // is none, so artworks without one sort last as in ArtworkDAO.getPage.
+    private static final String FAN_OUT
+            = "INSERT INTO [dbo].[Timelines]"
+            + "([user_id],[artwork_id],[owner_id],[released_date]) "
+            + "OUTPUT INSERTED.[user_id], INSERTED.[released_date] "
+            + "SELECT f.[user_id], a.[artwork_id], a.[owner_id], a.[sort_date] "
+            + "FROM [dbo].[Artworks] a "
+            + "JOIN [dbo].[Followings] f ON f.[followed_user_id] = a.[owner_id] "
+            + "WHERE a.[artwork_id] = ? AND NOT EXISTS (SELECT 1 FROM [dbo].[Timelines] t "
+            + "WHERE t.[user_id] = f.[user_id] AND t.[artwork_id] = a.[artwork_id])";
+    private static final String BACKFILL
+            = "INSERT INTO [dbo].[Timelines]"
+            + "([user_id],[artwork_id],[owner_id],[released_date]) "
+            + "SELECT TOP (?) ?, a.[artwork_id], a.[owner_id], a.[sort_date] "
+            + "FROM [dbo].[Artworks] a "
+            + "WHERE a.[owner_id] = ? AND (a.[status] & 3) = 0 "
+            + "AND NOT EXISTS (SELECT 1 FROM [dbo].[Timelines] t "
+            + "WHERE t.[user_id] = ? AND t.[artwork_id] = a.[artwork_id]) "
+            + "ORDER BY a.[sort_date] DESC, a.[artwork_id] DESC";
+    private static final String PURGE
+            = "DELETE FROM [dbo].[Timelines] WHERE [user_id] = ? AND [owner_id] = ?";
+    private static final String GET_TIMELINE
+            = "SELECT TOP (?) [artwork_id], [released_date] AS [sort_date] "
+            + "FROM [dbo].[Timelines] "
+            + "WHERE [user_id] = ? ORDER BY [released_date] DESC, [artwork_id] DESC";
+    private static final String TRIM_TIMELINE
+            = "DELETE FROM [dbo].[Timelines] WHERE [user_id] = ? AND [artwork_id] IN "
+            + "(SELECT [artwork_id] FROM [dbo].[Timelines] WHERE [user_id] = ? "
+            + "ORDER BY [released_date] DESC, [artwork_id] DESC OFFSET ? ROWS)";
+    private static final String GET_CREATOR_TIMELINE
+            = "SELECT TOP (?) [artwork_id], [sort_date] FROM [dbo].[Artworks] "
+            + "WHERE [owner_id] = ? AND ([status] & 3) = 0 "
+            + "ORDER BY [sort_date] DESC, [artwork_id] DESC";
+    private static final String GET_LARGE_CREATORS
+            = "SELECT f.[followed_user_id] FROM [dbo].[Followings] f "
+            + "JOIN [dbo].[FollowCounts] c ON c.[user_id] = f.[followed_user_id] "
+            + "WHERE f.[user_id] = ? AND c.[followers] > ?";
+    private final Map<String, Timeline> timelines
+            = new LinkedHashMap<String, Timeline>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Timeline> eldest) {
+            return size() > MAX_TIMELINES;
+        }
+    };
+    private ThreadPoolExecutor worker;
+
+    private HomeFeed() {
+    }
+
+    private void logError(String message, Exception ex) {
+        Logger.getLogger(HomeFeed.class.getName())
+                .log(Level.SEVERE, message, ex);
+    }
+
+    /**
+     * Retrieves the singleton instance of {@code HomeFeed}.
+     *
+     * @return The singleton instance of {@code HomeFeed}.
+     */
+    public static synchronized HomeFeed getInstance() {
+        if (instance == null) {
+            instance = new HomeFeed();
+        }
+        return instance;
+    }
+
+    /**
+     * Retrieves one page of the home feed of a user, newest first. Artworks
+     * that have been hidden or deleted since they were fanned out are left
+     * out, so a page may hold fewer artworks than asked for.
+     *
+     * @param userId The ID of the reader.
+     * @param cursor The cursor returned with the previous page, or
+     * {@code null} for the first page.
+     * @param pageSize The maximum number of artworks on the page.
+     * @return The page of artworks and the cursor of the next page.
+     * @throws ArtworkERROR if the cursor is malformed.
+     */
+    public PageDTO<ArtworkDTO> getPage(String userId, String cursor, int pageSize)
+            throws ArtworkERROR {
+        long timeAfter = Long.MAX_VALUE;
+        String idAfter = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                String[] key = PageCursor.decode(cursor, 2);
+                timeAfter = Long.parseLong(key[0]);
+                idAfter = key[1];
+            } catch (IllegalArgumentException ex) {
+                throw new ArtworkERROR("Invalid page cursor", ex);
+            }
+        }
+        Timeline reader = readerTimeline(userId);
+        List<TimelineBuffer.Entry> merged = new ArrayList<>(
+                reader.buffer.after(timeAfter, idAfter, pageSize + 1));
+        for (String creatorId : reader.largeCreators) {
+            merged.addAll(creatorTimeline(creatorId).buffer
+                    .after(timeAfter, idAfter, pageSize + 1));
+        }
+        Collections.sort(merged);
+        String nextCursor = null;
+        if (merged.size() > pageSize) {
+            merged = merged.subList(0, pageSize);
+            TimelineBuffer.Entry last = merged.get(pageSize - 1);
+            nextCursor = PageCursor.encode(Long.toString(last.getTime()), last.getId());
+        }
+        List<String> artworkIds = new ArrayList<>(merged.size());
+        for (TimelineBuffer.Entry entry : merged) {
+            artworkIds.add(entry.getId());
+        }
+        List<ArtworkDTO> artworks = new ArrayList<>(merged.size());
+        // Looked up here, as ArtworkDAO itself holds this feed.
+        for (ArtworkDTO artwork : ArtworkDAO.getInstance().getArtworks(artworkIds)) {
+            if ((artwork.getStatus() & 3) == 0) {
+                artworks.add(artwork);
+            }
+        }
+        return new PageDTO<>(artworks, nextCursor);
+    }
+
+    /**
+     * Queues the fan-out of a newly published artwork to the timelines of
+     * the followers of its creator. Must be called once the artwork is
+     * committed.
+     *
+     * @param artwork The artwork, as it was stored.
+     */
+    public void published(ArtworkDTO artwork) {
+        if ((artwork.getStatus() & 3) != 0) {
+            return;
+        }
+        submit(() -> {
+            String ownerId = artwork.getOwnerId();
+            if (isLarge(ownerId)) {
+                // Read by the followers straight from the creator timeline,
+                // which is reloaded on its next use.
+                drop(creatorKey(ownerId));
+            } else {
+                fanOut(artwork.getArtworkId());
+            }
+        });
+    }
+
+    /**
+     * Queues the update of the timeline of a user who started following a
+     * creator: the newest artworks of the creator are copied into it, unless
+     * the creator is read on fan-out.
+     *
+     * @param userId The ID of the follower.
+     * @param creatorId The ID of the followed user.
+     */
+    public void followed(String userId, String creatorId) {
+        submit(() -> {
+            if (!isLarge(creatorId)) {
+                update(BACKFILL, stm -> {
+                    stm.setInt(1, TIMELINE_SIZE);
+                    stm.setString(2, userId);
+                    stm.setString(3, creatorId);
+                    stm.setString(4, userId);
+                });
+                trim(Collections.singletonList(userId));
+            }
+            drop(readerKey(userId));
+        });
+    }
+
+    /**
+     * Queues the removal of the artworks of a creator from the timeline of a
+     * user who stopped following them.
+     *
+     * @param userId The ID of the former follower.
+     * @param creatorId The ID of the unfollowed user.
+     */
+    public void unfollowed(String userId, String creatorId) {
+        submit(() -> {
+            update(PURGE, stm -> {
+                stm.setString(1, userId);
+                stm.setString(2, creatorId);
+            });
+            drop(readerKey(userId));
+        });
+    }
+
+    private boolean isLarge(String creatorId) {
+        return FollowDAO.getInstance().getCounts(creatorId).getFollowers() > FANOUT_LIMIT;
+    }
+
+    /**
+     * Writes an artwork into the timeline of every follower of its creator
+     * with one statement, and into the in-memory timelines of the followers
+     * that have one. The timelines that grew are then trimmed, so followers
+     * who never read their feed do not collect rows forever.
+     */
+    private void fanOut(String artworkId) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        List<String> followers = new ArrayList<>();
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement(FAN_OUT);
+            stm.setString(1, artworkId);
+            rs = stm.executeQuery();
+            while (rs.next()) {
+                String userId = rs.getString("user_id");
+                followers.add(userId);
+                Timeline reader = loaded(readerKey(userId));
+                if (reader != null) {
+                    reader.buffer.add(rs.getTimestamp("released_date").getTime(), artworkId);
+                }
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on fanning out artwork " + artworkId, ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        trim(followers);
+    }
+
+    /**
+     * Deletes all but the newest {@code onlyarts.feed.timelineSize} rows of
+     * the timelines of several readers, in one batch.
+     */
+    private void trim(List<String> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        Connection conn = null;
+        PreparedStatement stm = null;
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement(TRIM_TIMELINE);
+            for (String userId : userIds) {
+                stm.setString(1, userId);
+                stm.setString(2, userId);
+                stm.setInt(3, TIMELINE_SIZE);
+                stm.addBatch();
+            }
+            stm.executeBatch();
+        } catch (SQLException ex) {
+            logError("Exception found on trimming timelines", ex);
+        } finally {
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+    }
+
+    /**
+     * Retrieves the in-memory timeline of a reader, loading it from the
+     * table if needed. Timelines are reloaded every
+     * {@code onlyarts.feed.refreshMillis}, which picks up artworks fanned out
+     * by other nodes and creators who crossed the fan-out limit.
+     */
+    private Timeline readerTimeline(String userId) {
+        String key = readerKey(userId);
+        Timeline timeline = loaded(key);
+        if (timeline == null || timeline.isStale()) {
+            timeline = new Timeline(load(GET_TIMELINE, userId, true), largeCreators(userId));
+            synchronized (timelines) {
+                timelines.put(key, timeline);
+            }
+        }
+        return timeline;
+    }
+
+    private Timeline creatorTimeline(String creatorId) {
+        String key = creatorKey(creatorId);
+        Timeline timeline = loaded(key);
+        if (timeline == null || timeline.isStale()) {
+            timeline = new Timeline(load(GET_CREATOR_TIMELINE, creatorId, false),
+                    Collections.emptyList());
+            synchronized (timelines) {
+                timelines.put(key, timeline);
+            }
+        }
+        return timeline;
+    }
+
+    /**
+     * Reads the newest entries of a timeline. The timeline of a reader is
+     * trimmed to {@code onlyarts.feed.timelineSize} rows when it has grown
+     * past it; fan-out and backfill trim the timelines they write as well, so
+     * the table stays bounded for readers who never open their feed.
+     */
+    private TimelineBuffer load(String sql, String id, boolean trim) {
+        TimelineBuffer buffer = new TimelineBuffer(TIMELINE_SIZE);
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement(sql);
+            stm.setInt(1, TIMELINE_SIZE + 1);
+            stm.setString(2, id);
+            rs = stm.executeQuery();
+            int count = 0;
+            while (rs.next() && count++ < TIMELINE_SIZE) {
+                buffer.add(rs.getTimestamp("sort_date").getTime(), rs.getString("artwork_id"));
+            }
+            if (trim && count > TIMELINE_SIZE) {
+                context.closeResultSet(rs);
+                context.closeStatement(stm);
+                rs = null;
+                stm = conn.prepareStatement(TRIM_TIMELINE);
+                stm.setString(1, id);
+                stm.setString(2, id);
+                stm.setInt(3, TIMELINE_SIZE);
+                stm.executeUpdate();
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on loading the timeline of " + id, ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return buffer;
+    }
+
+    private List<String> largeCreators(String userId) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        List<String> creators = new ArrayList<>();
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement(GET_LARGE_CREATORS);
+            stm.setString(1, userId);
+            stm.setInt(2, FANOUT_LIMIT);
+            rs = stm.executeQuery();
+            while (rs.next()) {
+                creators.add(rs.getString("followed_user_id"));
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on largeCreators() method", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return Collections.unmodifiableList(creators);
+    }
+
+    private void update(String sql, Binder binder) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement(sql);
+            binder.bind(stm);
+            stm.executeUpdate();
+        } catch (SQLException ex) {
+            logError("Exception found on updating a timeline", ex);
+        } finally {
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+    }
+
+    private Timeline loaded(String key) {
+        synchronized (timelines) {
+            return timelines.get(key);
+        }
+    }
+
+    private void drop(String key) {
+        synchronized (timelines) {
+            timelines.remove(key);
+        }
+    }
+
+    private static String readerKey(String userId) {
+        return "u:" + userId;
+    }
+
+    private static String creatorKey(String creatorId) {
+        return "c:" + creatorId;
+    }
+
+    private void submit(Runnable task) {
+        try {
+            worker().execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    logError("Exception found on updating the home feeds", ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            Logger.getLogger(HomeFeed.class.getName()).log(Level.WARNING,
+                    "The home feed queue is full; a timeline update was skipped");
+        }
+    }
+
+    private synchronized ThreadPoolExecutor worker() {
+        if (worker == null) {
+            worker = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(QUEUE_SIZE), r -> {
+                        Thread t = new Thread(r, "onlyarts-feed");
+                        t.setDaemon(true);
+                        return t;
+                    });
+        }
+        return worker;
+    }
+
+    /**
+     * Stops the background thread that fans out artworks.
+     */
+    public synchronized void shutdown() {
+        if (worker != null) {
+            worker.shutdownNow();
+            worker = null;
+        }
+    }
+
+    /**
+     * Sets the parameters of a statement.
+     */
+    private interface Binder {
+
+        void bind(PreparedStatement stm) throws SQLException;
+    }
+
+    /**
+     * An in-memory timeline and, for a reader, the large creators they
+     * follow.
+     */
+    private static final class Timeline {
+
+        private final TimelineBuffer buffer;
+        private final List<String> largeCreators;
+        private final long loadedAt = System.currentTimeMillis();
+
+        private Timeline(TimelineBuffer buffer, List<String> largeCreators) {
+            this.buffer = buffer;
+            this.largeCreators = largeCreators;
+        }
+
+        private boolean isStale() {
+            return System.currentTimeMillis() - loadedAt >= REFRESH_MILLIS;
+        }
+    }
+}
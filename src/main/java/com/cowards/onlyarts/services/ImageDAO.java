@@ -2,6 +2,19 @@ package com.cowards.onlyarts.services;
 
 import com.cowards.onlyarts.core.CodeGenerator;
 import com.cowards.onlyarts.core.DBContext;
+import com.cowards.onlyarts.core.DataUrl;
+import com.cowards.onlyarts.core.OffHeapCache;
+import com.cowards.onlyarts.repositories.image.ImageBytes;
+import com.cowards.onlyarts.repositories.image.ImageContent;
+import com.cowards.onlyarts.repositories.image.ImageFile;
+import com.cowards.onlyarts.repositories.image.ImageSize;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -11,17 +24,78 @@ import java.util.logging.Logger;
 
 /**
  * This class provides data access methods for managing images in the database.
+ * <p>
+ * Images are stored as raw bytes in {@code [Images].[content]}, a
+ * {@code VARBINARY(MAX)} column, with their media type in
+ * {@code [content_type]}. The bytes are streamed from the column, and a range
+ * only reads the bytes it covers. Rows written before that keep their base64
+ * text in {@code [image]}, which is decoded whenever their bytes are read.
+ * <p>
+ * When the {@link ImageFileStore} is enabled, new images are written to disk
+ * instead and the row only keeps their {@code [hash]} and {@code [size]}.
+ * Images already stored in the database keep being served from there.
+ * <p>
+ * The scaled down sizes generated by {@link ThumbnailPipeline} are kept in
+ * {@code [ImageVariants]}, in the same way as the originals. An image that
+ * cannot be decoded has a row without {@code [content_type]} for each size
+ * instead, and the original is served in their place.
+ * <p>
+ * Images read through {@link #getContent} and {@link #getVariant} are kept in
+ * an {@link OffHeapCache} of {@code onlyarts.cache.images.maxBytes}, 0 to
+ * disable it. Images never change once stored, so the cache needs no
+ * invalidation.
  */
 public class ImageDAO {
 
     private static final DBContext dbContext = DBContext.getInstance();
+    private static final ImageFileStore fileStore = ImageFileStore.getInstance();
+    private static final long CACHE_MAX_BYTES
+            = Long.getLong("onlyarts.cache.images.maxBytes", 64L * 1024 * 1024);
+    private static final int CACHE_MAX_ENTRY_BYTES
+            = Integer.getInteger("onlyarts.cache.images.maxEntryBytes", 4 * 1024 * 1024);
+    private final OffHeapCache<String> cache = CACHE_MAX_BYTES > 0
+            ? new OffHeapCache<>(CACHE_MAX_BYTES, CACHE_MAX_ENTRY_BYTES) : null;
     private static ImageDAO instance;
     private static final String UPLOAD_IMAGE
             = "INSERT INTO [dbo].[Images]"
             + "([image_id],[image]) VALUES (?,?)";
+    private static final String UPLOAD_CONTENT
+            = "INSERT INTO [dbo].[Images]"
+            + "([image_id],[content_type],[content]) VALUES (?,?,?)";
+    private static final String UPLOAD_FILE
+            = "INSERT INTO [dbo].[Images]"
+            + "([image_id],[content_type],[hash],[size]) VALUES (?,?,?,?)";
     private static final String GET_IMAGE
-            = "SELECT [image] FROM [dbo].[Images]"
+            = "SELECT [hash], [content_type], [content], [image] FROM [dbo].[Images] "
             + "WHERE [image_id] = ?";
+    private static final String GET_CONTENT
+            = "SELECT [hash], [content_type], DATALENGTH([content]) AS [length], "
+            + "CASE WHEN [content] IS NULL THEN [image] END AS [image] "
+            + "FROM [dbo].[Images] WHERE [image_id] = ?";
+    private static final int CHUNK_BYTES = 64 * 1024;
+    private static final String GET_CONTENT_RANGE
+            = "SELECT SUBSTRING([content], ?, ?) AS [content] FROM [dbo].[Images] "
+            + "WHERE [image_id] = ?";
+    private static final String ADD_VARIANT
+            = "IF NOT EXISTS (SELECT 1 FROM [dbo].[ImageVariants] "
+            + "WHERE [image_id] = ? AND [size] = ?) "
+            + "INSERT INTO [dbo].[ImageVariants]"
+            + "([image_id],[size],[content_type],[content],[hash],[length]) "
+            + "VALUES (?,?,?,?,?,?)";
+    private static final String ADD_UNSCALABLE
+            = "IF NOT EXISTS (SELECT 1 FROM [dbo].[ImageVariants] "
+            + "WHERE [image_id] = ? AND [size] = ?) "
+            + "INSERT INTO [dbo].[ImageVariants]([image_id],[size]) VALUES (?,?)";
+    private static final String GET_VARIANT
+            = "SELECT [hash], [content_type], DATALENGTH([content]) AS [length] "
+            + "FROM [dbo].[ImageVariants] WHERE [image_id] = ? AND [size] = ?";
+    private static final String GET_VARIANT_RANGE
+            = "SELECT SUBSTRING([content], ?, ?) AS [content] FROM [dbo].[ImageVariants] "
+            + "WHERE [image_id] = ? AND [size] = ?";
+    private static final String SET_FINGERPRINT
+            = "UPDATE [dbo].[Images] SET [phash] = ? WHERE [image_id] = ?";
+    private static final String GET_FINGERPRINT
+            = "SELECT [phash] FROM [dbo].[Images] WHERE [image_id] = ?";
 
     private ImageDAO() {
     }
@@ -39,12 +113,25 @@ public class ImageDAO {
     }
 
     /**
-     * Adds an image to the database.
+     * Adds an image to the database. Base64 text, with or without a
+     * {@code data:} prefix, is stored as raw bytes; any other text is kept
+     * as it is.
      *
      * @param imageData  the image data to be uploaded.
      * @return the ID of the uploaded image.
      */
     public String addImage(String imageData) {
+        byte[] data = null;
+        if (imageData != null) {
+            try {
+                data = DataUrl.decode(imageData);
+            } catch (IllegalArgumentException ex) {
+                data = null;
+            }
+        }
+        if (data != null && data.length > 0) {
+            return addImage(DataUrl.sniff(data, data.length), data);
+        }
         Connection conn = null;
         PreparedStatement stm = null;
         String imageId = null;
@@ -60,12 +147,130 @@ public class ImageDAO {
                     .log(Level.SEVERE, "Exception found on uploadImage() method", ex);
         } finally {
             dbContext.closeStatement(stm);
+            dbContext.closeConnection(conn);
+        }
+        return imageId;
+    }
+
+    /**
+     * Adds an image as raw bytes, to the file store if it is enabled and to
+     * the database otherwise.
+     *
+     * @param contentType the media type of the image.
+     * @param data the bytes of the image.
+     * @return the ID of the uploaded image, or null if it could not be stored.
+     */
+    public String addImage(String contentType, byte[] data) {
+        if (fileStore.isEnabled()) {
+            try {
+                ImageFileStore.Stored stored = fileStore.write(new ByteArrayInputStream(data));
+                return addImage(contentType, stored);
+            } catch (IOException ex) {
+                Logger.getLogger(ImageDAO.class.getName())
+                        .log(Level.SEVERE, "Exception found on addImage() method", ex);
+                return null;
+            }
+        }
+        Connection conn = null;
+        PreparedStatement stm = null;
+        String imageId = null;
+        try {
+            conn = dbContext.getConnection();
+            stm = conn.prepareStatement(UPLOAD_CONTENT);
+            imageId = CodeGenerator.generateUUID(20);
+            stm.setString(1, imageId);
+            stm.setString(2, contentType);
+            stm.setBytes(3, data);
+            stm.executeUpdate();
+        } catch (SQLException ex) {
+            imageId = null;
+            Logger.getLogger(ImageDAO.class.getName())
+                    .log(Level.SEVERE, "Exception found on addImage() method", ex);
+        } finally {
+            dbContext.closeStatement(stm);
+            dbContext.closeConnection(conn);
+        }
+        return imageId;
+    }
+
+    /**
+     * Adds an image read from a stream. The bytes go straight to the file
+     * store or to the database, so the image is never held in memory. The
+     * media type is told from the bytes only, never taken from the client.
+     *
+     * @param in the bytes of the image.
+     * @return the ID of the uploaded image, or null if it could not be stored.
+     * @throws IOException if the stream cannot be read.
+     */
+    public String addImage(InputStream in) throws IOException {
+        if (fileStore.isEnabled()) {
+            ImageFileStore.Stored stored = fileStore.write(in);
+            return addImage(stored.getContentType(), stored);
+        }
+        BufferedInputStream data = new BufferedInputStream(in);
+        byte[] head = new byte[16];
+        data.mark(head.length);
+        int headLength = data.readNBytes(head, 0, head.length);
+        data.reset();
+        String contentType = DataUrl.sniff(head, headLength);
+        Connection conn = null;
+        PreparedStatement stm = null;
+        String imageId = null;
+        try {
+            conn = dbContext.getConnection();
+            stm = conn.prepareStatement(UPLOAD_CONTENT);
+            imageId = CodeGenerator.generateUUID(20);
+            stm.setString(1, imageId);
+            stm.setString(2, contentType);
+            stm.setBinaryStream(3, data);
+            stm.executeUpdate();
+        } catch (SQLException ex) {
+            imageId = null;
+            Logger.getLogger(ImageDAO.class.getName())
+                    .log(Level.SEVERE, "Exception found on addImage() method", ex);
+        } finally {
+            dbContext.closeStatement(stm);
+            dbContext.closeConnection(conn);
+        }
+        return imageId;
+    }
+
+    /**
+     * Records an image that has been written to the file store.
+     *
+     * @param contentType the media type of the image.
+     * @param stored the hash and size of the stored file.
+     * @return the ID of the uploaded image, or null if it could not be stored.
+     */
+    public String addImage(String contentType, ImageFileStore.Stored stored) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        String imageId = null;
+        try {
+            conn = dbContext.getConnection();
+            stm = conn.prepareStatement(UPLOAD_FILE);
+            imageId = CodeGenerator.generateUUID(20);
+            stm.setString(1, imageId);
+            stm.setString(2, contentType);
+            stm.setString(3, stored.getHash());
+            stm.setLong(4, stored.getSize());
+            stm.executeUpdate();
+        } catch (SQLException ex) {
+            imageId = null;
+            Logger.getLogger(ImageDAO.class.getName())
+                    .log(Level.SEVERE, "Exception found on addImage() method", ex);
+        } finally {
+            dbContext.closeStatement(stm);
+            dbContext.closeConnection(conn);
         }
         return imageId;
     }
 
      /**
      * Retrieves the image data from the database based on the provided image ID.
+     * Images stored as bytes are returned as a {@code data:} URL of their
+     * detected type, even when they were uploaded as bare base64; text still
+     * stored in {@code [image]} is returned as it was uploaded.
      *
      * @param imageId  the ID of the image to retrieve.
      * @return the image data retrieved from the database.
@@ -81,15 +286,538 @@ public class ImageDAO {
             stm.setString(1, imageId);
             rs = stm.executeQuery();
             if (rs.next()) {
-                imageData = rs.getString("image");
+                String hash = rs.getString("hash");
+                String contentType = rs.getString("content_type");
+                byte[] data = hash != null ? readFile(hash) : rs.getBytes("content");
+                imageData = data != null
+                        ? DataUrl.encode(contentType, data)
+                        : rs.getString("image");
             }
-        } catch (SQLException ex) {
+        } catch (SQLException | IOException ex) {
             Logger.getLogger(ImageDAO.class.getName())
                     .log(Level.SEVERE, "Exception found on uploadImage() method", ex);
         } finally {
             dbContext.closeResultSet(rs);
             dbContext.closeStatement(stm);
+            dbContext.closeConnection(conn);
         }
         return imageData;
     }
+
+    /**
+     * Retrieves the raw bytes of an image. Bytes stored in the database are
+     * only read when the image is written out; an image still stored as
+     * base64 text is decoded here.
+     *
+     * @param imageId the ID of the image to retrieve.
+     * @return the image, or null if there is no such image or its text is not
+     * base64.
+     */
+    public ImageContent getContent(String imageId) {
+        return getVariant(imageId, ImageSize.ORIGINAL);
+    }
+
+    private ImageContent loadContent(String imageId) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        ImageContent image = null;
+        try {
+            conn = dbContext.getConnection();
+            stm = conn.prepareStatement(GET_CONTENT);
+            stm.setString(1, imageId);
+            rs = stm.executeQuery();
+            if (rs.next()) {
+                String hash = rs.getString("hash");
+                String contentType = rs.getString("content_type");
+                long length = rs.getLong("length");
+                if (hash != null) {
+                    image = fileStore.open(hash, contentType);
+                } else if (!rs.wasNull()) {
+                    image = new StoredImage(imageId, ImageSize.ORIGINAL, contentType, length);
+                } else {
+                    String text = rs.getString("image");
+                    if (text != null) {
+                        byte[] data = DataUrl.decode(text);
+                        image = new ImageBytes(DataUrl.sniff(data, data.length), data);
+                    }
+                }
+            }
+        } catch (SQLException | IOException ex) {
+            Logger.getLogger(ImageDAO.class.getName())
+                    .log(Level.SEVERE, "Exception found on getContent() method", ex);
+        } catch (IllegalArgumentException ex) {
+            image = null;
+        } finally {
+            dbContext.closeResultSet(rs);
+            dbContext.closeStatement(stm);
+            dbContext.closeConnection(conn);
+        }
+        return image;
+    }
+
+    /**
+     * Stores a scaled down size of an image, unless it is already stored.
+     *
+     * @param imageId the ID of the original image.
+     * @param size the size of the copy.
+     * @param contentType the media type of the copy.
+     * @param data the bytes of the copy.
+     * @return true if the copy is stored, otherwise false.
+     */
+    public boolean addVariant(String imageId, ImageSize size, String contentType, byte[] data) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        boolean check = false;
+        try {
+            String hash = null;
+            if (fileStore.isEnabled()) {
+                hash = fileStore.write(new ByteArrayInputStream(data)).getHash();
+            }
+            conn = dbContext.getConnection();
+            stm = conn.prepareStatement(ADD_VARIANT);
+            stm.setString(1, imageId);
+            stm.setString(2, size.getName());
+            stm.setString(3, imageId);
+            stm.setString(4, size.getName());
+            stm.setString(5, contentType);
+            stm.setBytes(6, hash == null ? data : null);
+            stm.setString(7, hash);
+            stm.setLong(8, data.length);
+            stm.executeUpdate();
+            check = true;
+        } catch (SQLException | IOException ex) {
+            Logger.getLogger(ImageDAO.class.getName())
+                    .log(Level.SEVERE, "Exception found on addVariant() method", ex);
+        } finally {
+            dbContext.closeStatement(stm);
+            dbContext.closeConnection(conn);
+        }
+        return check;
+    }
+
+    /**
+     * Records that an image cannot be scaled down, so that the original is
+     * served for every size and the image is never decoded again.
+     *
+     * @param imageId the ID of the image.
+     * @return true if the image is recorded, otherwise false.
+     */
+    public boolean setUnscalable(String imageId) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        boolean check = false;
+        try {
+            conn = dbContext.getConnection();
+            stm = conn.prepareStatement(ADD_UNSCALABLE);
+            for (ImageSize size : ImageSize.values()) {
+                if (size == ImageSize.ORIGINAL) {
+                    continue;
+                }
+                stm.setString(1, imageId);
+                stm.setString(2, size.getName());
+                stm.setString(3, imageId);
+                stm.setString(4, size.getName());
+                stm.executeUpdate();
+            }
+            check = true;
+        } catch (SQLException ex) {
+            Logger.getLogger(ImageDAO.class.getName())
+                    .log(Level.SEVERE, "Exception found on setUnscalable() method", ex);
+        } finally {
+            dbContext.closeStatement(stm);
+            dbContext.closeConnection(conn);
+        }
+        return check;
+    }
+
+    /**
+     * Retrieves a scaled down size of an image.
+     *
+     * @param imageId the ID of the original image.
+     * @param size the size to retrieve; {@link ImageSize#ORIGINAL} returns
+     * the image itself.
+     * @return the copy, the original if the image cannot be scaled down, or
+     * null if the copy has not been generated yet.
+     */
+    public ImageContent getVariant(String imageId, ImageSize size) {
+        if (cache == null) {
+            return load(imageId, size);
+        }
+        String key = imageId + "/" + size.getName();
+        OffHeapCache<String>.Value cached = cache.get(key);
+        if (cached != null) {
+            try {
+                return new CachedImage(key, imageId, size, cached.getType(), cached.getLength());
+            } finally {
+                cached.release();
+            }
+        }
+        ImageContent image = load(imageId, size);
+        // The original of an unscalable image is already cached under its own key.
+        if (image != null && !(image instanceof CachedImage)
+                && image.getLength() <= CACHE_MAX_ENTRY_BYTES) {
+            // Admission is decided before any byte is read, and the bytes are
+            // then copied straight into the reserved pages.
+            OffHeapCache<String>.Reservation slot
+                    = cache.reserve(key, (int) image.getLength(), image.getContentType());
+            if (slot != null) {
+                try {
+                    image.writeTo(slot, 0, image.getLength());
+                    slot.commit();
+                    return new CachedImage(key, imageId, size,
+                            image.getContentType(), (int) image.getLength());
+                } catch (IOException ex) {
+                    slot.abort();
+                    Logger.getLogger(ImageDAO.class.getName())
+                            .log(Level.WARNING, "Exception found on caching image " + key, ex);
+                }
+            }
+        }
+        return image;
+    }
+
+    private ImageContent load(String imageId, ImageSize size) {
+        return size == ImageSize.ORIGINAL ? loadContent(imageId) : loadVariant(imageId, size);
+    }
+
+    private ImageContent loadVariant(String imageId, ImageSize size) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        ImageContent image = null;
+        boolean unscalable = false;
+        try {
+            conn = dbContext.getConnection();
+            stm = conn.prepareStatement(GET_VARIANT);
+            stm.setString(1, imageId);
+            stm.setString(2, size.getName());
+            rs = stm.executeQuery();
+            if (rs.next()) {
+                String hash = rs.getString("hash");
+                String contentType = rs.getString("content_type");
+                if (hash != null) {
+                    image = fileStore.open(hash, contentType);
+                } else if (contentType != null) {
+                    image = new StoredImage(imageId, size, contentType, rs.getLong("length"));
+                } else {
+                    unscalable = true;
+                }
+            }
+        } catch (SQLException | IOException ex) {
+            Logger.getLogger(ImageDAO.class.getName())
+                    .log(Level.SEVERE, "Exception found on getVariant() method", ex);
+        } finally {
+            dbContext.closeResultSet(rs);
+            dbContext.closeStatement(stm);
+            dbContext.closeConnection(conn);
+        }
+        if (unscalable) {
+            image = getVariant(imageId, ImageSize.ORIGINAL);
+        }
+        return image;
+    }
+
+    /**
+     * Stores the perceptual hash of an image.
+     *
+     * @param imageId the ID of the image.
+     * @param fingerprint the 64-bit hash computed by
+     * {@link com.cowards.onlyarts.core.PerceptualHash}.
+     * @return true if the hash is stored, otherwise false.
+     */
+    public boolean setFingerprint(String imageId, long fingerprint) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        boolean check = false;
+        try {
+            conn = dbContext.getConnection();
+            stm = conn.prepareStatement(SET_FINGERPRINT);
+            stm.setLong(1, fingerprint);
+            stm.setString(2, imageId);
+            check = stm.executeUpdate() > 0;
+        } catch (SQLException ex) {
+            Logger.getLogger(ImageDAO.class.getName())
+                    .log(Level.SEVERE, "Exception found on setFingerprint() method", ex);
+        } finally {
+            dbContext.closeStatement(stm);
+            dbContext.closeConnection(conn);
+        }
+        return check;
+    }
+
+    /**
+     * Retrieves the perceptual hash of an image.
+     *
+     * @param imageId the ID of the image.
+     * @return the hash, or null if it has not been computed yet.
+     */
+    public Long getFingerprint(String imageId) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        Long fingerprint = null;
+        try {
+            conn = dbContext.getConnection();
+            stm = conn.prepareStatement(GET_FINGERPRINT);
+            stm.setString(1, imageId);
+            rs = stm.executeQuery();
+            if (rs.next()) {
+                long value = rs.getLong("phash");
+                fingerprint = rs.wasNull() ? null : value;
+            }
+        } catch (SQLException ex) {
+            Logger.getLogger(ImageDAO.class.getName())
+                    .log(Level.SEVERE, "Exception found on getFingerprint() method", ex);
+        } finally {
+            dbContext.closeResultSet(rs);
+            dbContext.closeStatement(stm);
+            dbContext.closeConnection(conn);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Retrieves the number of image reads served from the off-heap cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long getCacheHits() {
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    /**
+     * Retrieves the number of image reads that missed the off-heap cache.
+     *
+     * @return The number of cache misses.
+     */
+    public long getCacheMisses() {
+        return cache == null ? 0 : cache.getMisses();
+    }
+
+    /**
+     * Retrieves the number of images evicted from the off-heap cache.
+     *
+     * @return The number of evictions.
+     */
+    public long getCacheEvictions() {
+        return cache == null ? 0 : cache.getEvictions();
+    }
+
+    /**
+     * Retrieves the number of images the off-heap cache declined to admit
+     * because they were read less often than what they would have evicted.
+     *
+     * @return The number of rejections.
+     */
+    public long getCacheRejections() {
+        return cache == null ? 0 : cache.getRejections();
+    }
+
+    /**
+     * Retrieves the number of bytes held by the off-heap cache.
+     *
+     * @return The used bytes.
+     */
+    public long getCacheUsedBytes() {
+        return cache == null ? 0 : cache.getUsedBytes();
+    }
+
+    private byte[] readFile(String hash) throws IOException {
+        ImageFile file = fileStore.open(hash, DataUrl.UNKNOWN_TYPE);
+        return file == null ? null : Files.readAllBytes(file.getPath());
+    }
+
+    /**
+     * An image held in the off-heap cache. The bytes are pinned only while
+     * they are written, so a response that is never written holds nothing.
+     * If the image has been evicted in the meantime, it is read from storage
+     * again.
+     */
+    private final class CachedImage implements ImageContent {
+
+        private final String key;
+        private final String imageId;
+        private final ImageSize size;
+        private final String contentType;
+        private final int length;
+
+        private CachedImage(String key, String imageId, ImageSize size,
+                String contentType, int length) {
+            this.key = key;
+            this.imageId = imageId;
+            this.size = size;
+            this.contentType = contentType;
+            this.length = length;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public void writeTo(OutputStream out, long offset, long count) throws IOException {
+            OffHeapCache<String>.Value value = cache.pin(key);
+            if (value == null) {
+                reload().writeTo(out, offset, count);
+                return;
+            }
+            try {
+                value.writeTo(out, offset, count);
+            } finally {
+                value.release();
+            }
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            OffHeapCache<String>.Value value = cache.pin(key);
+            if (value == null) {
+                return reload().open();
+            }
+            try {
+                ByteArrayOutputStream copy = new ByteArrayOutputStream(length);
+                value.writeTo(copy, 0, length);
+                return new ByteArrayInputStream(copy.toByteArray());
+            } finally {
+                value.release();
+            }
+        }
+
+        private ImageContent reload() throws IOException {
+            ImageContent image = load(imageId, size);
+            if (image == null) {
+                throw new IOException("Image " + key + " is no longer available");
+            }
+            return image;
+        }
+    }
+
+    /**
+     * An image kept in a {@code VARBINARY(MAX)} column. Nothing is read until
+     * the image is written out, and then only the requested range is read,
+     * {@value #CHUNK_BYTES} bytes per query, so no pooled connection is held
+     * while the bytes go to the client.
+     */
+    private final class StoredImage implements ImageContent {
+
+        private final String imageId;
+        private final ImageSize size;
+        private final String contentType;
+        private final long length;
+
+        private StoredImage(String imageId, ImageSize size, String contentType, long length) {
+            this.imageId = imageId;
+            this.size = size;
+            this.contentType = contentType;
+            this.length = length;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public void writeTo(OutputStream out, long offset, long count) throws IOException {
+            long position = offset;
+            long remaining = count;
+            while (remaining > 0) {
+                byte[] chunk = readChunk(position, (int) Math.min(CHUNK_BYTES, remaining));
+                out.write(chunk);
+                position += chunk.length;
+                remaining -= chunk.length;
+            }
+        }
+
+        @Override
+        public InputStream open() {
+            return new InputStream() {
+                private long position;
+                private byte[] chunk = new byte[0];
+                private int next;
+
+                @Override
+                public int read() throws IOException {
+                    return fill() ? chunk[next++] & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    if (!fill()) {
+                        return -1;
+                    }
+                    int n = Math.min(len, chunk.length - next);
+                    System.arraycopy(chunk, next, b, off, n);
+                    next += n;
+                    return n;
+                }
+
+                private boolean fill() throws IOException {
+                    if (next < chunk.length) {
+                        return true;
+                    }
+                    if (position >= length) {
+                        return false;
+                    }
+                    chunk = readChunk(position, (int) Math.min(CHUNK_BYTES, length - position));
+                    position += chunk.length;
+                    next = 0;
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * Reads one chunk of the image in its own round trip, so the
+         * connection goes back to the pool before the chunk is written to a
+         * client that may be slow.
+         */
+        private byte[] readChunk(long offset, int count) throws IOException {
+            Connection conn = null;
+            PreparedStatement stm = null;
+            ResultSet rs = null;
+            try {
+                conn = dbContext.getConnection();
+                if (size == ImageSize.ORIGINAL) {
+                    stm = conn.prepareStatement(GET_CONTENT_RANGE);
+                } else {
+                    stm = conn.prepareStatement(GET_VARIANT_RANGE);
+                    stm.setString(4, size.getName());
+                }
+                stm.setLong(1, offset + 1);
+                stm.setInt(2, count);
+                stm.setString(3, imageId);
+                rs = stm.executeQuery();
+                byte[] chunk = rs.next() ? rs.getBytes("content") : null;
+                if (chunk == null) {
+                    throw new IOException("Image " + imageId + " is no longer available");
+                }
+                if (chunk.length != count) {
+                    throw new IOException("Unexpected end of image " + imageId);
+                }
+                return chunk;
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            } finally {
+                dbContext.closeResultSet(rs);
+                dbContext.closeStatement(stm);
+                dbContext.closeConnection(conn);
+            }
+        }
+    }
 }
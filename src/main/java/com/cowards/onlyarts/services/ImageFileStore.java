@@ -0,0 +1,193 @@
+package com.cowards.onlyarts.services;
+
+import com.cowards.onlyarts.core.DataUrl;
+import com.cowards.onlyarts.repositories.image.ImageFile;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The {@code ImageFileStore} class keeps image bytes in files named after
+ * their SHA-256 hash, so that the same image uploaded twice is stored once.
+ * The database only keeps the hash, size and media type of each image.
+ * <p>
+ * The store is used when {@code onlyarts.images.store} is {@code disk}; its
+ * root directory is {@code onlyarts.images.dir}. Files are written to a
+ * temporary name first and moved into place, so a reader never sees a
+ * partial file. Files are never changed or removed once written.
+ */
+public final class ImageFileStore {
+
+    private static final boolean ENABLED
+            = "disk".equalsIgnoreCase(System.getProperty("onlyarts.images.store", "database"));
+    private static final String DIRECTORY = System.getProperty("onlyarts.images.dir",
+            Paths.get(System.getProperty("user.home"), "onlyarts-images").toString());
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static ImageFileStore instance;
+    private final Path root = Paths.get(DIRECTORY);
+
+    private ImageFileStore() {
+    }
+
+    /**
+     * Retrieves the singleton instance of {@code ImageFileStore}.
+     *
+     * @return The singleton instance of {@code ImageFileStore}.
+     */
+    public static synchronized ImageFileStore getInstance() {
+        if (instance == null) {
+            instance = new ImageFileStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Checks whether new images are stored on disk rather than in the
+     * database.
+     *
+     * @return {@code true} if the disk store is enabled.
+     */
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Writes an image to the store, unless an identical one is already there.
+     *
+     * @param in The bytes of the image; the stream is read to its end but not
+     * closed.
+     * @return The hash, size and media type of the stored image.
+     * @throws IOException if the image cannot be written.
+     */
+    public Stored write(InputStream in) throws IOException {
+        MessageDigest digest = sha256();
+        Path tmp = Files.createDirectories(root.resolve("tmp"));
+        Path temp = Files.createTempFile(tmp, "upload", ".part");
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] head = new byte[16];
+            int headLength = 0;
+            long size = 0;
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    if (headLength < head.length) {
+                        int copied = Math.min(read, head.length - headLength);
+                        System.arraycopy(buffer, 0, head, headLength, copied);
+                        headLength += copied;
+                    }
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                    size += read;
+                }
+            }
+            String hash = hex(digest.digest());
+            Path target = pathOf(hash);
+            if (!Files.exists(target)) {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException ex) {
+                    // Another upload of the same image won the race.
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(temp, target);
+                }
+            }
+            return new Stored(hash, size, DataUrl.sniff(head, headLength));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Opens a stored image.
+     *
+     * @param hash The hash of the image.
+     * @param contentType The media type of the image.
+     * @return The image, or {@code null} if the file is missing.
+     * @throws IOException if the size of the file cannot be read.
+     */
+    public ImageFile open(String hash, String contentType) throws IOException {
+        Path path = pathOf(hash);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        return new ImageFile(path, contentType, Files.size(path));
+    }
+
+    private Path pathOf(String hash) {
+        if (hash == null || !hash.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("Malformed image hash " + hash);
+        }
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * The result of writing an image to the store.
+     */
+    public static final class Stored {
+
+        private final String hash;
+        private final long size;
+        private final String contentType;
+
+        private Stored(String hash, long size, String contentType) {
+            this.hash = hash;
+            this.size = size;
+            this.contentType = contentType;
+        }
+
+        /**
+         * Retrieves the SHA-256 hash of the image, in lower case hex.
+         *
+         * @return The hash, which is also the name of the file.
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * Retrieves the size of the image.
+         *
+         * @return The number of bytes.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Retrieves the media type told from the first bytes of the image.
+         *
+         * @return The media type, or {@value DataUrl#UNKNOWN_TYPE}.
+         */
+        public String getContentType() {
+            return contentType;
+        }
+    }
+}
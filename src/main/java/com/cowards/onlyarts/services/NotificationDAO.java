@@ -75,6 +75,7 @@ public class NotificationDAO {
             logError("Exception found on sendResponse() method", e);
         } finally {
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return check;
     }
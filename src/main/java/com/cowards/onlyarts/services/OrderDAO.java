@@ -2,6 +2,7 @@ package com.cowards.onlyarts.services;
 
 import com.cowards.onlyarts.repositories.order.OrderDTO;
 import com.cowards.onlyarts.core.DBContext;
+import com.cowards.onlyarts.core.Snapshot;
 import com.cowards.onlyarts.repositories.order.OrderERROR;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -51,6 +52,10 @@ public class OrderDAO {
             + "WHERE [order_id] = ?";
 
     private final DBContext DB = DBContext.getInstance();
+    private static final long TOP_10_REFRESH_MILLIS
+            = Long.getLong("onlyarts.top10.refreshMillis", 30_000L);
+    private final Snapshot<OrderDTO> top10 = new Snapshot<>("latest orders",
+            this::loadTop10, TOP_10_REFRESH_MILLIS);
 
     private static OrderDAO instance;
 
@@ -103,6 +108,7 @@ public class OrderDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return list;
     }
@@ -129,6 +135,7 @@ public class OrderDAO {
             stm.setFloat(5, orderDTO.getTotalPrice());
             if (stm.executeUpdate() > 0) {
                 check = true;
+                ordersChanged();
             } else {
                 throw new OrderERROR("Cannot insert new order");
             }
@@ -136,10 +143,21 @@ public class OrderDAO {
             logError("Exception found on insert(OrderDTO ordersDTO) method", e);
         } finally {
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return check;
     }
 
+    /**
+     * Marks the latest orders as out of date, and again once the current
+     * transaction has committed, so that a reload made before the commit is
+     * not kept.
+     */
+    private void ordersChanged() {
+        top10.invalidate();
+        DB.afterCommit(top10::invalidate);
+    }
+
     /**
      * Retrieves a single order from the database based on the order ID.
      *
@@ -173,6 +191,7 @@ public class OrderDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return orderDTO;
     }
@@ -208,6 +227,7 @@ public class OrderDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return list;
     }
@@ -245,6 +265,7 @@ public class OrderDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return list;
     }
@@ -255,6 +276,19 @@ public class OrderDAO {
      * @return A list of OrderDTO objects representing the top 10 latest orders.
      */
     public List<OrderDTO> getTop10() {
+        return top10.get();
+    }
+
+    /**
+     * Retrieves a counter that changes every time the top 10 list changes.
+     *
+     * @return The generation of the top 10 list.
+     */
+    public long getTop10Generation() {
+        return top10.getGeneration();
+    }
+
+    private List<OrderDTO> loadTop10() {
         Connection conn = null;
         PreparedStatement stm = null;
         ResultSet rs = null;
@@ -278,6 +312,7 @@ public class OrderDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return list;
     }
@@ -298,6 +333,7 @@ public class OrderDAO {
             stm.setString(1, orderId);
             if (stm.executeUpdate() > 0) {
                 check = true;
+                ordersChanged();
             } else {
                 throw new OrderERROR("Cannot remove order");
             }
@@ -305,6 +341,7 @@ public class OrderDAO {
             logError("Exception found on remove() method", ex);
         } finally {
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return check;
     }
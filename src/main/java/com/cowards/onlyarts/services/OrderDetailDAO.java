@@ -111,6 +111,46 @@ public class OrderDetailDAO {
             logError("Exception found on insert() method", e);
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return check;
+    }
+
+    /**
+     * Inserts one order detail per artwork in a single JDBC batch, so the
+     * whole order costs one round trip instead of one per artwork.
+     *
+     * @param orderId The ID of the order.
+     * @param artworks The artworks of the order, priced at their current
+     * price.
+     * @return True if every order detail was inserted, otherwise false.
+     * @throws OrderDetailERROR If any of the order details was not inserted.
+     */
+    public boolean insertAll(String orderId, List<ArtworkDTO> artworks) throws OrderDetailERROR {
+        Connection conn = null;
+        boolean check = false;
+        PreparedStatement stm = null;
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement(INSERT);
+            for (ArtworkDTO artwork : artworks) {
+                stm.setString(1, orderId);
+                stm.setString(2, artwork.getArtworkId());
+                stm.setDouble(3, artwork.getPrice());
+                stm.addBatch();
+            }
+            int[] counts = stm.executeBatch();
+            for (int count : counts) {
+                if (count == 0) {
+                    throw new OrderDetailERROR("Cannot insert new order detail");
+                }
+            }
+            check = counts.length == artworks.size();
+        } catch (SQLException e) {
+            logError("Exception found on insertAll() method", e);
+        } finally {
+            context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return check;
     }
@@ -149,6 +189,7 @@ public class OrderDetailDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return list;
     }
@@ -172,6 +213,7 @@ public class OrderDetailDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return check;
     }
@@ -204,6 +246,7 @@ public class OrderDetailDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return list;
     }
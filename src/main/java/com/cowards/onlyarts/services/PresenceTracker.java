@@ -0,0 +1,168 @@
+package com.cowards.onlyarts.services;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@code PresenceTracker} class keeps the online state of users in memory
+ * and writes it to the {@code Users} table in periodic batches, instead of
+ * updating the user row on every login, logout and account lookup.
+ * <p>
+ * A user is online while they have been seen within the last
+ * {@code onlyarts.presence.timeoutMillis}. Only transitions between online and
+ * offline are queued for writing, so a user polling their account produces no
+ * writes at all once they are marked online.
+ */
+public final class PresenceTracker {
+
+    private static PresenceTracker instance;
+    private static final long ONLINE_TIMEOUT_MILLIS
+            = Long.getLong("onlyarts.presence.timeoutMillis", 300_000L);
+    private static final long FLUSH_INTERVAL_MILLIS
+            = Long.getLong("onlyarts.presence.flushIntervalMillis", 10_000L);
+    private final Map<String, Long> lastSeen = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> pending = new ConcurrentHashMap<>();
+    private final UserDAO userDao = UserDAO.getInstance();
+    private volatile ScheduledExecutorService flusher;
+
+    private PresenceTracker() {
+    }
+
+    /**
+     * Retrieves the singleton instance of {@code PresenceTracker}.
+     *
+     * @return The singleton instance of {@code PresenceTracker}.
+     */
+    public static synchronized PresenceTracker getInstance() {
+        if (instance == null) {
+            instance = new PresenceTracker();
+        }
+        return instance;
+    }
+
+    /**
+     * Records that a user is active. The user is queued to be written as
+     * online only if they were not already considered online.
+     *
+     * @param userId The ID of the user.
+     */
+    public void markOnline(String userId) {
+        startFlusher();
+        long now = System.currentTimeMillis();
+        Long previous = lastSeen.put(userId, now);
+        if (previous == null || now - previous >= ONLINE_TIMEOUT_MILLIS) {
+            pending.put(userId, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Records that a user has logged out and queues them to be written as
+     * offline.
+     *
+     * @param userId The ID of the user.
+     */
+    public void markOffline(String userId) {
+        startFlusher();
+        lastSeen.remove(userId);
+        pending.put(userId, Boolean.FALSE);
+    }
+
+    /**
+     * Checks whether a user has been seen recently by this node.
+     *
+     * @param userId The ID of the user.
+     * @return {@code true} if the user is online, {@code false} otherwise.
+     */
+    public boolean isOnline(String userId) {
+        Long seen = lastSeen.get(userId);
+        return seen != null
+                && System.currentTimeMillis() - seen < ONLINE_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * Retrieves the time a user was last seen by this node.
+     *
+     * @param userId The ID of the user.
+     * @return The time in epoch milliseconds, or {@code null} if the user has
+     * not been seen since they went offline.
+     */
+    public Long getLastSeen(String userId) {
+        return lastSeen.get(userId);
+    }
+
+    /**
+     * Marks idle users as offline and writes every queued transition to the
+     * database in one batch. Transitions that fail to be written are queued
+     * again unless a newer one arrived in the meantime.
+     */
+    public void flush() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Long>> it = lastSeen.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            if (now - entry.getValue() >= ONLINE_TIMEOUT_MILLIS
+                    && lastSeen.remove(entry.getKey(), entry.getValue())) {
+                pending.put(entry.getKey(), Boolean.FALSE);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, Boolean> batch = new HashMap<>();
+        for (String userId : pending.keySet()) {
+            Boolean online = pending.remove(userId);
+            if (online != null) {
+                batch.put(userId, online);
+            }
+        }
+        if (!batch.isEmpty() && !userDao.updateOnlineStatus(batch)) {
+            batch.forEach(pending::putIfAbsent);
+        }
+    }
+
+    private void startFlusher() {
+        if (flusher == null) {
+            synchronized (this) {
+                if (flusher == null) {
+                    ScheduledExecutorService executor
+                            = Executors.newSingleThreadScheduledExecutor(r -> {
+                                Thread t = new Thread(r, "onlyarts-presence");
+                                t.setDaemon(true);
+                                return t;
+                            });
+                    executor.scheduleWithFixedDelay(this::flushQuietly,
+                            FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                            TimeUnit.MILLISECONDS);
+                    flusher = executor;
+                }
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            Logger.getLogger(PresenceTracker.class.getName())
+                    .log(Level.SEVERE, "Exception found on flush method", ex);
+        }
+    }
+
+    /**
+     * Stops the background flush and writes the remaining transitions.
+     */
+    public synchronized void shutdown() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            flusher = null;
+        }
+        flushQuietly();
+    }
+}
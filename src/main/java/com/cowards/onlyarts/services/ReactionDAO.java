@@ -79,6 +79,7 @@ public class ReactionDAO {
             res = false;
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return res;
     }
@@ -105,6 +106,7 @@ public class ReactionDAO {
             res = false;
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return res;
     }
@@ -132,6 +134,7 @@ public class ReactionDAO {
             res = false;
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return res;
     }
@@ -161,6 +164,7 @@ public class ReactionDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return count;
     }
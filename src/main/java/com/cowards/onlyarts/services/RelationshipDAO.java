@@ -0,0 +1,197 @@
+package com.cowards.onlyarts.services;
+
+import com.cowards.onlyarts.core.DBContext;
+import com.cowards.onlyarts.core.InClause;
+import com.cowards.onlyarts.repositories.relationship.ArtworkRelationDTO;
+import com.cowards.onlyarts.repositories.relationship.UserRelationDTO;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class looks up how one user relates to many artworks or users at
+ * once: favorites, reactions, cart items, purchases and follows. Each lookup
+ * is a single {@code UNION ALL} query per chunk of IDs, instead of one query
+ * per flag and ID.
+ */
+public class RelationshipDAO {
+
+    private static final DBContext context = DBContext.getInstance();
+    private static RelationshipDAO instance;
+    /**
+     * The flags of artworks. Every branch takes the user ID followed by the
+     * chunk of artwork IDs, which replace {@code %1$s}.
+     */
+    private static final String GET_ARTWORK_FLAGS
+            = "SELECT 'favorite' AS [flag], [artwork_id] AS [id] FROM [dbo].[Users_favor] "
+            + "WHERE [user_id] = ? AND [artwork_id] IN %1$s "
+            + "UNION ALL SELECT 'reacted', [artwork_id] FROM [dbo].[Artwork_reactions] "
+            + "WHERE [user_id] = ? AND [artwork_id] IN %1$s "
+            + "UNION ALL SELECT 'inCart', [artwork_id] FROM [dbo].[Carts] "
+            + "WHERE [user_id] = ? AND [artwork_id] IN %1$s "
+            + "UNION ALL SELECT 'purchased', od.[artwork_id] FROM [dbo].[Orders] o "
+            + "JOIN [dbo].[Order_details] od ON o.[order_id] = od.[order_id] "
+            + "WHERE o.[user_id] = ? AND od.[artwork_id] IN %1$s";
+    private static final int ARTWORK_FLAG_COUNT = 4;
+    /**
+     * The flags of users, bound the same way as {@link #GET_ARTWORK_FLAGS}.
+     */
+    private static final String GET_USER_FLAGS
+            = "SELECT 'following' AS [flag], [followed_user_id] AS [id] "
+            + "FROM [dbo].[Followings] "
+            + "WHERE [user_id] = ? AND [followed_user_id] IN %1$s "
+            + "UNION ALL SELECT 'followedBy', [user_id] FROM [dbo].[Followings] "
+            + "WHERE [followed_user_id] = ? AND [user_id] IN %1$s";
+    private static final int USER_FLAG_COUNT = 2;
+
+    private void logError(String message, Exception ex) {
+        Logger.getLogger(RelationshipDAO.class.getName())
+                .log(Level.SEVERE, message, ex);
+    }
+
+    private RelationshipDAO() {
+    }
+
+    /**
+     * Gets the instance of RelationshipDAO.
+     *
+     * @return the instance of RelationshipDAO.
+     */
+    public static synchronized RelationshipDAO getInstance() {
+        if (instance == null) {
+            instance = new RelationshipDAO();
+        }
+        return instance;
+    }
+
+    /**
+     * Retrieves how a user relates to several artworks.
+     *
+     * @param userId the ID of the user.
+     * @param artworkIds the IDs of the artworks.
+     * @return the flags of each artwork, in the order of their IDs; an
+     * unknown artwork has every flag unset.
+     */
+    public List<ArtworkRelationDTO> getArtworkRelations(String userId,
+            Collection<String> artworkIds) {
+        Map<String, ArtworkRelationDTO> relations = new LinkedHashMap<>();
+        for (String artworkId : artworkIds) {
+            if (artworkId != null) {
+                relations.putIfAbsent(artworkId,
+                        new ArtworkRelationDTO(artworkId, false, false, false, false));
+            }
+        }
+        Map<String, List<String>> flags = getFlags(GET_ARTWORK_FLAGS,
+                ARTWORK_FLAG_COUNT, userId, relations.keySet());
+        for (Map.Entry<String, List<String>> e : flags.entrySet()) {
+            ArtworkRelationDTO relation = relations.get(e.getKey());
+            if (relation == null) {
+                continue;
+            }
+            for (String flag : e.getValue()) {
+                switch (flag) {
+                    case "favorite":
+                        relation.setFavorite(true);
+                        break;
+                    case "reacted":
+                        relation.setReacted(true);
+                        break;
+                    case "inCart":
+                        relation.setInCart(true);
+                        break;
+                    default:
+                        relation.setPurchased(true);
+                }
+            }
+        }
+        return new ArrayList<>(relations.values());
+    }
+
+    /**
+     * Retrieves how a user relates to several other users.
+     *
+     * @param userId the ID of the user.
+     * @param userIds the IDs of the other users.
+     * @return the flags of each user, in the order of their IDs; an unknown
+     * user has every flag unset.
+     */
+    public List<UserRelationDTO> getUserRelations(String userId, Collection<String> userIds) {
+        Map<String, UserRelationDTO> relations = new LinkedHashMap<>();
+        for (String otherId : userIds) {
+            if (otherId != null) {
+                relations.putIfAbsent(otherId, new UserRelationDTO(otherId, false, false));
+            }
+        }
+        Map<String, List<String>> flags = getFlags(GET_USER_FLAGS,
+                USER_FLAG_COUNT, userId, relations.keySet());
+        for (Map.Entry<String, List<String>> e : flags.entrySet()) {
+            UserRelationDTO relation = relations.get(e.getKey());
+            if (relation == null) {
+                continue;
+            }
+            for (String flag : e.getValue()) {
+                if (flag.equals("following")) {
+                    relation.setFollowing(true);
+                } else {
+                    relation.setFollowedBy(true);
+                }
+            }
+        }
+        return new ArrayList<>(relations.values());
+    }
+
+    /**
+     * Runs a flag query for every chunk of IDs.
+     *
+     * @return the flags found for each ID, keyed as the database returns the
+     * ID; IDs without any flag are left out.
+     */
+    private Map<String, List<String>> getFlags(String sql, int branches,
+            String userId, Collection<String> ids) {
+        Map<String, List<String>> flags = new LinkedHashMap<>();
+        if (ids.isEmpty()) {
+            return flags;
+        }
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        try {
+            conn = context.getConnection();
+            for (List<String> chunk : InClause.partition(ids)) {
+                stm = conn.prepareStatement(String.format(sql,
+                        InClause.placeholders(chunk.size())));
+                int index = 1;
+                for (int i = 0; i < branches; i++) {
+                    stm.setString(index++, userId);
+                    for (String id : chunk) {
+                        stm.setString(index++, id);
+                    }
+                }
+                rs = stm.executeQuery();
+                while (rs.next()) {
+                    flags.computeIfAbsent(rs.getString("id"), k -> new ArrayList<>())
+                            .add(rs.getString("flag"));
+                }
+                context.closeResultSet(rs);
+                context.closeStatement(stm);
+                rs = null;
+                stm = null;
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on getFlags() method", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return flags;
+    }
+}
@@ -80,6 +80,7 @@ public class ReportDAO {
             logError("Exception found on reportArtwork() method", e);
         } finally {
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return check;
     }
@@ -116,6 +117,7 @@ public class ReportDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return list;
     }
@@ -152,6 +154,7 @@ public class ReportDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return list;
     }
@@ -189,6 +192,7 @@ public class ReportDAO {
             logError("Exception found on processReport() method", e);
         } finally {
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return check;
     }
@@ -218,6 +222,7 @@ public class ReportDAO {
             logError("Exception found on writeDiary() method", e);
         } finally {
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return check;
     }
@@ -247,6 +252,7 @@ public class ReportDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return reportDTO;
     }
@@ -95,6 +95,7 @@ public class RequestDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return requestList;
     }
@@ -132,6 +133,7 @@ public class RequestDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return request;
     }
@@ -161,6 +163,7 @@ public class RequestDAO {
             logError("Exception found on addRequest() method", e);
         } finally {
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return check;
 
@@ -194,6 +197,7 @@ public class RequestDAO {
             logError("Exception found on updateRequest() method", e);
         } finally {
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return check;
     }
@@ -219,6 +223,7 @@ public class RequestDAO {
             logError("Exception found on removeRequest() method", e);
         } finally {
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return check;
     }
@@ -246,6 +251,7 @@ public class RequestDAO {
             logError("Exception found on changStatus() method", e);
         } finally {
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return check;
     }
@@ -90,6 +90,7 @@ public class ResponseDAO {
             logError("Exception found on addResponse() method", e);
         } finally {
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return check;
     }
@@ -127,6 +128,7 @@ public class ResponseDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return response;
     }
@@ -162,6 +164,7 @@ public class ResponseDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return responseList;
     }
@@ -189,6 +192,7 @@ public class ResponseDAO {
             logError("Exception found on changeStatus() method", e);
         } finally {
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return check;
 
@@ -225,6 +229,7 @@ public class ResponseDAO {
         } finally {
             DB.closeResultSet(rs);
             DB.closeStatement(stm);
+            DB.closeConnection(conn);
         }
         return responseList;
     }
@@ -0,0 +1,246 @@
+package com.cowards.onlyarts.services;
+
+import com.cowards.onlyarts.core.DataUrl;
+import com.cowards.onlyarts.core.PerceptualHash;
+import com.cowards.onlyarts.repositories.image.ImageContent;
+import com.cowards.onlyarts.repositories.image.ImageSize;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * The {@code ThumbnailPipeline} class generates the scaled down sizes of an
+ * uploaded image, as listed by {@link ImageSize}, and stores them through
+ * {@link ImageDAO#addVariant}.
+ * <p>
+ * Work runs on a bounded pool of {@code onlyarts.thumbnails.threads} daemon
+ * threads with a queue of {@code onlyarts.thumbnails.queueSize}. When the
+ * queue is full the image is skipped; it is submitted again the next time one
+ * of its sizes is requested and found missing. Images with more than
+ * {@code onlyarts.thumbnails.maxPixels} pixels are decoded subsampled, so a
+ * huge upload cannot exhaust the heap.
+ * <p>
+ * An image that cannot be decoded, such as WebP or anything that is not a
+ * raster image, is recorded through {@link ImageDAO#setUnscalable}, so its
+ * original is served for every size from then on.
+ * <p>
+ * The decoded image is also fingerprinted with {@link PerceptualHash} for
+ * {@link DuplicateDetector}, so that the image is only decoded once.
+ */
+public final class ThumbnailPipeline {
+
+    private static ThumbnailPipeline instance;
+    private static final int THREADS
+            = Integer.getInteger("onlyarts.thumbnails.threads", 2);
+    private static final int QUEUE_SIZE
+            = Integer.getInteger("onlyarts.thumbnails.queueSize", 100);
+    private static final long MAX_PIXELS
+            = Long.getLong("onlyarts.thumbnails.maxPixels", 40_000_000L);
+    private static final float JPEG_QUALITY = 0.85f;
+    private final ImageDAO imageDao = ImageDAO.getInstance();
+    private final Map<String, Boolean> inFlight = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor workers;
+
+    private ThumbnailPipeline() {
+    }
+
+    /**
+     * Retrieves the singleton instance of {@code ThumbnailPipeline}.
+     *
+     * @return The singleton instance of {@code ThumbnailPipeline}.
+     */
+    public static synchronized ThumbnailPipeline getInstance() {
+        if (instance == null) {
+            instance = new ThumbnailPipeline();
+        }
+        return instance;
+    }
+
+    /**
+     * Queues the generation of every scaled down size of an image. An image
+     * that is already queued is not queued twice.
+     *
+     * @param imageId The ID of the image.
+     * @return {@code true} if the image was queued or already is.
+     */
+    public boolean submit(String imageId) {
+        if (inFlight.putIfAbsent(imageId, Boolean.TRUE) != null) {
+            return true;
+        }
+        try {
+            workers().execute(() -> {
+                try {
+                    generate(imageId);
+                } finally {
+                    inFlight.remove(imageId);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException ex) {
+            inFlight.remove(imageId);
+            return false;
+        }
+    }
+
+    private void generate(String imageId) {
+        try {
+            ImageContent original = imageDao.getContent(imageId);
+            if (original == null) {
+                return;
+            }
+            BufferedImage source = null;
+            if (DataUrl.isRaster(original.getContentType())) {
+                try {
+                    source = decode(original, ImageSize.PREVIEW.getMaxEdge());
+                } catch (IIOException ex) {
+                    Logger.getLogger(ThumbnailPipeline.class.getName()).log(Level.FINE,
+                            "Image " + imageId + " cannot be decoded", ex);
+                }
+            }
+            if (source == null) {
+                // No reader for the format, such as WebP, or broken bytes:
+                // decoding will never succeed, so the original stands in.
+                imageDao.setUnscalable(imageId);
+                return;
+            }
+            imageDao.setFingerprint(imageId, PerceptualHash.of(source));
+            // Each size is scaled from the one before it, largest first.
+            for (ImageSize size : new ImageSize[]{ImageSize.PREVIEW, ImageSize.THUMBNAIL}) {
+                source = scale(source, size.getMaxEdge());
+                boolean opaque = !source.getColorModel().hasAlpha();
+                byte[] data = encode(source, opaque);
+                imageDao.addVariant(imageId, size, opaque ? "image/jpeg" : "image/png", data);
+            }
+        } catch (IOException | RuntimeException ex) {
+            Logger.getLogger(ThumbnailPipeline.class.getName()).log(Level.WARNING,
+                    "Exception found on generating the sizes of image " + imageId, ex);
+        }
+    }
+
+    /**
+     * Decodes an image, skipping rows and columns of large images so that the
+     * result is not much larger than needed.
+     */
+    static BufferedImage decode(ImageContent content, int maxEdge) throws IOException {
+        try (InputStream in = content.open();
+                ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                long width = reader.getWidth(0);
+                long height = reader.getHeight(0);
+                int step = (int) Math.max(1, Math.max(width, height) / (maxEdge * 2L));
+                while (width / step * (height / step) > MAX_PIXELS) {
+                    step++;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales an image down in halving steps, which looks better than one
+     * bilinear step when the image shrinks a lot.
+     */
+    private static BufferedImage scale(BufferedImage source, int maxEdge) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int type = source.getColorModel().hasAlpha()
+                ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        double ratio = Math.min(1.0, (double) maxEdge / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+        BufferedImage current = source;
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING,
+                        RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static byte[] encode(BufferedImage image, boolean opaque) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!opaque) {
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private synchronized ThreadPoolExecutor workers() {
+        if (workers == null) {
+            AtomicInteger count = new AtomicInteger();
+            workers = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(QUEUE_SIZE), r -> {
+                        Thread t = new Thread(r, "onlyarts-thumbnails-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            workers.allowCoreThreadTimeOut(true);
+        }
+        return workers;
+    }
+
+    /**
+     * Stops the worker threads. Images still queued are dropped and will be
+     * generated on demand later.
+     */
+    public synchronized void shutdown() {
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
+    }
+}
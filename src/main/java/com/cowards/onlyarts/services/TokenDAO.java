@@ -2,23 +2,56 @@ package com.cowards.onlyarts.services;
 
 import com.cowards.onlyarts.core.CodeGenerator;
 import com.cowards.onlyarts.core.DBContext;
+import com.cowards.onlyarts.core.TokenSigner;
+import com.cowards.onlyarts.core.TtlCache;
 import com.cowards.onlyarts.repositories.token.TokenDTO;
 import com.cowards.onlyarts.repositories.token.TokenERROR;
+import com.cowards.onlyarts.repositories.user.UserDTO;
+import com.cowards.onlyarts.repositories.user.UserERROR;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This class provides data access operations for managing tokens.
+ * <p>
+ * When the {@code onlyarts.auth.signedTokens} system property is set, login
+ * tokens are issued as {@link TokenSigner signed tokens} that are verified
+ * without touching the database. Logging out of a signed token records its ID
+ * in the {@code Token_revocations} table, which token lookups never read;
+ * every node keeps those IDs in a revocation set that is reloaded
+ * periodically.
  */
 public class TokenDAO {
 
     private static TokenDAO instance = null;
     private static final DBContext context = DBContext.getInstance();
+    private static final int CACHE_MAX_SIZE
+            = Integer.getInteger("onlyarts.cache.tokens.maxSize", 10_000);
+    private static final long CACHE_TTL_MILLIS
+            = Long.getLong("onlyarts.cache.tokens.ttlMillis", 600_000L);
+    private final TtlCache<String, TokenDTO> cache
+            = new TtlCache<>(CACHE_MAX_SIZE, CACHE_TTL_MILLIS);
+    private static final boolean SIGNED_TOKENS
+            = Boolean.getBoolean("onlyarts.auth.signedTokens");
+    private static final long REVOCATION_REFRESH_MILLIS
+            = Long.getLong("onlyarts.auth.revocationRefreshMillis", 30_000L);
+    private static final int LOGIN_TOKEN = 0b101;
+    private static final long LOGIN_TOKEN_LIFETIME = 2_592_000_000L;
+    private volatile Set<String> revokedTokenIds = Collections.emptySet();
+    private final Set<String> locallyRevokedTokenIds = ConcurrentHashMap.newKeySet();
+    private volatile ScheduledExecutorService revocationRefresher;
     private static final String GET_TOKEN = "SELECT [user_id],[token],[validDate],[expiredDate],[status]"
             + "FROM [dbo].[Tokens] WHERE [token] = ?";
     private static final String ADD_TOKEN = "INSERT INTO [dbo].[Tokens]"
@@ -29,6 +62,12 @@ public class TokenDAO {
     private static final String DELETE_TOKEN
             = "DELETE FROM [dbo].[Tokens]"
             + "WHERE [token] = ?";
+    private static final String ADD_REVOCATION
+            = "INSERT INTO [dbo].[Token_revocations]"
+            + "([token_id],[user_id],[expiredDate]) VALUES (?, ?, ?)";
+    private static final String GET_REVOKED_TOKEN_IDS
+            = "SELECT [token_id] FROM [dbo].[Token_revocations] "
+            + "WHERE [expiredDate] >= ?";
 
     /**
      * Private constructor for the TokenDAO class. Prevents instantiation from
@@ -56,7 +95,9 @@ public class TokenDAO {
     }
 
     /**
-     * Retrieves a token by its token string.
+     * Retrieves a token by its token string. Tokens are served from an
+     * in-memory cache until they expire or are deactivated or removed, so the
+     * database is only queried on the first lookup.
      *
      * @param tokenString The token string to retrieve.
      * @return The TokenDTO object representing the token.
@@ -67,7 +108,13 @@ public class TokenDAO {
         Connection conn = null;
         PreparedStatement stm = null;
         ResultSet rs = null;
-        TokenDTO token = null;
+        if (TokenSigner.isSigned(tokenString)) {
+            return getSignedToken(tokenString);
+        }
+        TokenDTO token = cache.get(tokenString);
+        if (token != null) {
+            return token;
+        }
 
         try {
             conn = context.getConnection();
@@ -80,15 +127,17 @@ public class TokenDAO {
                 Date expiredDate = rs.getDate("expiredDate");
                 int status = rs.getInt("status");
                 token = new TokenDTO(userId, tokenString, validDate, expiredDate, status);
+                cache.put(tokenString, token, expiredDate.getTime());
             } else {
                 throw new TokenERROR("Invalid token string");
             }
-
-            context.closeResultSet(rs);
-            context.closeStatement(stm);
         } catch (SQLException ex) {
             Logger.getLogger(TokenDAO.class.getName()).log(Level.SEVERE,
                     "Exception found on getToken() method ", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return token;
     }
@@ -115,22 +164,86 @@ public class TokenDAO {
             stm.setDate(4, expiredDate);
             stm.setInt(5, 0b011);
             stm.executeUpdate();
-
-            context.closeStatement(stm);
         } catch (SQLException ex) {
             Logger.getLogger(TokenDAO.class.getName()).log(Level.SEVERE,
                     "Exception founf on addResetPasswordToken method", ex);
+        } finally {
+            context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return tokenString;
     }
 
     /**
-     * Adds a login token for the specified user.
+     * Adds a login token for the specified user. In signed token mode the user
+     * is loaded to embed its role and status in the token.
      *
      * @param userId The user ID for which the token is generated.
      * @return The generated token string.
      */
     public TokenDTO addLoginToken(String userId) {
+        if (SIGNED_TOKENS) {
+            try {
+                return addLoginToken(UserDAO.getInstance().getUserById(userId));
+            } catch (UserERROR ex) {
+                logError("Exception found on addLoginToken method", ex);
+                return null;
+            }
+        }
+        return addStoredLoginToken(userId);
+    }
+
+    /**
+     * Adds a login token for the specified user. In signed token mode the
+     * token is signed and never written to the database.
+     *
+     * @param user The user for which the token is generated.
+     * @return The generated token.
+     */
+    public TokenDTO addLoginToken(UserDTO user) {
+        if (!SIGNED_TOKENS) {
+            return addStoredLoginToken(user.getUserId());
+        }
+        long now = System.currentTimeMillis();
+        TokenSigner.Claims claims = new TokenSigner.Claims(
+                CodeGenerator.generateRandomToken(32), user.getUserId(),
+                user.getRoleId(), user.getStatus(), LOGIN_TOKEN,
+                now, now + LOGIN_TOKEN_LIFETIME);
+        String tokenString = TokenSigner.getInstance().sign(claims);
+        return new TokenDTO(user.getUserId(), tokenString, new Date(now),
+                new Date(claims.getExpiresAt()), LOGIN_TOKEN);
+    }
+
+    /**
+     * Verifies a signed token and decodes its claims without touching the
+     * database.
+     *
+     * @param tokenString The signed token string.
+     * @return The claims of the token.
+     * @throws TokenERROR if the token is not a valid signed token or has been
+     * revoked.
+     */
+    public TokenSigner.Claims getClaims(String tokenString) throws TokenERROR {
+        TokenSigner.Claims claims = TokenSigner.getInstance().verify(tokenString);
+        if (claims == null) {
+            throw new TokenERROR("Invalid token string");
+        }
+        startRevocationRefresh();
+        if (revokedTokenIds.contains(claims.getTokenId())
+                || locallyRevokedTokenIds.contains(claims.getTokenId())) {
+            throw new TokenERROR("Invalid token string");
+        }
+        return claims;
+    }
+
+    private TokenDTO getSignedToken(String tokenString) throws TokenERROR {
+        TokenSigner.Claims claims = getClaims(tokenString);
+        return new TokenDTO(claims.getUserId(), tokenString,
+                new Date(claims.getIssuedAt()), new Date(claims.getExpiresAt()),
+                claims.getTokenStatus());
+    }
+
+    private TokenDTO addStoredLoginToken(String userId) {
         Connection conn = null;
         PreparedStatement stm = null;
         TokenDTO token = null;
@@ -139,18 +252,21 @@ public class TokenDAO {
             stm = conn.prepareStatement(ADD_TOKEN);
             String tokenString = CodeGenerator.generateRandomToken(32);
             Date validDate = new Date(System.currentTimeMillis());
-            Date expiredDate = new Date(System.currentTimeMillis() + 2_592_000_000L);
+            Date expiredDate = new Date(System.currentTimeMillis() + LOGIN_TOKEN_LIFETIME);
             stm.setString(1, userId);
             stm.setString(2, tokenString);
             stm.setDate(3, validDate);
             stm.setDate(4, expiredDate);
-            stm.setInt(5, 0b101);
+            stm.setInt(5, LOGIN_TOKEN);
             stm.executeUpdate();
-            token = new TokenDTO(userId, tokenString, validDate, expiredDate, 0b101);
-            context.closeStatement(stm);
+            token = new TokenDTO(userId, tokenString, validDate, expiredDate, LOGIN_TOKEN);
+            cache.put(tokenString, token, expiredDate.getTime());
         } catch (SQLException ex) {
             Logger.getLogger(TokenDAO.class.getName()).log(Level.SEVERE,
                     "Exception founf on addResetPasswordToken method", ex);
+        } finally {
+            context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return token;
     }
@@ -165,26 +281,44 @@ public class TokenDAO {
      */
     public boolean deactivateToken(String tokenString)
             throws TokenERROR {
+        if (TokenSigner.isSigned(tokenString)) {
+            return revokeSignedToken(tokenString);
+        }
         Connection conn = null;
         PreparedStatement stm = null;
         try {
-            conn = context.getConnection();
             TokenDTO token = this.getToken(tokenString);
+            conn = context.getConnection();
             stm = conn.prepareStatement(DEACTIVATE_TOKEN);
             int status = token.isValid() ? token.getStatus() ^ 1 : token.getStatus();
             stm.setInt(1, status);
             stm.setString(2, tokenString);
             stm.executeUpdate();
-
-            context.closeStatement(stm);
         } catch (SQLException ex) {
             Logger.getLogger(TokenDAO.class.getName()).log(Level.SEVERE,
                     "Exception found on deactivateToken method", ex);
+        } finally {
+            cache.invalidate(tokenString);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return true;
     }
 
+    /**
+     * Removes a token from the system.
+     *
+     * @param tokenString The token string to remove.
+     * @return True once the token has been removed.
+     */
     public boolean removeToken(String tokenString) {
+        if (TokenSigner.isSigned(tokenString)) {
+            try {
+                return revokeSignedToken(tokenString);
+            } catch (TokenERROR ex) {
+                return true;
+            }
+        }
         Connection conn = null;
         PreparedStatement stm = null;
         try {
@@ -192,12 +326,134 @@ public class TokenDAO {
             stm = conn.prepareStatement(DELETE_TOKEN);
             stm.setString(1, tokenString);
             stm.executeUpdate();
-
-            context.closeStatement(stm);
         } catch (SQLException ex) {
             Logger.getLogger(TokenDAO.class.getName()).log(Level.SEVERE,
                     "Exception found on deactivateToken method", ex);
+        } finally {
+            cache.invalidate(tokenString);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return true;
     }
+
+    /**
+     * Revokes a signed token by recording its ID in the
+     * {@code Token_revocations} table. The ID is kept apart from the
+     * {@code Tokens} table so it can never be used as a stored token. The
+     * revocation applies to this node at once and to the other nodes on
+     * their next refresh of the revocation set.
+     *
+     * @param tokenString The signed token string.
+     * @return True if the revocation was recorded, otherwise false.
+     * @throws TokenERROR if the token is not a valid signed token.
+     */
+    private boolean revokeSignedToken(String tokenString) throws TokenERROR {
+        TokenSigner.Claims claims = getClaims(tokenString);
+        locallyRevokedTokenIds.add(claims.getTokenId());
+        Connection conn = null;
+        PreparedStatement stm = null;
+        boolean check = false;
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement(ADD_REVOCATION);
+            stm.setString(1, claims.getTokenId());
+            stm.setString(2, claims.getUserId());
+            stm.setDate(3, new Date(claims.getExpiresAt()));
+            check = stm.executeUpdate() > 0;
+        } catch (SQLException ex) {
+            logError("Exception found on revokeSignedToken method", ex);
+        } finally {
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return check;
+    }
+
+    /**
+     * Reloads the IDs of the revoked signed tokens that have not expired yet.
+     */
+    private void refreshRevokedTokenIds() {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement(GET_REVOKED_TOKEN_IDS);
+            stm.setDate(1, new Date(System.currentTimeMillis()));
+            rs = stm.executeQuery();
+            Set<String> ids = new HashSet<>();
+            while (rs.next()) {
+                ids.add(rs.getString(1));
+            }
+            revokedTokenIds = Collections.unmodifiableSet(ids);
+            locallyRevokedTokenIds.removeAll(ids);
+        } catch (SQLException ex) {
+            logError("Exception found on refreshRevokedTokenIds method", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+    }
+
+    private void startRevocationRefresh() {
+        if (revocationRefresher == null) {
+            synchronized (this) {
+                if (revocationRefresher == null) {
+                    scheduleRevocationRefresh();
+                }
+            }
+        }
+    }
+
+    private void scheduleRevocationRefresh() {
+        ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "onlyarts-token-revocations");
+            t.setDaemon(true);
+            return t;
+        });
+        refreshRevokedTokenIds();
+        refresher.scheduleWithFixedDelay(this::refreshRevokedTokenIds,
+                REVOCATION_REFRESH_MILLIS, REVOCATION_REFRESH_MILLIS,
+                TimeUnit.MILLISECONDS);
+        revocationRefresher = refresher;
+    }
+
+    /**
+     * Stops the background refresh of the revocation set.
+     */
+    public synchronized void shutdown() {
+        if (revocationRefresher != null) {
+            revocationRefresher.shutdownNow();
+            revocationRefresher = null;
+        }
+    }
+
+    /**
+     * Retrieves the number of token lookups served from the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long getCacheHits() {
+        return cache.getHits();
+    }
+
+    /**
+     * Retrieves the number of token lookups that had to query the database.
+     *
+     * @return The number of cache misses.
+     */
+    public long getCacheMisses() {
+        return cache.getMisses();
+    }
+
+    /**
+     * Retrieves the share of token lookups served from the cache.
+     *
+     * @return A ratio between {@code 0} and {@code 1}.
+     */
+    public double getCacheHitRate() {
+        return cache.getHitRate();
+    }
 }
@@ -2,7 +2,10 @@ package com.cowards.onlyarts.services;
 
 import com.cowards.onlyarts.core.CodeGenerator;
 import com.cowards.onlyarts.core.DBContext;
+import com.cowards.onlyarts.core.InClause;
 import com.cowards.onlyarts.core.Password;
+import com.cowards.onlyarts.core.Projection;
+import com.cowards.onlyarts.core.Snapshot;
 import com.cowards.onlyarts.repositories.user.UserDTO;
 import com.cowards.onlyarts.repositories.user.UserERROR;
 import java.sql.Connection;
@@ -11,7 +14,12 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -22,6 +30,11 @@ public class UserDAO {
 
     private static final DBContext context = DBContext.getInstance();
     private static UserDAO instance;
+    private static final long TOP_10_REFRESH_MILLIS
+            = Long.getLong("onlyarts.top10.refreshMillis", 30_000L);
+    private final Snapshot<UserDTO> top10 = new Snapshot<>("top users",
+            this::loadTop10, TOP_10_REFRESH_MILLIS);
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
     private static final String GET_USERS
             = "SELECT [user_id]"
             + ",[role_id],[first_name],[last_name],[phone],[email]"
@@ -35,6 +48,10 @@ public class UserDAO {
             = "UPDATE [Users] "
             + "SET [status] = ? "
             + "WHERE [user_id] = ?";
+    private static final String SET_ONLINE
+            = "UPDATE [Users] "
+            + "SET [status] = ([status] & ~1) | ? "
+            + "WHERE [user_id] = ?";
     private static final String ADD_USER
             = "INSERT INTO [dbo].[Users]"
             + "([user_id],[role_id],[first_name],[last_name],[phone],"
@@ -52,20 +69,25 @@ public class UserDAO {
     private static final String GET_USER_REACTION
             = "SELECT tb2.[user_id]"
             + ",[role_id],[first_name],[last_name],[phone],[email]"
-            + ",[address],[avatar],[join_date],[bio],[status],[password]"
+            + ",[address],[avatar],[join_date],[bio],[status]"
             + " FROM [dbo].[Users] tb1 "
             + "RIGHT JOIN Artwork_reactions tb2 "
             + "ON tb1.user_id = tb2.user_id"
             + " WHERE [artwork_id] = ?";
+    private static final String GET_USER_PROFILES
+            = "SELECT [user_id]"
+            + ",[role_id],[first_name],[last_name],[phone],[email]"
+            + ",[address],[avatar],[join_date],[bio],[status]"
+            + " FROM [dbo].[Users]";
     private static final String GET_TOP_10_USERS
             = "SELECT TOP (10) [user_id]"
             + ",[role_id],[first_name],[last_name],[phone],[email]"
-            + ",[address],[avatar],[join_date],[bio],[status],[password]"
+            + ",[address],[avatar],[join_date],[bio],[status]"
             + " FROM [dbo].[Users]"
             + " ORDER BY [join_date] DESC";
     private static final String GET_FOLLOWER = "SELECT tb2.[user_id],[role_id],"
             + "[first_name],[last_name],[avatar],[phone],[email],[address],"
-            + "[join_date],[bio],[status],[password] "
+            + "[join_date],[bio],[status] "
             + "FROM [OnlyArts].[dbo].[Followings] tb1 "
             + "RIGHT JOIN [OnlyArts].[dbo].[Users] tb2 "
             + "ON tb1.[user_id]  = tb2.[user_id] "
@@ -123,10 +145,12 @@ public class UserDAO {
             stm.setString(11, user.getAvatar());
             stm.executeUpdate();
             user.setUserId(userId);
+            top10.invalidate();
         } catch (SQLException ex) {
             logError("Exception found on addNewUser() method", ex);
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return user;
     }
@@ -170,6 +194,7 @@ public class UserDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return user;
     }
@@ -214,10 +239,114 @@ public class UserDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return user;
+    }
+
+    /**
+     * Retrieves the public profile of a user. The password hash is not read.
+     *
+     * @param userId The user ID of the user to retrieve.
+     * @return The UserDTO object representing the user, without password.
+     * @throws UserERROR if the user with the specified user ID does not exist.
+     */
+    public UserDTO getProfile(String userId) throws UserERROR {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        UserDTO user = null;
+
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement(GET_USER_PROFILES + " WHERE [user_id] = ?");
+            stm.setString(1, userId);
+            rs = stm.executeQuery();
+            if (rs.next()) {
+                user = new UserDTO();
+                user.setUserId(rs.getString("user_id"));
+                user.setFirstName(rs.getString("first_name"));
+                user.setLastName(rs.getString("last_name"));
+                user.setRoleId(rs.getString("role_id"));
+                user.setPhone(rs.getString("phone"));
+                user.setEmail(rs.getString("email"));
+                user.setAddress(rs.getString("address"));
+                user.setJoinDate(rs.getDate("join_date"));
+                user.setBio(rs.getString("bio"));
+                user.setStatus(rs.getInt("status"));
+                user.setAvatar(rs.getString("avatar"));
+            } else {
+                throw new UserERROR("This id does not exist in the system");
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on getProfile() method", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return user;
     }
 
+    /**
+     * Retrieves several users at once with one {@code IN} query per chunk of
+     * IDs. The password hash is not read.
+     *
+     * @param userIds The IDs of the users to retrieve.
+     * @return The existing users, in the order of their IDs. Unknown IDs are
+     * left out.
+     */
+    public List<UserDTO> getUsers(Collection<String> userIds) {
+        Map<String, UserDTO> found = new HashMap<>();
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        try {
+            conn = context.getConnection();
+            for (List<String> chunk : InClause.partition(userIds)) {
+                stm = conn.prepareStatement(GET_USER_PROFILES + " WHERE [user_id] IN "
+                        + InClause.placeholders(chunk.size()));
+                for (int i = 0; i < chunk.size(); i++) {
+                    stm.setString(i + 1, chunk.get(i));
+                }
+                rs = stm.executeQuery();
+                while (rs.next()) {
+                    UserDTO user = new UserDTO();
+                    user.setUserId(rs.getString("user_id"));
+                    user.setFirstName(rs.getString("first_name"));
+                    user.setLastName(rs.getString("last_name"));
+                    user.setRoleId(rs.getString("role_id"));
+                    user.setPhone(rs.getString("phone"));
+                    user.setEmail(rs.getString("email"));
+                    user.setAddress(rs.getString("address"));
+                    user.setJoinDate(rs.getDate("join_date"));
+                    user.setBio(rs.getString("bio"));
+                    user.setStatus(rs.getInt("status"));
+                    user.setAvatar(rs.getString("avatar"));
+                    found.put(user.getUserId(), user);
+                }
+                context.closeResultSet(rs);
+                context.closeStatement(stm);
+                rs = null;
+                stm = null;
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on getUsers() method", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        List<UserDTO> users = new ArrayList<>();
+        for (String userId : new LinkedHashSet<>(userIds)) {
+            UserDTO user = found.get(userId);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
     /**
      * Changes the status of a user.
      *
@@ -238,11 +367,47 @@ public class UserDAO {
             stm.setString(2, userId);
             stm.executeUpdate();
             res = true;
+            top10.invalidate();
+            changed(userId);
         } catch (SQLException ex) {
             logError("Exception found on changeStatus() method", ex);
             res = false;
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return res;
+    }
+
+    /**
+     * Writes the online bit of several users in one batch, leaving their other
+     * status bits untouched.
+     *
+     * @param changes The new online state of each user, keyed by user ID.
+     * @return True if the batch was written, otherwise false.
+     */
+    public boolean updateOnlineStatus(Map<String, Boolean> changes) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        boolean res = false;
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement(SET_ONLINE);
+            for (Map.Entry<String, Boolean> change : changes.entrySet()) {
+                stm.setInt(1, change.getValue() ? 0b001 : 0b000);
+                stm.setString(2, change.getKey());
+                stm.addBatch();
+            }
+            stm.executeBatch();
+            res = true;
+            for (String userId : changes.keySet()) {
+                changed(userId);
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on updateOnlineStatus() method", ex);
+        } finally {
+            context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return res;
     }
@@ -265,11 +430,13 @@ public class UserDAO {
             stm.setString(2, userId);
             stm.executeUpdate();
             res = true;
+            changed(userId);
         } catch (SQLException ex) {
             logError("Exception found on changePassword() method", ex);
             res = false;
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return res;
     }
@@ -297,16 +464,38 @@ public class UserDAO {
                 stm.setString(6, user.getAvatar());
                 stm.setString(7, user.getUserId());
                 check = stm.executeUpdate() > 0;
+                if (check) {
+                    top10.invalidate();
+                    changed(user.getUserId());
+                }
             }
         } catch (SQLException e) {
             logError("Exception found on updateUser() method", e);
             check = false;
         } finally {
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return check;
     }
 
+    /**
+     * Retrieves a counter that changes every time the row of a user is
+     * written through this DAO, and once more when the transaction of the
+     * write commits.
+     *
+     * @param userId The ID of the user.
+     * @return The version of the user, 0 if it was never written.
+     */
+    public long getVersion(String userId) {
+        return versions.getOrDefault(userId, 0L);
+    }
+
+    private void changed(String userId) {
+        versions.merge(userId, 1L, Long::sum);
+        context.afterCommit(() -> versions.merge(userId, 1L, Long::sum));
+    }
+
     /**
      * Retrieves the list of users who reacted to a specific artwork.
      *
@@ -337,7 +526,6 @@ public class UserDAO {
                 userDTO.setBio(rs.getString("bio"));
                 userDTO.setStatus(rs.getInt("status"));
                 userDTO.setAvatar(rs.getString("avatar"));
-                userDTO.setPassword(rs.getString("password"));
                 list.add(userDTO);
             }
         } catch (SQLException e) {
@@ -345,6 +533,7 @@ public class UserDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return list;
     }
@@ -362,7 +551,7 @@ public class UserDAO {
 
         try {
             conn = context.getConnection();
-            stm = conn.prepareStatement(GET_USERS);
+            stm = conn.prepareStatement(GET_USER_PROFILES);
             rs = stm.executeQuery();
             while (rs.next()) {
                 UserDTO user = new UserDTO();
@@ -377,7 +566,6 @@ public class UserDAO {
                 user.setBio(rs.getString("bio"));
                 user.setStatus(rs.getInt("status"));
                 user.setAvatar(rs.getString("avatar"));
-                user.setPassword(rs.getString("password"));
                 userList.add(user);
             }
         } catch (SQLException ex) {
@@ -385,11 +573,74 @@ public class UserDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
 
         return userList;
     }
 
+    /**
+     * Retrieves the chosen fields of all users. Only the columns of the chosen
+     * fields are read from the database.
+     *
+     * @param fields The fields to read.
+     * @return One map of field values per user.
+     */
+    public List<Map<String, Object>> getAllUsers(Projection.Selection fields) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        List<Map<String, Object>> list = new ArrayList<>();
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement("SELECT " + fields.columns("u") + " FROM [dbo].[Users] u");
+            rs = stm.executeQuery();
+            while (rs.next()) {
+                list.add(fields.read(rs));
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on getAllUsers(Selection) method", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return list;
+    }
+
+    /**
+     * Retrieves the chosen fields of the users who reacted to an artwork. Only
+     * the columns of the chosen fields are read from the database.
+     *
+     * @param artworkId The ID of the artwork.
+     * @param fields The fields to read.
+     * @return One map of field values per user who reacted.
+     */
+    public List<Map<String, Object>> getUserReaction(String artworkId, Projection.Selection fields) {
+        Connection conn = null;
+        PreparedStatement stm = null;
+        ResultSet rs = null;
+        List<Map<String, Object>> list = new ArrayList<>();
+        try {
+            conn = context.getConnection();
+            stm = conn.prepareStatement("SELECT " + fields.columns("u")
+                    + " FROM [dbo].[Artwork_reactions] r JOIN [dbo].[Users] u"
+                    + " ON r.[user_id] = u.[user_id] WHERE r.[artwork_id] = ?");
+            stm.setString(1, artworkId);
+            rs = stm.executeQuery();
+            while (rs.next()) {
+                list.add(fields.read(rs));
+            }
+        } catch (SQLException ex) {
+            logError("Exception found on getUserReaction(Selection) method", ex);
+        } finally {
+            context.closeResultSet(rs);
+            context.closeStatement(stm);
+            context.closeConnection(conn);
+        }
+        return list;
+    }
+
     /**
      * Retrieves the list of followers for a specific user.
      *
@@ -429,6 +680,7 @@ public class UserDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return followerList;
     }
@@ -439,6 +691,29 @@ public class UserDAO {
      * @return The list of UserDTO objects representing the top 10 users.
      */
     public List<UserDTO> getTop10() {
+        return top10.get();
+    }
+
+    /**
+     * Retrieves a counter that changes every time the top 10 list changes,
+     * without loading the list.
+     *
+     * @return The generation of the top 10 list.
+     */
+    public long getTop10Generation() {
+        return top10.getGeneration();
+    }
+
+    /**
+     * Retrieves the top 10 users together with the generation of that list.
+     *
+     * @return The current version of the top 10 list.
+     */
+    public Snapshot.Version<UserDTO> getTop10Version() {
+        return top10.getVersion();
+    }
+
+    private List<UserDTO> loadTop10() {
         List<UserDTO> list = new ArrayList<>();
         Connection conn = null;
         PreparedStatement stm = null;
@@ -460,7 +735,6 @@ public class UserDAO {
                 userDTO.setBio(rs.getString("bio"));
                 userDTO.setStatus(rs.getInt("status"));
                 userDTO.setAvatar(rs.getString("avatar"));
-                userDTO.setPassword(rs.getString("password"));
                 list.add(userDTO);
             }
         } catch (SQLException e) {
@@ -468,6 +742,7 @@ public class UserDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return list;
     }
@@ -497,6 +772,7 @@ public class UserDAO {
         } finally {
             context.closeResultSet(rs);
             context.closeStatement(stm);
+            context.closeConnection(conn);
         }
         return list;
     }